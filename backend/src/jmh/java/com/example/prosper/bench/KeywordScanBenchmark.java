@@ -0,0 +1,146 @@
+package com.example.prosper.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.example.prosper.service.SnippetExtractor;
+
+/**
+ * Context window of one chapter: the single-pass automaton ({@link SnippetExtractor}) against the scan it
+ * replaced in AiService — lowercase the chapter, find every keyword occurrence, then rescan a 10k-char vicinity
+ * once per recipe word for each occurrence.
+ *
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="KeywordScanBenchmark -f 1 -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class KeywordScanBenchmark {
+
+    private static final String KEYWORD = "Зелье";
+    private static final String[] FILLER = {
+            "Гарри", "посмотрел", "на", "котёл", "и", "медленно", "помешал", "варево", "Снейп", "стоял",
+            "рядом", "молча", "в", "подземелье", "было", "холодно", "свечи", "мерцали", "Гермиона", "шептала"};
+
+    @Param({"10000", "50000"})
+    public int chapterChars;
+
+    /** Occurrences of the keyword spread over the chapter. */
+    @Param({"5", "40"})
+    public int occurrences;
+
+    /** Whether a recipe passage exists (anchored window) or snippets around all occurrences are merged. */
+    @Param({"true", "false"})
+    public boolean withRecipe;
+
+    private final SnippetExtractor extractor = new SnippetExtractor();
+    private String content;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(chapterChars + 64);
+        int every = Math.max(1, chapterChars / (occurrences + 1));
+        int nextKeyword = every;
+        boolean recipePlaced = !withRecipe;
+        while (sb.length() < chapterChars) {
+            if (sb.length() >= nextKeyword) {
+                sb.append(random.nextBoolean() ? KEYWORD : "зелья");
+                nextKeyword += every;
+                if (!recipePlaced && sb.length() > chapterChars * 2 / 3) {
+                    sb.append(". Состав: три капли крови, 20 мл росы");
+                    recipePlaced = true;
+                }
+            } else {
+                sb.append(FILLER[random.nextInt(FILLER.length)]);
+            }
+            sb.append(random.nextInt(12) == 0 ? ". " : " ");
+        }
+        content = sb.toString();
+    }
+
+    @Benchmark
+    public List<SnippetExtractor.Snippet> automaton() {
+        return extractor.windows(content, List.of(KEYWORD), SnippetExtractor.RECIPE_CONTEXT);
+    }
+
+    @Benchmark
+    public String perKeywordScan() {
+        return legacyWindow(content, KEYWORD);
+    }
+
+    // The pre-automaton code of AiService.runIlikeSearch, minus its debug logging
+    private static String legacyWindow(String content, String kw) {
+        List<String> recipeWords = List.of("ингредиент", "состав", "рецепт",
+                "последовательност", "капл", " мл", "унц");
+        String contentLower = content.toLowerCase();
+        String kwLower = kw.toLowerCase();
+
+        List<Integer> positions = new ArrayList<>();
+        int searchFrom = 0;
+        while (true) {
+            int p = contentLower.indexOf(kwLower, searchFrom);
+            if (p < 0) break;
+            positions.add(p);
+            searchFrom = p + 1;
+        }
+        if (positions.isEmpty()) return null;
+
+        int bestPos = -1;
+        int bestDist = Integer.MAX_VALUE;
+        List<Integer> distances = new ArrayList<>();
+        for (int p : positions) {
+            int vicinityStart = Math.max(0, p - 5000);
+            int vicinityEnd   = Math.min(contentLower.length(), p + 5000);
+            String vicinity   = contentLower.substring(vicinityStart, vicinityEnd);
+            int minDist = Integer.MAX_VALUE;
+            for (String rw : recipeWords) {
+                int idx = vicinity.indexOf(rw);
+                while (idx >= 0) {
+                    int absIdx = vicinityStart + idx;
+                    int dist = Math.abs(absIdx - p);
+                    if (dist < minDist) minDist = dist;
+                    idx = vicinity.indexOf(rw, idx + 1);
+                }
+            }
+            distances.add(minDist == Integer.MAX_VALUE ? -1 : minDist);
+            if (minDist < bestDist) {
+                bestDist = minDist;
+                bestPos  = p;
+            }
+        }
+        if (bestDist == Integer.MAX_VALUE) bestPos = -1;
+
+        if (bestPos >= 0) {
+            int start = Math.max(0, bestPos - 1000);
+            int end   = Math.min(content.length(), bestPos + 2000);
+            return content.substring(start, end);
+        }
+        StringBuilder sb = new StringBuilder();
+        int lastEnd = -1;
+        for (int p : positions) {
+            int start = Math.max(0, p - 300);
+            int end   = Math.min(content.length(), p + 700);
+            if (start < lastEnd) start = lastEnd;
+            if (start >= end) continue;
+            if (sb.length() > 0) sb.append("\n…\n");
+            sb.append(content, start, end);
+            lastEnd = end;
+            if (sb.length() >= 3000) break;
+        }
+        return sb.length() > 3000 ? sb.substring(0, 3000) : sb.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.prosper.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.example.prosper.service.VectorStore;
+
+/**
+ * Top-k search of {@link VectorStore} over passage vectors at catalog scale: the candidate books of a typical
+ * question (5) and a scan of every loaded book. 500 books × 240 passages = 120k rows of 384 floats
+ * (the MiniLM dimension ml_service uses), ~184 MB off-heap.
+ *
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="VectorStoreBenchmark -f 1"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g", "-XX:MaxDirectMemorySize=512m"})
+public class VectorStoreBenchmark {
+
+    private static final int DIM = 384;
+    private static final int BOOKS = 500;
+
+    @Param({"240"})
+    public int passagesPerBook;
+
+    /** Books the query is restricted to; 0 = all loaded books. */
+    @Param({"5", "0"})
+    public int candidateBooks;
+
+    private VectorStore store;
+    private List<Long> bookIds;
+    private float[] query;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        store = new VectorStore(BOOKS * passagesPerBook);
+        for (long book = 1; book <= BOOKS; book++) {
+            List<VectorStore.Passage> passages = new ArrayList<>(passagesPerBook);
+            for (int p = 0; p < passagesPerBook; p++) {
+                passages.add(new VectorStore.Passage(book * 1000 + p / 4, (p % 4) * 2400, 3000, vector(random)));
+            }
+            store.putBook(book, store.generation(book), passages);
+        }
+        bookIds = new ArrayList<>();
+        for (long book = 1; book <= candidateBooks; book++) bookIds.add(book * 97 % BOOKS + 1);
+        query = vector(random);
+    }
+
+    @Benchmark
+    public List<VectorStore.Match> search() {
+        return store.search(query, candidateBooks == 0 ? null : bookIds, 5);
+    }
+
+    private static float[] vector(Random random) {
+        float[] v = new float[DIM];
+        for (int i = 0; i < DIM; i++) v[i] = (float) random.nextGaussian();
+        return v;
+    }
+}
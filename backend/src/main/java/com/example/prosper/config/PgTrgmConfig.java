@@ -18,6 +18,7 @@ public class PgTrgmConfig {
     public void initialize() {
         enablePgTrgm();
         migrateSearchVector();
+        migratePassageTable();
     }
 
     private void enablePgTrgm() {
@@ -64,4 +65,34 @@ public class PgTrgmConfig {
             System.out.println("[PgTrgm] search_vector migration error: " + e.getMessage());
         }
     }
+
+    // chapter_passages may already exist from Hibernate (entity ChapterPassage) or not yet — either way
+    // the generated tsvector and its GIN index are ours to add
+    private void migratePassageTable() {
+        try {
+            jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS chapter_passages (" +
+                "  id BIGSERIAL PRIMARY KEY," +
+                "  chapter_id BIGINT NOT NULL," +
+                "  book_id BIGINT NOT NULL," +
+                "  passage_no INTEGER NOT NULL," +
+                "  start_offset INTEGER NOT NULL," +
+                "  content TEXT NOT NULL" +
+                ")"
+            );
+            jdbcTemplate.execute(
+                "ALTER TABLE chapter_passages ADD COLUMN IF NOT EXISTS search_vector tsvector " +
+                "GENERATED ALWAYS AS (to_tsvector('russian', content)) STORED"
+            );
+            jdbcTemplate.execute(
+                "CREATE INDEX IF NOT EXISTS idx_chapter_passages_search_vector " +
+                "ON chapter_passages USING GIN(search_vector)"
+            );
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_chapter_passages_chapter ON chapter_passages(chapter_id)");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_chapter_passages_book ON chapter_passages(book_id)");
+            System.out.println("[PgTrgm] chapter_passages ready");
+        } catch (Exception e) {
+            System.out.println("[PgTrgm] chapter_passages migration error: " + e.getMessage());
+        }
+    }
 }
@@ -49,6 +49,9 @@ public class SecurityConfig {
                 .requestMatchers("/api/test/**").permitAll()
                 .requestMatchers("/covers/**").permitAll()
                 .requestMatchers("/assets/**").permitAll()
+                .requestMatchers(HttpMethod.GET, "/actuator/health").permitAll()
+                // Метрики раскрывают нагрузку и внутренние имена — только для админа (скрейпер ходит с его JWT)
+                .requestMatchers(HttpMethod.GET, "/actuator/prometheus").hasRole("ADMIN")
 
                 .requestMatchers(HttpMethod.GET, "/api/reviews/**").permitAll()
                 .requestMatchers(HttpMethod.GET, "/api/comments/**").permitAll()
@@ -20,6 +20,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -47,6 +48,18 @@ import com.example.prosper.repository.GenreRepository;
 import com.example.prosper.repository.NotificationRepository;
 import com.example.prosper.repository.UserBookRepository;
 import com.example.prosper.repository.UserRepository;
+import com.example.prosper.service.AiAnswerCache;
+import com.example.prosper.service.BookStatsService;
+import com.example.prosper.service.CatalogFacetIndex;
+import com.example.prosper.service.CatalogSnapshotService;
+import com.example.prosper.service.ChapterBlobService;
+import com.example.prosper.service.ChapterContentCache;
+import com.example.prosper.service.ChapterPassageService;
+import com.example.prosper.service.ChapterSearchIndex;
+import com.example.prosper.service.QuestionParser;
+import com.example.prosper.service.RetrievalExecutor;
+import com.example.prosper.service.TableOfContentsCache;
+import com.example.prosper.service.VectorStore;
 
 @RestController
 @RequestMapping("/api/admin")
@@ -74,6 +87,42 @@ public class AdminController {
     @Autowired
     private BookRatingRepository bookRatingRepository;
 
+    @Autowired
+    private ChapterSearchIndex chapterSearchIndex;
+
+    @Autowired
+    private ChapterPassageService chapterPassageService;
+
+    @Autowired
+    private ChapterBlobService chapterBlobService;
+
+    @Autowired
+    private VectorStore vectorStore;
+
+    @Autowired
+    private BookStatsService bookStatsService;
+
+    @Autowired
+    private QuestionParser questionParser;
+
+    @Autowired
+    private RetrievalExecutor retrievalExecutor;
+
+    @Autowired
+    private AiAnswerCache aiAnswerCache;
+
+    @Autowired
+    private CatalogSnapshotService catalogSnapshotService;
+
+    @Autowired
+    private CatalogFacetIndex catalogFacetIndex;
+
+    @Autowired
+    private TableOfContentsCache tableOfContentsCache;
+
+    @Autowired
+    private ChapterContentCache chapterContentCache;
+
     @GetMapping("/books")
     public ResponseEntity<List<Book>> getAllBooks() {
         return ResponseEntity.ok(bookRepository.findAll());
@@ -87,6 +136,7 @@ public class AdminController {
     }
 
     @PostMapping(value = "/books", consumes = "multipart/form-data")
+    @Transactional
     public ResponseEntity<?> createBook(
             @RequestPart("title") String title,
             @RequestPart("author") String author,
@@ -127,9 +177,16 @@ public class AdminController {
             }
 
             Book savedBook = bookRepository.save(newBook);
+            bookStatsService.bookCreated(savedBook.getId());
+            catalogFacetIndex.putBook(savedBook);
+            catalogSnapshotService.invalidate();
+            questionParser.refreshTitles();
+            aiAnswerCache.invalidateResolutions();
             return ResponseEntity.status(HttpStatus.CREATED).body(savedBook);
 
         } catch (RuntimeException e) {
+            // Ответ 500 отдаём сами, поэтому откат транзакции (книга + book_stats) нужно запросить явно
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(createError("Ошибка при создании новеллы: " + e.getMessage()));
         }
@@ -171,7 +228,13 @@ public class AdminController {
                 existingBook.setCoverUrl(coverUrl);
             }
 
-            return ResponseEntity.ok(bookRepository.save(existingBook));
+            Book savedBook = bookRepository.save(existingBook);
+            catalogFacetIndex.putBook(savedBook);
+            catalogSnapshotService.invalidate();
+            questionParser.refreshTitles();
+            aiAnswerCache.invalidateResolutions();
+            aiAnswerCache.invalidateBook(id);
+            return ResponseEntity.ok(savedBook);
 
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -201,6 +264,10 @@ public class AdminController {
 
                     // Удаляем главы
                     chapterRepository.deleteAll(chapters);
+                    chapterSearchIndex.removeBook(id);
+                    chapterPassageService.removeBook(id);
+                    chapterBlobService.removeBook(id);
+                    vectorStore.removeBook(id);
 
                     // Удаляем файл обложки
                     deleteOldCover(book.getCoverUrl());
@@ -208,6 +275,14 @@ public class AdminController {
                     // Удаляем книгу (остальные FK: CASCADE — user_books, reviews,
                     // comments, related_books, book_genres — удалятся автоматически)
                     bookRepository.delete(book);
+                    bookStatsService.bookDeleted(id);
+                    catalogFacetIndex.removeBook(id);
+                    tableOfContentsCache.invalidate(id);
+                    chapterContentCache.invalidateBook(id);
+                    catalogSnapshotService.invalidate();
+                    questionParser.refreshTitles();
+                    aiAnswerCache.invalidateResolutions();
+                    aiAnswerCache.invalidateBook(id);
                     return ResponseEntity.ok(createSuccess("Новелла удалена"));
                 })
                 .orElse(ResponseEntity.notFound().build());
@@ -237,12 +312,22 @@ public class AdminController {
         }
     }
 
+    // Список глав без текста — текст отдаёт getChapter при открытии главы на редактирование
     @GetMapping("/books/{bookId}/chapters")
-    public ResponseEntity<List<Chapter>> getChapters(@PathVariable Long bookId) {
-        return ResponseEntity.ok(chapterRepository.findByBookIdOrderByChapterOrderAsc(bookId));
+    public ResponseEntity<List<ChapterDTO>> getChapters(@PathVariable Long bookId) {
+        return ResponseEntity.ok(tableOfContentsCache.get(bookId).getChapters());
+    }
+
+    @GetMapping("/books/{bookId}/chapters/{chapterId}")
+    public ResponseEntity<ChapterDTO> getChapter(@PathVariable Long bookId, @PathVariable Long chapterId) {
+        return chapterRepository.findById(chapterId)
+                .filter(ch -> ch.getBook().getId().equals(bookId))
+                .map(ch -> ResponseEntity.ok(new ChapterDTO(ch.getId(), ch.getchapterOrder(), ch.getTitle(), ch.getContent())))
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @PostMapping("/books/{bookId}/chapters")
+    @Transactional
     public ResponseEntity<?> createChapter(@PathVariable Long bookId, @RequestBody ChapterDTO dto) {
         return bookRepository.findById(bookId)
                 .map(book -> {
@@ -252,6 +337,15 @@ public class AdminController {
                     chapter.setTitle(dto.getTitle());
                     chapter.setContent(dto.getContent());
                     Chapter saved = chapterRepository.save(chapter);
+                    bookStatsService.chaptersChanged(bookId, 1);
+                    tableOfContentsCache.invalidate(bookId);
+                    chapterContentCache.invalidateBook(bookId);
+                    catalogSnapshotService.invalidate();
+                    chapterSearchIndex.indexChapter(saved);
+                    chapterPassageService.indexChapter(saved);
+                    chapterBlobService.storeChapter(saved);
+                    vectorStore.invalidateBook(bookId);
+                    aiAnswerCache.invalidateBook(bookId);
 
                     List<UserBook> bookmarkedUsers = userBookRepository.findByBookIdAndSubscribedTrue(bookId);
                     List<Notification> notifications = new ArrayList<>(bookmarkedUsers.size());
@@ -273,6 +367,7 @@ public class AdminController {
     }
 
     @PutMapping("/books/{bookId}/chapters/{chapterId}")
+    @Transactional
     public ResponseEntity<?> updateChapter(
             @PathVariable Long bookId,
             @PathVariable Long chapterId,
@@ -282,16 +377,34 @@ public class AdminController {
                     if (dto.getChapterOrder() != null) chapter.setchapterOrder(dto.getChapterOrder());
                     if (dto.getTitle() != null) chapter.setTitle(dto.getTitle());
                     if (dto.getContent() != null) chapter.setContent(dto.getContent());
-                    return ResponseEntity.ok(chapterRepository.save(chapter));
+                    Chapter saved = chapterRepository.save(chapter);
+                    tableOfContentsCache.invalidate(bookId);
+                    chapterContentCache.invalidateBook(bookId);
+                    chapterSearchIndex.indexChapter(saved);
+                    chapterPassageService.indexChapter(saved);
+                    chapterBlobService.storeChapter(saved);
+                    vectorStore.invalidateBook(bookId);
+                    aiAnswerCache.invalidateBook(bookId);
+                    return ResponseEntity.ok(saved);
                 })
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/books/{bookId}/chapters/{chapterId}")
+    @Transactional
     public ResponseEntity<?> deleteChapter(@PathVariable Long bookId, @PathVariable Long chapterId) {
         return chapterRepository.findById(chapterId)
                 .map(chapter -> {
                     chapterRepository.delete(chapter);
+                    bookStatsService.chaptersChanged(bookId, -1);
+                    tableOfContentsCache.invalidate(bookId);
+                    chapterContentCache.invalidateBook(bookId);
+                    catalogSnapshotService.invalidate();
+                    chapterSearchIndex.removeChapter(chapterId);
+                    chapterPassageService.removeChapter(chapterId);
+                    chapterBlobService.removeChapter(chapterId);
+                    vectorStore.invalidateBook(bookId);
+                    aiAnswerCache.invalidateBook(bookId);
                     return ResponseEntity.ok(createSuccess("Глава удалена"));
                 })
                 .orElse(ResponseEntity.notFound().build());
@@ -307,7 +420,16 @@ public class AdminController {
         return ResponseEntity.ok(genreRepository.findAll());
     }
 
+    @GetMapping("/ai/retrieval-stats")
+    public ResponseEntity<Map<String, Object>> getRetrievalStats() {
+        Map<String, Object> stats = new HashMap<>(retrievalExecutor.stats());
+        stats.put("answerCache", aiAnswerCache.stats());
+        stats.put("vectorStore", vectorStore.stats());
+        return ResponseEntity.ok(stats);
+    }
+
     @DeleteMapping("/users/{id}")
+    @Transactional
     public ResponseEntity<?> deleteUser(@PathVariable Long id) {
         return userRepository.findById(id)
                 .map(user -> {
@@ -315,7 +437,13 @@ public class AdminController {
                         return ResponseEntity.status(HttpStatus.FORBIDDEN)
                                 .body(createError("Нельзя удалить последнего администратора"));
                     }
+                    // Their ratings and bookmarks go with them (cascade) — recount the books they touched
+                    Set<Long> touchedBooks = new HashSet<>(bookRatingRepository.findBookIdsByUserId(id));
+                    userBookRepository.findByUserIdAndBookmarkedTrue(id)
+                            .forEach(ub -> touchedBooks.add(ub.getBook().getId()));
                     userRepository.delete(user);
+                    bookStatsService.rebuild(touchedBooks);
+                    catalogSnapshotService.invalidate();
                     return ResponseEntity.ok(createSuccess("Пользователь удалён"));
                 })
                 .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -1,32 +1,134 @@
 package com.example.prosper.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.example.prosper.service.AiService;
+import com.example.prosper.service.AiStreamExecutor;
 
 @RestController
 @RequestMapping("/api/ai")
 public class AiController {
 
+    private static final long STREAM_TIMEOUT_MS = 90_000;
+
     @Autowired
     private AiService aiService;
 
+    // Streams run on a bounded pool so the Tomcat request thread is released right after the emitter is returned
+    @Autowired
+    private AiStreamExecutor streamExecutor;
+
+    // Any value turns on the per-request "trace" (stage timings, passage counts, context size)
+    private static final String DEBUG_HEADER = "X-AI-Debug";
+
     @PostMapping("/chat")
-    public ResponseEntity<Map<String, Object>> chat(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<Map<String, Object>> chat(@RequestBody Map<String, Object> request,
+                                                    @RequestHeader(value = DEBUG_HEADER, required = false) String debug) {
         String question = (String) request.get("question");
 
         if (question == null || question.isBlank()) {
             return ResponseEntity.badRequest().body(Map.of("error", "question is required"));
         }
 
-        Map<String, Object> response = aiService.getChatResponse(question);
+        Map<String, Object> response = aiService.getChatResponse(question, debug != null);
         return ResponseEntity.ok(response);
     }
-}
\ No newline at end of file
+
+    /**
+     * Server-Sent Events variant of /chat. Events: "sources" (list, sent as soon as retrieval is done),
+     * "token" ({"text": chunk}, repeated), then "done" — or "error" ({"error": message}).
+     * With the debug header a "trace" event is sent right before "done".
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> chatStream(@RequestBody Map<String, Object> request,
+                                                 @RequestHeader(value = DEBUG_HEADER, required = false) String debug) {
+        String question = (String) request.get("question");
+
+        if (question == null || question.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        // Set when the client disconnects or the emitter times out: stop generating, send nothing more
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Future<?> future;
+        try {
+            future = streamExecutor.submit(() -> {
+                try {
+                    Map<String, Object> trace = aiService.streamChatResponse(question, new AiService.ChatStreamListener() {
+                        @Override
+                        public void onSources(List<Map<String, Object>> sources) {
+                            checkCancelled(cancelled);
+                            send(emitter, "sources", sources);
+                        }
+
+                        @Override
+                        public void onToken(String text) {
+                            checkCancelled(cancelled);
+                            send(emitter, "token", Map.of("text", text));
+                        }
+                    });
+                    if (cancelled.get()) return;
+                    if (debug != null) send(emitter, "trace", trace);
+                    send(emitter, "done", Map.of());
+                    emitter.complete();
+                } catch (UncheckedIOException e) {
+                    // Client went away — nothing left to send to
+                    emitter.completeWithError(e.getCause());
+                } catch (RuntimeException e) {
+                    if (cancelled.get()) return;
+                    try {
+                        send(emitter, "error", Map.of("error", String.valueOf(e.getMessage())));
+                        emitter.complete();
+                    } catch (UncheckedIOException ignored) {
+                        emitter.completeWithError(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            System.out.println("[AI] Stream rejected: executor saturated");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+        }
+
+        Runnable cancel = () -> {
+            if (cancelled.compareAndSet(false, true)) future.cancel(true);
+        };
+        emitter.onTimeout(cancel);
+        emitter.onError(e -> cancel.run());
+        emitter.onCompletion(cancel);
+        return ResponseEntity.ok().body(emitter);
+    }
+
+    private static void checkCancelled(AtomicBoolean cancelled) {
+        if (cancelled.get() || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("stream cancelled");
+        }
+    }
+
+    private static void send(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
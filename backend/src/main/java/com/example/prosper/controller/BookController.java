@@ -1,22 +1,48 @@
 package com.example.prosper.controller;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import com.example.prosper.dto.CatalogCursor;
 import com.example.prosper.dto.ChapterDTO;
 import com.example.prosper.dto.RecentChapterDTO;
 import com.example.prosper.model.Book;
-import com.example.prosper.model.Chapter;
-import com.example.prosper.repository.BookRatingRepository;
+import com.example.prosper.model.ChapterBlob;
 import com.example.prosper.repository.BookRepository;
 import com.example.prosper.repository.ChapterRepository;
+import com.example.prosper.service.BookDownloadService;
+import com.example.prosper.service.BookStatsService;
+import com.example.prosper.service.CatalogFacetIndex;
+import com.example.prosper.service.ChapterBlobService;
+import com.example.prosper.service.ChapterContentCache;
+import com.example.prosper.service.ChapterSegmentStore;
+import com.example.prosper.service.CatalogSnapshotService;
+import com.example.prosper.service.TableOfContentsCache;
 
 @RestController
 @RequestMapping("/api/books")
@@ -30,55 +56,261 @@ public class BookController {
     private ChapterRepository chapterRepository;
 
     @Autowired
-    private BookRatingRepository bookRatingRepository;
+    private BookStatsService bookStatsService;
+
+    @Autowired
+    private CatalogSnapshotService catalogSnapshotService;
+
+    @Autowired
+    private CatalogFacetIndex catalogFacetIndex;
+
+    @Autowired
+    private TableOfContentsCache tableOfContentsCache;
+
+    @Autowired
+    private ChapterContentCache chapterContentCache;
+
+    @Autowired
+    private ChapterBlobService chapterBlobService;
+
+    @Autowired
+    private ChapterSegmentStore chapterSegmentStore;
+
+    @Autowired
+    private BookDownloadService bookDownloadService;
 
-    // Строит Map<bookId, avgRating> за один SQL-запрос
-    private Map<Long, Double> loadAvgRatings() {
-        return bookRatingRepository.getAverageRatingsForAllBooks()
+    // Лимит одной загрузки книги целиком; остальные async-запросы живут со стандартным таймаутом
+    @Value("${catalog.download.timeout-ms:600000}")
+    private long downloadTimeoutMs;
+
+    // Map<bookId, avgRating> только для книг ответа — из book_stats, без агрегации оценок
+    private Map<Long, Double> loadAvgRatings(List<Book> books) {
+        return bookStatsService.averageRatings(books.stream().map(Book::getId).collect(Collectors.toList()))
+                .entrySet()
                 .stream()
                 .collect(Collectors.toMap(
-                        row -> (Long) row[0],
-                        row -> Math.round((Double) row[1] * 10.0) / 10.0
+                        Map.Entry::getKey,
+                        e -> Math.round(e.getValue() * 10.0) / 10.0
                 ));
     }
 
     // Превращает Book в Map и добавляет поле averageRating
     private Map<String, Object> toMap(Book book, Map<Long, Double> avgRatings) {
-        Map<String, Object> m = new LinkedHashMap<>();
-        m.put("id",            book.getId());
-        m.put("title",         book.getTitle());
-        m.put("author",        book.getAuthor());
-        m.put("description",   book.getDescription());
-        m.put("coverUrl",      book.getCoverUrl());
-        m.put("genres",        book.getGenres());
-        m.put("averageRating", avgRatings.getOrDefault(book.getId(), 0.0));
-        return m;
+        return CatalogSnapshotService.row(book, book.getGenres(), avgRatings.getOrDefault(book.getId(), 0.0));
+    }
+
+    // If-None-Match already names the snapshot version: 304 without building a body
+    private static boolean notModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.equals("*") || t.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    // Каталог из снимка в памяти — без запросов к БД; ETag = версия снимка
+    private ResponseEntity<List<Map<String, Object>>> fromSnapshot(
+            String ifNoneMatch, Function<CatalogSnapshotService.Snapshot, List<Map<String, Object>>> view) {
+        CatalogSnapshotService.Snapshot snapshot = catalogSnapshotService.current();
+        if (notModified(ifNoneMatch, snapshot.getEtag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(snapshot.getEtag())
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(snapshot.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .body(view.apply(snapshot));
     }
 
     @GetMapping
     public ResponseEntity<List<Map<String, Object>>> getAllBooks(
-            @RequestParam(defaultValue = "rating") String sort) {
-        List<Book> books;
+            @RequestParam(defaultValue = "rating") String sort,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return fromSnapshot(ifNoneMatch, snapshot -> snapshot.books(sort));
+    }
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * Keyset-paginated catalog: {"books": [...], "nextCursor": "..." | null}. Same sort modes as
+     * {@link #getAllBooks}; pass nextCursor back as {@code cursor} for the following page.
+     * With facet filters (genres + genreMode and|or, rating and chapters buckets of {@link CatalogFacetIndex})
+     * the page is cut from the in-memory catalog snapshot instead of the database.
+     */
+    @GetMapping("/page")
+    public ResponseEntity<?> getBooksPage(
+            @RequestParam(defaultValue = "rating") String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) List<String> genres,
+            @RequestParam(defaultValue = "and") String genreMode,
+            @RequestParam(required = false) List<String> rating,
+            @RequestParam(required = false) List<String> chapters) {
+        return page(sort, "", facetFilter(genres, genreMode, rating, chapters), cursor, limit);
+    }
+
+    /** Title/author search, paginated like {@link #getBooksPage}; sorted by title unless asked otherwise. */
+    @GetMapping("/search/page")
+    public ResponseEntity<?> searchBooksPage(
+            @RequestParam(required = false, defaultValue = "") String query,
+            @RequestParam(defaultValue = "title_asc") String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) List<String> genres,
+            @RequestParam(defaultValue = "and") String genreMode,
+            @RequestParam(required = false) List<String> rating,
+            @RequestParam(required = false) List<String> chapters) {
+        return page(sort, query.trim(), facetFilter(genres, genreMode, rating, chapters), cursor, limit);
+    }
+
+    /**
+     * Facet counts for the catalog: {"total", "genres", "ratings", "chapters"}, each facet counted under the
+     * other facets' filters. Parameters as for {@link #getBooksPage}.
+     */
+    @GetMapping("/facets")
+    public ResponseEntity<Map<String, Object>> getFacets(
+            @RequestParam(required = false) List<String> genres,
+            @RequestParam(defaultValue = "and") String genreMode,
+            @RequestParam(required = false) List<String> rating,
+            @RequestParam(required = false) List<String> chapters) {
+        catalogSnapshotService.current();
+        return ResponseEntity.ok(catalogFacetIndex.counts(facetFilter(genres, genreMode, rating, chapters)));
+    }
+
+    private static CatalogFacetIndex.Filter facetFilter(List<String> genres, String genreMode,
+                                                        List<String> rating, List<String> chapters) {
+        return new CatalogFacetIndex.Filter(
+                genres != null ? genres : List.of(),
+                !"or".equalsIgnoreCase(genreMode),
+                rating != null ? rating : List.of(),
+                chapters != null ? chapters : List.of());
+    }
+
+    private ResponseEntity<?> page(String sort, String query, CatalogFacetIndex.Filter filter, String cursor, int limit) {
+        if (!List.of("chapters", "title_asc", "title_desc").contains(sort)) sort = "rating";
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        if (!filter.isEmpty()) return facetPage(sort, query, filter, cursor, size);
+
+        CatalogCursor after = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                after = CatalogCursor.decode(cursor, sort, query);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+        }
+
+        // One row more than the page tells whether there is a next page
+        String pattern = "%" + query.toLowerCase() + "%";
+        List<Object[]> rows;
         switch (sort) {
-            case "chapters":   books = bookRepository.findAllOrderByChapterCountDesc(); break;
-            case "title_asc":  books = bookRepository.findAllByOrderByTitleAsc();       break;
-            case "title_desc": books = bookRepository.findAllByOrderByTitleDesc();      break;
-            default:           books = bookRepository.findAllOrderByAvgRatingDesc();    break;
+            case "chapters":
+                rows = bookRepository.findPageByChapterCount(pattern,
+                        after != null ? after.getIntKey() : Integer.MAX_VALUE,
+                        after != null ? after.getId() : 0L, size + 1);
+                break;
+            case "title_asc":
+                rows = bookRepository.findPageByTitleAsc(pattern,
+                        after != null ? after.getKey() : "", after != null ? after.getId() : 0L, size + 1);
+                break;
+            case "title_desc":
+                rows = after != null
+                        ? bookRepository.findPageByTitleDesc(pattern, after.getKey(), after.getId(), size + 1)
+                        : bookRepository.findFirstPageByTitleDesc(pattern, size + 1);
+                break;
+            default:
+                rows = bookRepository.findPageByRating(pattern,
+                        after != null ? after.getDoubleKey() : Double.POSITIVE_INFINITY,
+                        after != null ? after.getId() : 0L, size + 1);
+                break;
         }
-        Map<Long, Double> avgRatings = loadAvgRatings();
-        return ResponseEntity.ok(books.stream()
-                .map(b -> toMap(b, avgRatings))
-                .collect(Collectors.toList()));
+        boolean hasMore = rows.size() > size;
+        if (hasMore) rows = rows.subList(0, size);
+
+        List<Long> ids = rows.stream().map(r -> ((Number) r[0]).longValue()).collect(Collectors.toList());
+        Map<Long, Book> byId = new HashMap<>();
+        if (!ids.isEmpty()) bookRepository.findAllWithGenresByIdIn(ids).forEach(b -> byId.put(b.getId(), b));
+        List<Book> books = ids.stream().map(byId::get).filter(Objects::nonNull).collect(Collectors.toList());
+        Map<Long, Double> avgRatings = loadAvgRatings(books);
+
+        String nextCursor = null;
+        if (hasMore) {
+            Object[] last = rows.get(rows.size() - 1);
+            nextCursor = new CatalogCursor(sort, query, String.valueOf(last[1]), ((Number) last[0]).longValue()).encode();
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("books", books.stream().map(b -> toMap(b, avgRatings)).collect(Collectors.toList()));
+        response.put("nextCursor", nextCursor);
+        return ResponseEntity.ok(response);
+    }
+
+    // Фильтр по фасетам: обходим отсортированный снимок и берём книги из битовой маски фасетов
+    private ResponseEntity<?> facetPage(String sort, String query, CatalogFacetIndex.Filter filter,
+                                        String cursor, int size) {
+        String listing = query + "#" + filter.signature();
+        CatalogSnapshotService.Snapshot snapshot = catalogSnapshotService.current();
+        List<Map<String, Object>> rows = snapshot.books(sort);
+        int from = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                from = snapshot.indexOf(sort, CatalogCursor.decode(cursor, sort, listing).getId()) + 1;
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+            // The cursor's book was deleted since: the listing has to start over
+            if (from == 0) return ResponseEntity.badRequest().body(Map.of("error", "Cursor expired"));
+        }
+
+        // Positions of matching rows after the cursor, straight from the facet bitmap — no id set per request
+        PrimitiveIterator.OfInt positions = snapshot.positions(sort, catalogFacetIndex.matching(filter), from).iterator();
+        String needle = query.toLowerCase();
+        List<Map<String, Object>> page = new ArrayList<>(size);
+        boolean hasMore = false;
+        while (positions.hasNext()) {
+            Map<String, Object> row = rows.get(positions.nextInt());
+            if (!needle.isEmpty() && !containsIgnoreCase(row.get("title"), needle)
+                    && !containsIgnoreCase(row.get("author"), needle)) continue;
+            if (page.size() == size) {
+                hasMore = true;
+                break;
+            }
+            page.add(row);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("books", page);
+        response.put("nextCursor", hasMore
+                ? new CatalogCursor(sort, listing, "", (Long) page.get(page.size() - 1).get("id")).encode()
+                : null);
+        return ResponseEntity.ok(response);
+    }
+
+    private static boolean containsIgnoreCase(Object value, String lowerNeedle) {
+        return value != null && value.toString().toLowerCase().contains(lowerNeedle);
     }
 
     @GetMapping("/newest")
     public ResponseEntity<List<Map<String, Object>>> getNewestBooks(
-            @RequestParam(defaultValue = "6") int limit) {
-        List<Book> books = bookRepository.findAllByOrderByIdDesc(PageRequest.of(0, limit));
-        Map<Long, Double> avgRatings = loadAvgRatings();
-        return ResponseEntity.ok(books.stream()
-                .map(b -> toMap(b, avgRatings))
-                .collect(Collectors.toList()));
+            @RequestParam(defaultValue = "6") int limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return fromSnapshot(ifNoneMatch, snapshot -> {
+            List<Map<String, Object>> newest = snapshot.newest();
+            return newest.subList(0, Math.max(0, Math.min(limit, newest.size())));
+        });
+    }
+
+    private static final int MAX_SUGGESTIONS = 20;
+
+    // Подсказки при вводе: индекс в памяти, без запросов к БД
+    @GetMapping("/suggest")
+    public ResponseEntity<List<Map<String, Object>>> suggestBooks(
+            @RequestParam(required = false, defaultValue = "") String q,
+            @RequestParam(defaultValue = "8") int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_SUGGESTIONS));
+        return ResponseEntity.ok(catalogSnapshotService.current().suggestIndex().suggest(q, size));
     }
 
     @GetMapping("/search")
@@ -87,7 +319,7 @@ public class BookController {
         List<Book> books = (query == null || query.trim().isEmpty())
                 ? bookRepository.findAll()
                 : bookRepository.searchByTitleOrAuthor(query);
-        Map<Long, Double> avgRatings = loadAvgRatings();
+        Map<Long, Double> avgRatings = loadAvgRatings(books);
         return ResponseEntity.ok(books.stream()
                 .map(b -> toMap(b, avgRatings))
                 .collect(Collectors.toList()));
@@ -101,35 +333,189 @@ public class BookController {
     }
 
     @GetMapping("/{bookId}/chapters")
-    public ResponseEntity<List<ChapterDTO>> getBookChapters(@PathVariable Long bookId) {
-        List<Chapter> chapters = chapterRepository.findByBookIdOrderByChapterOrderAsc(bookId);
-        List<ChapterDTO> chapterDTOs = chapters.stream()
-                .map(ch -> new ChapterDTO(ch.getId(), ch.getchapterOrder(), ch.getTitle(), null))
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(chapterDTOs);
+    public ResponseEntity<List<ChapterDTO>> getBookChapters(
+            @PathVariable Long bookId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        TableOfContentsCache.Toc toc = tableOfContentsCache.get(bookId);
+        String etag = tableOfContentsCache.etag(bookId, toc);
+        if (notModified(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(toc.getChapters());
+    }
+
+    private static final int MAX_TOC_RANGE = 1000;
+
+    /**
+     * Table of contents in columns — {"version", "total", "ids": [...], "orders": [...], "titles": [...],
+     * "nextFrom": order | null} — for chapters with order >= {@code from}, at most {@code limit} of them.
+     * Keys aren't repeated per chapter, so a 3000-chapter TOC is a few hundred kilobytes before gzip.
+     */
+    @GetMapping("/{bookId}/toc")
+    public ResponseEntity<Map<String, Object>> getTableOfContents(
+            @PathVariable Long bookId,
+            @RequestParam(defaultValue = "0") int from,
+            @RequestParam(defaultValue = "500") int limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        TableOfContentsCache.Toc toc = tableOfContentsCache.get(bookId);
+        String etag = tableOfContentsCache.etag(bookId, toc);
+        if (notModified(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+        }
+
+        List<ChapterDTO> chapters = toc.getChapters();
+        int start = toc.indexOfOrder(from);
+        int end = Math.min(chapters.size(), start + Math.max(1, Math.min(limit, MAX_TOC_RANGE)));
+        long[] ids = new long[end - start];
+        int[] orders = new int[end - start];
+        String[] titles = new String[end - start];
+        for (int i = start; i < end; i++) {
+            ChapterDTO ch = chapters.get(i);
+            ids[i - start] = ch.getId();
+            orders[i - start] = ch.getChapterOrder();
+            titles[i - start] = ch.getTitle();
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("version", toc.getVersion());
+        response.put("total", chapters.size());
+        response.put("ids", ids);
+        response.put("orders", orders);
+        response.put("titles", titles);
+        response.put("nextFrom", end < chapters.size() ? chapters.get(end).getChapterOrder() : null);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(response);
     }
 
     @GetMapping("/{bookId}/chapters/{chapterOrder}")
     public ResponseEntity<ChapterDTO> getChapter(
             @PathVariable Long bookId,
             @PathVariable int chapterOrder) {
-        return chapterRepository.findByBookIdAndChapterOrder(bookId, chapterOrder)
-                .map(ch -> ResponseEntity.ok(new ChapterDTO(
-                        ch.getId(), ch.getchapterOrder(), ch.getTitle(), ch.getContent())))
-                .orElse(ResponseEntity.notFound().build());
+        ChapterDTO chapter = chapterContentCache.get(bookId, chapterOrder);
+        return chapter != null ? ResponseEntity.ok(chapter) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Chapter text only, as text/plain. Clients that accept gzip get the bytes stored in chapter_blobs as they
+     * are (Content-Encoding: gzip) with the SHA-256 of the text as ETag; others get the plain text.
+     */
+    @GetMapping("/{bookId}/chapters/{chapterOrder}/raw")
+    public ResponseEntity<byte[]> getChapterRaw(
+            @PathVariable Long bookId,
+            @PathVariable int chapterOrder,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        MediaType textUtf8 = new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+        if (acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip")) {
+            // Local segment store (if enabled): no database round-trip at all
+            ChapterSegmentStore.Slot slot = chapterSegmentStore.find(bookId, chapterOrder);
+            if (slot != null) {
+                String etag = "\"" + slot.getSha256() + "-gz\"";
+                response.setHeader(HttpHeaders.ETAG, etag);
+                response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+                if (notModified(ifNoneMatch, etag)) {
+                    response.setStatus(HttpStatus.NOT_MODIFIED.value());
+                    return null;
+                }
+                response.setContentType(textUtf8.toString());
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+                chapterSegmentStore.send(slot, request, response);
+                return null;
+            }
+            // Conditional GET: compare the stored hash before reading the blob
+            if (ifNoneMatch != null) {
+                String sha = chapterBlobService.findSha256(bookId, chapterOrder).orElse(null);
+                if (sha != null && notModified(ifNoneMatch, "\"" + sha + "-gz\"")) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag("\"" + sha + "-gz\"")
+                            .varyBy(HttpHeaders.ACCEPT_ENCODING).build();
+                }
+            }
+            ChapterBlob blob = chapterBlobService.find(bookId, chapterOrder).orElse(null);
+            if (blob != null) {
+                return ResponseEntity.ok()
+                        .contentType(textUtf8)
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                        .eTag("\"" + blob.getSha256() + "-gz\"")
+                        .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                        .cacheControl(CacheControl.noCache())
+                        .body(blob.getGzip());
+            }
+            // Not compressed yet (startup backfill still running): plain text below
+        }
+
+        // Written straight from the cache's direct buffer — no String, no heap copy of the text
+        ChapterContentCache.Text text = chapterContentCache.getText(bookId, chapterOrder);
+        if (text == null) return ResponseEntity.notFound().build();
+        String etag = "\"" + text.getSha256() + "\"";
+        if (notModified(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT_ENCODING).build();
+        }
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        response.setContentType(textUtf8.toString());
+        response.setContentLength(text.getBytes().remaining());
+        OutputStream out = response.getOutputStream();
+        Channels.newChannel(out).write(text.getBytes());
+        out.flush();
+        return null;
+    }
+
+    /**
+     * The whole book — or chapters with from <= order <= to — in one streamed NDJSON response for offline
+     * reading (format in {@link BookDownloadService}), gzip-compressed for clients that accept it.
+     * Resume an interrupted download with from = last received order + 1.
+     *
+     * Runs as a WebAsyncTask with its own timeout (catalog.download.timeout-ms), so only this endpoint gets
+     * the long limit a whole book needs on a slow link; when it expires the writing thread is interrupted.
+     */
+    @GetMapping("/{bookId}/download")
+    public WebAsyncTask<Void> downloadBook(
+            @PathVariable Long bookId,
+            @RequestParam(defaultValue = "0") int from,
+            @RequestParam(required = false) Integer to,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response) {
+        Book book = bookRepository.findById(bookId).orElse(null);
+        if (book == null) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return null;
+        }
+        // Каждая загрузка держит соединение из пула, пока идёт: лишние — 503 и повтор позже
+        if (!bookDownloadService.tryAcquire()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "10");
+            return null;
+        }
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        int toOrder = to != null ? to : Integer.MAX_VALUE;
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noStore().getHeaderValue());
+        if (gzip) response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        WebAsyncTask<Void> task = new WebAsyncTask<>(downloadTimeoutMs, () -> {
+            try {
+                bookDownloadService.write(book, from, toOrder, gzip, response.getOutputStream());
+                response.flushBuffer();
+            } finally {
+                bookDownloadService.release();
+            }
+            return null;
+        });
+        task.onTimeout(() -> {
+            System.out.println("[Download] Book " + bookId + " timed out after " + downloadTimeoutMs + " ms");
+            return null;
+        });
+        return task;
     }
 
     @GetMapping("/chapters/recent")
     public ResponseEntity<List<RecentChapterDTO>> getRecentChapters(
             @RequestParam(defaultValue = "20") int limit) {
-        List<RecentChapterDTO> all = chapterRepository.findAllSummariesOrderByIdDesc();
-        Map<Long, RecentChapterDTO> latestByBook = new LinkedHashMap<>();
-        for (RecentChapterDTO ch : all) {
-            latestByBook.putIfAbsent(ch.getBookId(), ch);
-        }
-        List<RecentChapterDTO> result = latestByBook.values().stream()
-                .limit(limit)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(result);
+        // Последняя глава каждой книги — указатель из book_stats, без выборки всех глав
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(chapterRepository.findLatestPerBook(PageRequest.of(0, size)));
     }
 }
@@ -1,13 +1,13 @@
 package com.example.prosper.controller;
 
 import java.util.Map;
-import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -22,6 +22,7 @@ import com.example.prosper.model.User;
 import com.example.prosper.repository.BookRatingRepository;
 import com.example.prosper.repository.BookRepository;
 import com.example.prosper.repository.UserRepository;
+import com.example.prosper.service.BookStatsService;
 
 @RestController
 @RequestMapping("/api/books/{bookId}/rating")
@@ -36,6 +37,9 @@ public class BookRatingController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private BookStatsService bookStatsService;
+
     @GetMapping
     public ResponseEntity<BookRatingDTO> getRating(
             @PathVariable Long bookId,
@@ -61,6 +65,7 @@ public class BookRatingController {
     }
 
     @PostMapping
+    @Transactional
     public ResponseEntity<BookRatingDTO> rateBook(
             @PathVariable Long bookId,
             @RequestBody Map<String, Object> payload,
@@ -80,15 +85,17 @@ public class BookRatingController {
         Book book = bookRepository.findById(bookId)
                 .orElseThrow(() -> new RuntimeException("Book not found"));
 
-        Optional<BookRating> existing = bookRatingRepository.findByUserAndBook(user, book);
-        BookRating bookRating = existing.orElseGet(() -> {
-            BookRating r = new BookRating();
-            r.setUser(user);
-            r.setBook(book);
-            return r;
-        });
-        bookRating.setRating(rating);
-        bookRatingRepository.save(bookRating);
+        // Дельта для book_stats считается от значения под блокировкой: первая оценка вставляется
+        // (параллельная первая ждёт уникальный ключ и ничего не вставляет), существующая читается FOR UPDATE
+        Integer oldRating = null;
+        if (bookRatingRepository.insertIfAbsent(user.getId(), book.getId(), rating) == 0) {
+            BookRating bookRating = bookRatingRepository.findForUpdate(user.getId(), book.getId())
+                    .orElseThrow(() -> new RuntimeException("Rating not found"));
+            oldRating = bookRating.getRating();
+            bookRating.setRating(rating);
+            bookRatingRepository.save(bookRating);
+        }
+        bookStatsService.ratingChanged(bookId, oldRating, rating);
 
         Double avg = bookRatingRepository.getAverageRatingByBookId(bookId);
         Long count = bookRatingRepository.countByBookId(bookId);
@@ -8,6 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -26,6 +27,7 @@ import com.example.prosper.repository.BookRepository;
 import com.example.prosper.repository.ChapterRepository;
 import com.example.prosper.repository.UserBookRepository;
 import com.example.prosper.repository.UserRepository;
+import com.example.prosper.service.BookStatsService;
 
 @RestController
 @RequestMapping("/api/bookmarks")
@@ -43,6 +45,9 @@ public class BookmarkController {
     @Autowired
     private ChapterRepository chapterRepository;
 
+    @Autowired
+    private BookStatsService bookStatsService;
+
     @GetMapping
     public ResponseEntity<List<UserBook>> getBookmarks(
             @AuthenticationPrincipal UserDetails userDetails,
@@ -90,6 +95,7 @@ public class BookmarkController {
     }
 
     @PostMapping("/{bookId}")
+    @Transactional
     public ResponseEntity<UserBook> addBookmark(
             @AuthenticationPrincipal UserDetails userDetails,
             @PathVariable Long bookId,
@@ -119,14 +125,18 @@ public class BookmarkController {
                     return newUserBook;
                 });
 
+        BookmarkStatus before = userBook.isBookmarked() ? userBook.getStatus() : null;
         if (finalStatus != null) {
             userBook.setStatus(finalStatus);
         }
         userBook.setBookmarked(true);
-        return ResponseEntity.ok(userBookRepository.save(userBook));
+        UserBook saved = userBookRepository.save(userBook);
+        bookStatsService.bookmarkChanged(bookId, before, saved.getStatus());
+        return ResponseEntity.ok(saved);
     }
 
     @PutMapping("/{bookmarkId}/status")
+    @Transactional
     public ResponseEntity<UserBook> updateStatus(
             @AuthenticationPrincipal UserDetails userDetails,
             @PathVariable Long bookmarkId,
@@ -144,9 +154,12 @@ public class BookmarkController {
 
         String statusStr = request.get("status");
         BookmarkStatus status = BookmarkStatus.valueOf(statusStr);
+        BookmarkStatus before = userBook.getStatus();
         userBook.setStatus(status);
-        
-        return ResponseEntity.ok(userBookRepository.save(userBook));
+
+        UserBook saved = userBookRepository.save(userBook);
+        if (saved.isBookmarked()) bookStatsService.bookmarkChanged(saved.getBook().getId(), before, status);
+        return ResponseEntity.ok(saved);
     }
 
     @PutMapping("/{bookId}/progress")
@@ -189,6 +202,7 @@ public class BookmarkController {
     }
 
     @DeleteMapping("/{bookId}")
+    @Transactional
     public ResponseEntity<Void> removeBookmark(
             @AuthenticationPrincipal UserDetails userDetails,
             @PathVariable Long bookId
@@ -201,8 +215,10 @@ public class BookmarkController {
         UserBook userBook = userBookRepository.findByUserAndBook(user, book)
                 .orElseThrow(() -> new RuntimeException("Bookmark not found"));
 
+        boolean wasBookmarked = userBook.isBookmarked();
         userBook.setBookmarked(false);
         userBookRepository.save(userBook);
+        if (wasBookmarked) bookStatsService.bookmarkChanged(bookId, userBook.getStatus(), null);
 
         return ResponseEntity.ok().build();
     }
@@ -256,6 +272,7 @@ public class BookmarkController {
      * Does nothing if the book is not bookmarked, or is already COMPLETED.
      */
     @PutMapping("/{bookId}/complete")
+    @Transactional
     public ResponseEntity<Void> markAsCompleted(
             @AuthenticationPrincipal UserDetails userDetails,
             @PathVariable Long bookId
@@ -267,8 +284,10 @@ public class BookmarkController {
 
         userBookRepository.findByUserAndBook(user, book).ifPresent(userBook -> {
             if (userBook.isBookmarked() && userBook.getStatus() != BookmarkStatus.COMPLETED) {
+                BookmarkStatus before = userBook.getStatus();
                 userBook.setStatus(BookmarkStatus.COMPLETED);
                 userBookRepository.save(userBook);
+                bookStatsService.bookmarkChanged(bookId, before, BookmarkStatus.COMPLETED);
             }
         });
 
@@ -2,9 +2,9 @@ package com.example.prosper.controller;
 
 import com.example.prosper.model.Book;
 import com.example.prosper.model.User;
-import com.example.prosper.repository.BookRatingRepository;
 import com.example.prosper.repository.BookRepository;
 import com.example.prosper.repository.UserRepository;
+import com.example.prosper.service.BookStatsService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -28,7 +28,7 @@ public class RecommendationController {
     private BookRepository bookRepository;
 
     @Autowired
-    private BookRatingRepository bookRatingRepository;
+    private BookStatsService bookStatsService;
 
     @Autowired
     private UserRepository userRepository;
@@ -77,10 +77,8 @@ public class RecommendationController {
 
             List<Long> bookIds = rawIds.stream().map(Long::valueOf).collect(Collectors.toList());
 
-            // Pre-load average ratings in one query
-            Map<Long, Double> avgRatings = new HashMap<>();
-            bookRatingRepository.getAverageRatingsForAllBooks()
-                    .forEach(arr -> avgRatings.put((Long) arr[0], (Double) arr[1]));
+            // Average ratings of just these books, from book_stats
+            Map<Long, Double> avgRatings = bookStatsService.averageRatings(bookIds);
 
             // Load books and preserve ML-ranked order
             Map<Long, Book> bookMap = new HashMap<>();
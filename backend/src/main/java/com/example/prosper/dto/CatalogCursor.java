@@ -0,0 +1,64 @@
+package com.example.prosper.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in a keyset-paginated catalog listing: the sort key and id of the last book returned.
+ * Travels to the client as an opaque URL-safe token bound to the sort mode and query it was issued for.
+ */
+public final class CatalogCursor {
+
+    private static final String VERSION = "v1";
+
+    private final String sort;
+    private final int queryHash;
+    private final String key;
+    private final long id;
+
+    public CatalogCursor(String sort, String query, String key, long id) {
+        this(sort, query.hashCode(), key, id);
+    }
+
+    private CatalogCursor(String sort, int queryHash, String key, long id) {
+        this.sort = sort;
+        this.queryHash = queryHash;
+        this.key = key;
+        this.id = id;
+    }
+
+    public String getKey() { return key; }
+    public long getId() { return id; }
+
+    public double getDoubleKey() { return Double.parseDouble(key); }
+    public int getIntKey() { return Integer.parseInt(key); }
+
+    public String encode() {
+        // The key goes last: titles may contain the separator
+        String raw = VERSION + "|" + sort + "|" + queryHash + "|" + id + "|" + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @throws IllegalArgumentException if the token is malformed or was issued for another sort or query */
+    public static CatalogCursor decode(String token, String sort, String query) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        String[] parts = raw.split("\\|", 5);
+        if (parts.length != 5 || !VERSION.equals(parts[0])) throw new IllegalArgumentException("Malformed cursor");
+        if (!parts[1].equals(sort) || !parts[2].equals(String.valueOf(query.hashCode()))) {
+            throw new IllegalArgumentException("Cursor belongs to another listing");
+        }
+        try {
+            CatalogCursor cursor = new CatalogCursor(sort, query, parts[4], Long.parseLong(parts[3]));
+            if ("rating".equals(sort)) cursor.getDoubleKey();
+            if ("chapters".equals(sort)) cursor.getIntKey();
+            return cursor;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+    }
+}
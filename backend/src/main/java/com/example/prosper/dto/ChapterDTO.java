@@ -9,6 +9,11 @@ public class ChapterDTO {
     public ChapterDTO() {
     }
 
+    /** Table-of-contents entry, without the text. */
+    public ChapterDTO(Long id, Integer chapterOrder, String title) {
+        this(id, chapterOrder, title, null);
+    }
+
     public ChapterDTO(Long id, Integer chapterOrder, String title, String content) {
         this.id = id;
         this.chapterOrder = chapterOrder;
@@ -0,0 +1,17 @@
+package com.example.prosper.dto;
+
+/**
+ * Search hit without the chapter body: only the piece of text around the match is fetched.
+ * Filled by native queries in ChapterRepository (column aliases match the getters).
+ */
+public interface ChapterSnippet {
+    Long getId();
+    Long getBookId();
+    Integer getChapterOrder();
+    String getTitle();
+    /** ts_rank for full-text hits, 0 otherwise. */
+    Double getRank();
+    /** Offset of the snippet in the chapter content, or -1 when it is made of several fragments. */
+    Integer getSnippetStart();
+    String getSnippet();
+}
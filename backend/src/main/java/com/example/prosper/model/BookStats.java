@@ -0,0 +1,99 @@
+package com.example.prosper.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Per-book counters for the catalog, maintained by BookStatsService: updated in the same transaction
+ * as the rating, chapter or bookmark write, and rebuilt from the source tables by a nightly job.
+ */
+@Entity
+@Table(name = "book_stats", indexes = {
+        // (key DESC, book_id) — the keyset order of the catalog pages: highest first, ties by id
+        @Index(name = "idx_book_stats_rating_desc_id", columnList = "avg_rating DESC, book_id"),
+        @Index(name = "idx_book_stats_chapters_desc_id", columnList = "chapter_count DESC, book_id"),
+        // newest-first walk of the "recent chapters" feed
+        @Index(name = "idx_book_stats_latest_chapter", columnList = "latest_chapter_id")
+})
+public class BookStats {
+
+    @Id
+    @Column(name = "book_id")
+    private Long bookId;
+
+    @Column(name = "rating_sum", nullable = false)
+    private long ratingSum;
+
+    @Column(name = "rating_count", nullable = false)
+    private long ratingCount;
+
+    // rating_sum / rating_count, kept as a column so the catalog can sort on an index
+    @Column(name = "avg_rating", nullable = false)
+    private double avgRating;
+
+    @Column(name = "chapter_count", nullable = false)
+    private int chapterCount;
+
+    @Column(name = "latest_chapter_id")
+    private Long latestChapterId;
+
+    // Bookmarked readers per BookmarkStatus
+    @Column(name = "reading_count", nullable = false)
+    private int readingCount;
+
+    @Column(name = "completed_count", nullable = false)
+    private int completedCount;
+
+    @Column(name = "favorite_count", nullable = false)
+    private int favoriteCount;
+
+    @Column(name = "dropped_count", nullable = false)
+    private int droppedCount;
+
+    @Column(name = "planned_count", nullable = false)
+    private int plannedCount;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public Long getBookId() { return bookId; }
+    public void setBookId(Long bookId) { this.bookId = bookId; }
+
+    public long getRatingSum() { return ratingSum; }
+    public void setRatingSum(long ratingSum) { this.ratingSum = ratingSum; }
+
+    public long getRatingCount() { return ratingCount; }
+    public void setRatingCount(long ratingCount) { this.ratingCount = ratingCount; }
+
+    public double getAvgRating() { return avgRating; }
+    public void setAvgRating(double avgRating) { this.avgRating = avgRating; }
+
+    public int getChapterCount() { return chapterCount; }
+    public void setChapterCount(int chapterCount) { this.chapterCount = chapterCount; }
+
+    public Long getLatestChapterId() { return latestChapterId; }
+    public void setLatestChapterId(Long latestChapterId) { this.latestChapterId = latestChapterId; }
+
+    public int getReadingCount() { return readingCount; }
+    public void setReadingCount(int readingCount) { this.readingCount = readingCount; }
+
+    public int getCompletedCount() { return completedCount; }
+    public void setCompletedCount(int completedCount) { this.completedCount = completedCount; }
+
+    public int getFavoriteCount() { return favoriteCount; }
+    public void setFavoriteCount(int favoriteCount) { this.favoriteCount = favoriteCount; }
+
+    public int getDroppedCount() { return droppedCount; }
+    public void setDroppedCount(int droppedCount) { this.droppedCount = droppedCount; }
+
+    public int getPlannedCount() { return plannedCount; }
+    public void setPlannedCount(int plannedCount) { this.plannedCount = plannedCount; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -5,12 +5,18 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
 
 @Entity
-@Table(name = "chapters")
+// (book_id, id): the latest chapter of a book (book_stats.latest_chapter_id) is one index probe;
+// (book_id, chapter_order): the table of contents and chapter-by-order lookups
+@Table(name = "chapters", indexes = {
+        @Index(name = "idx_chapters_book_id_id", columnList = "book_id, id"),
+        @Index(name = "idx_chapters_book_order", columnList = "book_id, chapter_order")
+})
 public class Chapter {
 
     @Id
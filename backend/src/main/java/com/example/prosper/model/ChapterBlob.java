@@ -0,0 +1,64 @@
+package com.example.prosper.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Chapter body as it goes over the wire: gzip of the UTF-8 text plus the SHA-256 of that text (the ETag).
+ * Written by ChapterBlobService next to every chapter write; chapters.content stays the source of truth.
+ */
+@Entity
+@Table(name = "chapter_blobs", indexes = {
+        @Index(name = "idx_chapter_blobs_book_order", columnList = "book_id, chapter_order")
+})
+public class ChapterBlob {
+
+    @Id
+    @Column(name = "chapter_id")
+    private Long chapterId;
+
+    @Column(name = "book_id", nullable = false)
+    private Long bookId;
+
+    @Column(name = "chapter_order", nullable = false)
+    private Integer chapterOrder;
+
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] gzip;
+
+    // Hex SHA-256 of the uncompressed UTF-8 text
+    @Column(nullable = false, length = 64)
+    private String sha256;
+
+    @Column(name = "raw_length", nullable = false)
+    private Integer rawLength;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public Long getChapterId() { return chapterId; }
+    public void setChapterId(Long chapterId) { this.chapterId = chapterId; }
+
+    public Long getBookId() { return bookId; }
+    public void setBookId(Long bookId) { this.bookId = bookId; }
+
+    public Integer getChapterOrder() { return chapterOrder; }
+    public void setChapterOrder(Integer chapterOrder) { this.chapterOrder = chapterOrder; }
+
+    public byte[] getGzip() { return gzip; }
+    public void setGzip(byte[] gzip) { this.gzip = gzip; }
+
+    public String getSha256() { return sha256; }
+    public void setSha256(String sha256) { this.sha256 = sha256; }
+
+    public Integer getRawLength() { return rawLength; }
+    public void setRawLength(Integer rawLength) { this.rawLength = rawLength; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
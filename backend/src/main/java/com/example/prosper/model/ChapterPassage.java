@@ -0,0 +1,69 @@
+package com.example.prosper.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Fixed-size, overlapping slice of a chapter body for AI retrieval. The table also has a generated
+ * search_vector column with a GIN index (see PgTrgmConfig); it is only used from native queries.
+ */
+@Entity
+@Table(name = "chapter_passages", indexes = {
+        @Index(name = "idx_chapter_passages_chapter", columnList = "chapter_id"),
+        @Index(name = "idx_chapter_passages_book", columnList = "book_id")
+})
+public class ChapterPassage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "chapter_id", nullable = false)
+    private Long chapterId;
+
+    @Column(name = "book_id", nullable = false)
+    private Long bookId;
+
+    @Column(name = "passage_no", nullable = false)
+    private Integer passageNo;
+
+    // Offset of the passage in chapter content
+    @Column(name = "start_offset", nullable = false)
+    private Integer startOffset;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String content;
+
+    public ChapterPassage() {}
+
+    public ChapterPassage(Long chapterId, Long bookId, Integer passageNo, Integer startOffset, String content) {
+        this.chapterId = chapterId;
+        this.bookId = bookId;
+        this.passageNo = passageNo;
+        this.startOffset = startOffset;
+        this.content = content;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getChapterId() { return chapterId; }
+    public void setChapterId(Long chapterId) { this.chapterId = chapterId; }
+
+    public Long getBookId() { return bookId; }
+    public void setBookId(Long bookId) { this.bookId = bookId; }
+
+    public Integer getPassageNo() { return passageNo; }
+    public void setPassageNo(Integer passageNo) { this.passageNo = passageNo; }
+
+    public Integer getStartOffset() { return startOffset; }
+    public void setStartOffset(Integer startOffset) { this.startOffset = startOffset; }
+
+    public String getContent() { return content; }
+    public void setContent(String content) { this.content = content; }
+}
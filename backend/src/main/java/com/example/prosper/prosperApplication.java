@@ -2,8 +2,10 @@ package com.example.prosper;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class prosperApplication {
     public static void main(String[] args) {
         SpringApplication.run(prosperApplication.class, args);
@@ -3,7 +3,10 @@ package com.example.prosper.repository;
 import java.util.List;
 import java.util.Optional;
 
+import jakarta.persistence.LockModeType;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -17,14 +20,24 @@ public interface BookRatingRepository extends JpaRepository<BookRating, Long> {
 
     Optional<BookRating> findByUserAndBook(User user, Book book);
 
+    // First rating of a user: a concurrent first rating waits on the unique key, then inserts nothing (returns 0)
+    @Modifying
+    @Query(value = "INSERT INTO book_ratings (user_id, book_id, rating, created_at) VALUES (:userId, :bookId, :rating, now()) " +
+           "ON CONFLICT (user_id, book_id) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("userId") Long userId, @Param("bookId") Long bookId, @Param("rating") int rating);
+
+    // Existing rating, locked until commit: the old value read here is the one the stats delta is based on
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM BookRating r WHERE r.user.id = :userId AND r.book.id = :bookId")
+    Optional<BookRating> findForUpdate(@Param("userId") Long userId, @Param("bookId") Long bookId);
+
     @Query("SELECT AVG(r.rating) FROM BookRating r WHERE r.book.id = :bookId")
     Double getAverageRatingByBookId(@Param("bookId") Long bookId);
 
     long countByBookId(Long bookId);
 
-    /** Возвращает [book_id, avg_rating] для всех книг за один запрос */
-    @Query("SELECT r.book.id, AVG(r.rating) FROM BookRating r GROUP BY r.book.id")
-    List<Object[]> getAverageRatingsForAllBooks();
+    @Query("SELECT r.book.id FROM BookRating r WHERE r.user.id = :userId")
+    List<Long> findBookIdsByUserId(@Param("userId") Long userId);
 
     @Modifying
     @Transactional
@@ -19,11 +19,47 @@ public interface BookRepository extends JpaRepository<Book, Long> {
     @Query("SELECT b FROM Book b WHERE LOWER(b.title) LIKE LOWER(CONCAT('%', :query, '%')) OR LOWER(b.author) LIKE LOWER(CONCAT('%', :query, '%'))")
     List<Book> searchByTitleOrAuthor(@Param("query") String query);
 
-    @Query("SELECT b FROM Book b ORDER BY COALESCE((SELECT AVG(r.rating) FROM BookRating r WHERE r.book = b), 0.0) DESC")
-    List<Book> findAllOrderByAvgRatingDesc();
+    // ── Keyset pages: [id, sort key] of the next :limit books after the (key, id) cursor ──
+    // Ties on the sort key are broken by id ascending in every sort but title_desc — the same order as the
+    // catalog snapshot (and so /page with facet filters); each query walks a (key, id) index in order.
 
-    @Query("SELECT b FROM Book b ORDER BY (SELECT COUNT(c) FROM Chapter c WHERE c.book = b) DESC")
-    List<Book> findAllOrderByChapterCountDesc();
+    String CATALOG_FILTER = "(LOWER(b.title) LIKE :pattern OR LOWER(COALESCE(b.author, '')) LIKE :pattern)";
+
+    @Query(value = "SELECT b.id, s.avg_rating FROM books b JOIN book_stats s ON s.book_id = b.id " +
+        "WHERE (s.avg_rating < :rating OR (s.avg_rating = :rating AND s.book_id > :id)) AND " + CATALOG_FILTER + " " +
+        "ORDER BY s.avg_rating DESC, s.book_id LIMIT :limit", nativeQuery = true)
+    List<Object[]> findPageByRating(@Param("pattern") String pattern, @Param("rating") double rating,
+                                    @Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = "SELECT b.id, s.chapter_count FROM books b JOIN book_stats s ON s.book_id = b.id " +
+        "WHERE (s.chapter_count < :chapters OR (s.chapter_count = :chapters AND s.book_id > :id)) AND " +
+        CATALOG_FILTER + " " +
+        "ORDER BY s.chapter_count DESC, s.book_id LIMIT :limit", nativeQuery = true)
+    List<Object[]> findPageByChapterCount(@Param("pattern") String pattern, @Param("chapters") int chapters,
+                                          @Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = "SELECT b.id, b.title FROM books b " +
+        "WHERE (b.title, b.id) > (:title, :id) AND " + CATALOG_FILTER + " " +
+        "ORDER BY b.title, b.id LIMIT :limit", nativeQuery = true)
+    List<Object[]> findPageByTitleAsc(@Param("pattern") String pattern, @Param("title") String title,
+                                      @Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = "SELECT b.id, b.title FROM books b " +
+        "WHERE (b.title, b.id) < (:title, :id) AND " + CATALOG_FILTER + " " +
+        "ORDER BY b.title DESC, b.id DESC LIMIT :limit", nativeQuery = true)
+    List<Object[]> findPageByTitleDesc(@Param("pattern") String pattern, @Param("title") String title,
+                                       @Param("id") long id, @Param("limit") int limit);
+
+    // No string sorts after every title, so the first descending page has its own query
+    @Query(value = "SELECT b.id, b.title FROM books b WHERE " + CATALOG_FILTER + " " +
+        "ORDER BY b.title DESC, b.id DESC LIMIT :limit", nativeQuery = true)
+    List<Object[]> findFirstPageByTitleDesc(@Param("pattern") String pattern, @Param("limit") int limit);
+
+    @Query("SELECT DISTINCT b FROM Book b LEFT JOIN FETCH b.genres")
+    List<Book> findAllWithGenres();
+
+    @Query("SELECT DISTINCT b FROM Book b LEFT JOIN FETCH b.genres WHERE b.id IN :ids")
+    List<Book> findAllWithGenresByIdIn(@Param("ids") List<Long> ids);
 
     List<Book> findAllByOrderByTitleAsc();
 
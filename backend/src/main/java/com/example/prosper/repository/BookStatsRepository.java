@@ -0,0 +1,105 @@
+package com.example.prosper.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.prosper.model.BookStats;
+
+/**
+ * Counter updates are single atomic UPDATE statements (col = col + delta), so concurrent writers
+ * never lose an increment; callers run them inside the transaction of the write they mirror.
+ */
+public interface BookStatsRepository extends JpaRepository<BookStats, Long> {
+
+    // Full recount from the source tables; both rebuild queries upsert it
+    String RECOUNT =
+        "SELECT b.id, COALESCE(r.s, 0), COALESCE(r.c, 0), COALESCE(CAST(r.s AS double precision) / NULLIF(r.c, 0), 0), " +
+        "       COALESCE(ch.c, 0), ch.latest, " +
+        "       COALESCE(u.reading, 0), COALESCE(u.completed, 0), COALESCE(u.favorite, 0), " +
+        "       COALESCE(u.dropped, 0), COALESCE(u.planned, 0), now() " +
+        "FROM books b " +
+        "LEFT JOIN (SELECT book_id, SUM(rating) AS s, COUNT(*) AS c FROM book_ratings GROUP BY book_id) r " +
+        "       ON r.book_id = b.id " +
+        "LEFT JOIN (SELECT book_id, COUNT(*) AS c, MAX(id) AS latest FROM chapters GROUP BY book_id) ch " +
+        "       ON ch.book_id = b.id " +
+        "LEFT JOIN (SELECT book_id, " +
+        "                  COUNT(*) FILTER (WHERE status = 'READING') AS reading, " +
+        "                  COUNT(*) FILTER (WHERE status = 'COMPLETED') AS completed, " +
+        "                  COUNT(*) FILTER (WHERE status = 'FAVORITE') AS favorite, " +
+        "                  COUNT(*) FILTER (WHERE status = 'DROPPED') AS dropped, " +
+        "                  COUNT(*) FILTER (WHERE status = 'PLANNED') AS planned " +
+        "           FROM user_books WHERE bookmarked GROUP BY book_id) u " +
+        "       ON u.book_id = b.id ";
+
+    String UPSERT =
+        "INSERT INTO book_stats (book_id, rating_sum, rating_count, avg_rating, chapter_count, latest_chapter_id, " +
+        "                        reading_count, completed_count, favorite_count, dropped_count, planned_count, updated_at) ";
+
+    String ON_CONFLICT =
+        " ON CONFLICT (book_id) DO UPDATE SET rating_sum = EXCLUDED.rating_sum, rating_count = EXCLUDED.rating_count, " +
+        "avg_rating = EXCLUDED.avg_rating, chapter_count = EXCLUDED.chapter_count, " +
+        "latest_chapter_id = EXCLUDED.latest_chapter_id, reading_count = EXCLUDED.reading_count, " +
+        "completed_count = EXCLUDED.completed_count, favorite_count = EXCLUDED.favorite_count, " +
+        "dropped_count = EXCLUDED.dropped_count, planned_count = EXCLUDED.planned_count, updated_at = EXCLUDED.updated_at";
+
+    @Modifying
+    @Transactional
+    @Query(value = UPSERT + RECOUNT + ON_CONFLICT, nativeQuery = true)
+    int rebuildAll();
+
+    @Modifying
+    @Transactional
+    @Query(value = UPSERT + RECOUNT + "WHERE b.id IN (:bookIds)" + ON_CONFLICT, nativeQuery = true)
+    int rebuildBooks(@Param("bookIds") List<Long> bookIds);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM book_stats s WHERE NOT EXISTS (SELECT 1 FROM books b WHERE b.id = s.book_id)",
+        nativeQuery = true)
+    int deleteOrphans();
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO book_stats (book_id, rating_sum, rating_count, avg_rating, chapter_count, " +
+        "reading_count, completed_count, favorite_count, dropped_count, planned_count, updated_at) " +
+        "VALUES (:bookId, 0, 0, 0, 0, 0, 0, 0, 0, 0, now()) ON CONFLICT (book_id) DO NOTHING",
+        nativeQuery = true)
+    void ensureRow(@Param("bookId") Long bookId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE book_stats SET rating_sum = rating_sum + :sumDelta, rating_count = rating_count + :countDelta, " +
+        "avg_rating = COALESCE(CAST(rating_sum + :sumDelta AS double precision) / NULLIF(rating_count + :countDelta, 0), 0), " +
+        "updated_at = now() WHERE book_id = :bookId",
+        nativeQuery = true)
+    void addRating(@Param("bookId") Long bookId, @Param("sumDelta") long sumDelta, @Param("countDelta") long countDelta);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE book_stats SET chapter_count = chapter_count + :delta, " +
+        "latest_chapter_id = (SELECT MAX(id) FROM chapters WHERE book_id = :bookId), " +
+        "updated_at = now() WHERE book_id = :bookId",
+        nativeQuery = true)
+    void addChapters(@Param("bookId") Long bookId, @Param("delta") int delta);
+
+    // :before / :after are BookmarkStatus names, '' for "not bookmarked"
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE book_stats SET " +
+        "reading_count   = reading_count   - (CASE WHEN :before = 'READING'   THEN 1 ELSE 0 END) + (CASE WHEN :after = 'READING'   THEN 1 ELSE 0 END), " +
+        "completed_count = completed_count - (CASE WHEN :before = 'COMPLETED' THEN 1 ELSE 0 END) + (CASE WHEN :after = 'COMPLETED' THEN 1 ELSE 0 END), " +
+        "favorite_count  = favorite_count  - (CASE WHEN :before = 'FAVORITE'  THEN 1 ELSE 0 END) + (CASE WHEN :after = 'FAVORITE'  THEN 1 ELSE 0 END), " +
+        "dropped_count   = dropped_count   - (CASE WHEN :before = 'DROPPED'   THEN 1 ELSE 0 END) + (CASE WHEN :after = 'DROPPED'   THEN 1 ELSE 0 END), " +
+        "planned_count   = planned_count   - (CASE WHEN :before = 'PLANNED'   THEN 1 ELSE 0 END) + (CASE WHEN :after = 'PLANNED'   THEN 1 ELSE 0 END), " +
+        "updated_at = now() WHERE book_id = :bookId",
+        nativeQuery = true)
+    void moveReader(@Param("bookId") Long bookId, @Param("before") String before, @Param("after") String after);
+
+    @Query("SELECT s.bookId, s.avgRating FROM BookStats s WHERE s.ratingCount > 0 AND s.bookId IN :bookIds")
+    List<Object[]> findAverageRatings(@Param("bookIds") List<Long> bookIds);
+}
@@ -0,0 +1,59 @@
+package com.example.prosper.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.prosper.model.ChapterBlob;
+
+public interface ChapterBlobRepository extends JpaRepository<ChapterBlob, Long> {
+
+    // Orders aren't unique while an admin renumbers chapters — the newest chapter wins, as in both queries below
+    Optional<ChapterBlob> findFirstByBookIdAndChapterOrderOrderByChapterIdDesc(Long bookId, Integer chapterOrder);
+
+    // Just the hash, to answer a conditional GET without reading the blob
+    @Query("SELECT b.sha256 FROM ChapterBlob b WHERE b.bookId = :bookId AND b.chapterOrder = :chapterOrder " +
+           "ORDER BY b.chapterId DESC")
+    List<String> findSha256ByBookIdAndChapterOrder(@Param("bookId") Long bookId,
+                                                   @Param("chapterOrder") Integer chapterOrder,
+                                                   Pageable pageable);
+
+    @Query("SELECT b FROM ChapterBlob b WHERE b.chapterId > :afterId ORDER BY b.chapterId")
+    List<ChapterBlob> findBatchAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ChapterBlob b WHERE b.chapterId = :chapterId")
+    void deleteByChapterId(@Param("chapterId") Long chapterId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ChapterBlob b WHERE b.bookId = :bookId")
+    void deleteByBookId(@Param("bookId") Long bookId);
+
+    // Backfill row: a blob an admin write committed meanwhile wins (the insert waits on its key, then does nothing),
+    // and a chapter deleted since it was read gets no orphan blob
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO chapter_blobs (chapter_id, book_id, chapter_order, gzip, sha256, raw_length, updated_at) " +
+           "SELECT :chapterId, :bookId, :chapterOrder, :gzip, :sha256, :rawLength, :updatedAt " +
+           "WHERE EXISTS (SELECT 1 FROM chapters c WHERE c.id = :chapterId) " +
+           "ON CONFLICT (chapter_id) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("chapterId") Long chapterId, @Param("bookId") Long bookId,
+                       @Param("chapterOrder") Integer chapterOrder, @Param("gzip") byte[] gzip,
+                       @Param("sha256") String sha256, @Param("rawLength") Integer rawLength,
+                       @Param("updatedAt") LocalDateTime updatedAt);
+
+    // Chapters that have no blob yet (created before the table existed), keyset-paged by id
+    @Query(value = "SELECT c.id FROM chapters c WHERE c.id > :afterId " +
+        "AND NOT EXISTS (SELECT 1 FROM chapter_blobs b WHERE b.chapter_id = c.id) ORDER BY c.id",
+        nativeQuery = true)
+    List<Long> findUnblobbedChapterIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+}
@@ -0,0 +1,48 @@
+package com.example.prosper.repository;
+
+import java.util.List;
+
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.prosper.dto.ChapterSnippet;
+import com.example.prosper.model.ChapterPassage;
+
+public interface ChapterPassageRepository extends JpaRepository<ChapterPassage, Long> {
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ChapterPassage p WHERE p.chapterId = :chapterId")
+    void deleteByChapterId(@Param("chapterId") Long chapterId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ChapterPassage p WHERE p.bookId = :bookId")
+    void deleteByBookId(@Param("bookId") Long bookId);
+
+    // Chapters that have no passages yet (created before the table existed), keyset-paged by id
+    @Query(value = "SELECT c.id FROM chapters c WHERE c.id > :afterId " +
+        "AND NOT EXISTS (SELECT 1 FROM chapter_passages p WHERE p.chapter_id = c.id) ORDER BY c.id",
+        nativeQuery = true)
+    List<Long> findUnchunkedChapterIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Best-ranked passages as ChapterSnippet rows (id = chapter id, snippetStart = passage offset).
+    // Timed by the caller's DeadlineQueries
+    @Query(value = "SELECT p.chapter_id AS \"id\", p.book_id AS \"bookId\", c.chapter_order AS \"chapterOrder\", " +
+        "c.title AS \"title\", CAST(p.rank AS double precision) AS \"rank\", p.start_offset AS \"snippetStart\", " +
+        "p.content AS \"snippet\" " +
+        "FROM (SELECT chapter_id, book_id, start_offset, content, " +
+        "             ts_rank(search_vector, to_tsquery('russian', :query)) AS rank FROM chapter_passages " +
+        "      WHERE book_id IN (:bookIds) AND search_vector @@ to_tsquery('russian', :query) " +
+        "      ORDER BY rank DESC LIMIT :limit) p " +
+        "JOIN chapters c ON c.id = p.chapter_id ORDER BY p.rank DESC",
+        nativeQuery = true)
+    List<ChapterSnippet> searchPassagesByFts(@Param("bookIds") List<Long> bookIds,
+                                             @Param("query") String query,
+                                             @Param("limit") int limit);
+}
@@ -1,12 +1,19 @@
 package com.example.prosper.repository;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import jakarta.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.example.prosper.dto.ChapterDTO;
+import com.example.prosper.dto.ChapterSnippet;
 import com.example.prosper.dto.RecentChapterDTO;
 import com.example.prosper.model.Chapter;
 
@@ -15,9 +22,43 @@ public interface ChapterRepository extends JpaRepository<Chapter, Long> {
     List<Chapter> findByBookIdOrderByChapterOrderAsc(Long bookId);
     Optional<Chapter> findByBookIdAndChapterOrder(Long bookId, int chapterOrder);
 
-    // Fetches only summary fields (no content) sorted by id desc — avoids OOM from loading all chapter text
-    @Query("SELECT new com.example.prosper.dto.RecentChapterDTO(c.id, c.chapterOrder, c.title, c.book.id, c.book.title, c.book.coverUrl) FROM Chapter c ORDER BY c.id DESC")
-    List<RecentChapterDTO> findAllSummariesOrderByIdDesc();
+    // Table of contents: id/order/title only — neither the chapter text nor the book is loaded
+    @Query("SELECT new com.example.prosper.dto.ChapterDTO(c.id, c.chapterOrder, c.title) FROM Chapter c " +
+           "WHERE c.book.id = :bookId ORDER BY c.chapterOrder, c.id")
+    List<ChapterDTO> findTocByBookId(@Param("bookId") Long bookId);
+
+    // The chapter a reader opens — with its text, without the Book entity
+    @Query("SELECT new com.example.prosper.dto.ChapterDTO(c.id, c.chapterOrder, c.title, c.content) FROM Chapter c " +
+           "WHERE c.book.id = :bookId AND c.chapterOrder = :chapterOrder")
+    Optional<ChapterDTO> findContentByBookIdAndChapterOrder(@Param("bookId") Long bookId,
+                                                            @Param("chapterOrder") int chapterOrder);
+
+    // Offline download: chapters with their text in order, read through a server-side cursor (the fetch size
+    // only takes effect inside a transaction) — a few rows in memory at a time, whatever the book's length
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "10"))
+    @Query("SELECT new com.example.prosper.dto.ChapterDTO(c.id, c.chapterOrder, c.title, c.content) FROM Chapter c " +
+           "WHERE c.book.id = :bookId AND c.chapterOrder >= :fromOrder AND c.chapterOrder <= :toOrder " +
+           "ORDER BY c.chapterOrder, c.id")
+    Stream<ChapterDTO> streamContentByBookId(@Param("bookId") Long bookId,
+                                             @Param("fromOrder") int fromOrder,
+                                             @Param("toOrder") int toOrder);
+
+    // Digest of a book's chapters (ids, order, titles, text) computed on the database side: the same data
+    // gives the same value across restarts, any chapter write changes it. The text enters through the sha256
+    // stored in chapter_blobs (written in the same transaction as the chapter), so the bodies are not read;
+    // only a chapter the blob backfill has not reached yet is hashed here
+    @Query(value = "SELECT md5(COALESCE(string_agg(c.id || ':' || c.chapter_order || ':' || md5(COALESCE(c.title, '')) " +
+           "|| ':' || COALESCE(b.sha256, md5(COALESCE(c.content, ''))), ',' ORDER BY c.chapter_order, c.id), '')) " +
+           "FROM chapters c LEFT JOIN chapter_blobs b ON b.chapter_id = c.id " +
+           "WHERE c.book_id = :bookId", nativeQuery = true)
+    String contentDigestByBookId(@Param("bookId") Long bookId);
+
+    // Latest chapter of each book, newest first: walks book_stats.latest_chapter_id backwards and stops
+    // after the page — cost follows the limit, not the number of chapters
+    @Query("SELECT new com.example.prosper.dto.RecentChapterDTO(c.id, c.chapterOrder, c.title, b.id, b.title, b.coverUrl) " +
+           "FROM BookStats s JOIN Chapter c ON c.id = s.latestChapterId JOIN c.book b " +
+           "WHERE s.latestChapterId IS NOT NULL ORDER BY s.latestChapterId DESC")
+    List<RecentChapterDTO> findLatestPerBook(Pageable pageable);
 
     @Query(value = "SELECT * FROM chapters WHERE book_id = :bookId AND search_vector @@ to_tsquery('russian', :query) ORDER BY ts_rank(search_vector, to_tsquery('russian', :query)) DESC LIMIT 8", nativeQuery = true)
     List<Chapter> searchChaptersByFts(@Param("bookId") Long bookId, @Param("query") String query);
@@ -28,14 +69,54 @@ public interface ChapterRepository extends JpaRepository<Chapter, Long> {
     @Query("SELECT MAX(c.chapterOrder) FROM Chapter c WHERE c.book.id = :bookId")
     Integer findMaxChapterOrderByBookId(@Param("bookId") Long bookId);
 
-    @Query(value = "SELECT * FROM chapters WHERE book_id IN (:bookIds) " +
-        "AND search_vector @@ to_tsquery('russian', :query) " +
-        "ORDER BY ts_rank(search_vector, to_tsquery('russian', :query)) DESC LIMIT 10",
+    // Server-side timeout for the rest of the current transaction only; DeadlineQueries sets it from the AI
+    // stage's deadline before the search queries below
+    @Query(value = "SELECT set_config('statement_timeout', :ms, true)", nativeQuery = true)
+    String setLocalStatementTimeout(@Param("ms") String ms);
+
+    // The AI search queries below return ChapterSnippet rows: the body never leaves the database,
+    // only ts_headline fragments or a substring window around the match. Run them through DeadlineQueries
+    // so a cancelled stage doesn't leave them running on the server.
+    @Query(value = "SELECT c.id AS \"id\", c.book_id AS \"bookId\", c.chapter_order AS \"chapterOrder\", " +
+        "c.title AS \"title\", CAST(r.rank AS double precision) AS \"rank\", -1 AS \"snippetStart\", " +
+        "ts_headline('russian', c.content, to_tsquery('russian', :query), " +
+        "'MaxFragments=3, MaxWords=60, MinWords=25, StartSel=\"\", StopSel=\"\", FragmentDelimiter=\" … \"') AS \"snippet\" " +
+        "FROM (SELECT id, ts_rank(search_vector, to_tsquery('russian', :query)) AS rank FROM chapters " +
+        "      WHERE book_id IN (:bookIds) AND search_vector @@ to_tsquery('russian', :query) " +
+        "      ORDER BY rank DESC LIMIT 10) r " +
+        "JOIN chapters c ON c.id = r.id ORDER BY r.rank DESC",
+        nativeQuery = true)
+    List<ChapterSnippet> searchSnippetsByFtsForBooks(@Param("bookIds") List<Long> bookIds, @Param("query") String query);
+
+    // Window of 3000 chars starting 1000 before the first occurrence of :text (title-only matches get the opening)
+    @Query(value = "SELECT c.id AS \"id\", c.book_id AS \"bookId\", c.chapter_order AS \"chapterOrder\", " +
+        "c.title AS \"title\", CAST(0 AS double precision) AS \"rank\", m.start AS \"snippetStart\", " +
+        "substr(c.content, m.start + 1, 3000) AS \"snippet\" " +
+        "FROM chapters c " +
+        "CROSS JOIN LATERAL (SELECT greatest(0, strpos(lower(c.content), lower(:text)) - 1001) AS start) m " +
+        "WHERE c.book_id IN (:bookIds) AND (c.content ILIKE :pattern OR c.title ILIKE :pattern) LIMIT 30",
         nativeQuery = true)
-    List<Chapter> searchChaptersByFtsForBooks(@Param("bookIds") List<Long> bookIds, @Param("query") String query);
+    List<ChapterSnippet> searchSnippetsByIlikeForBooks(@Param("bookIds") List<Long> bookIds,
+                                                       @Param("text") String text,
+                                                       @Param("pattern") String pattern);
 
-    @Query(value = "SELECT * FROM chapters WHERE book_id IN (:bookIds) " +
-        "AND (content ILIKE :pattern OR title ILIKE :pattern) LIMIT 30",
+    /**
+     * Cuts the given windows out of chapter bodies on the server. Arguments are parallel comma-separated lists
+     * (chapter id, 0-based start, length) — one window per position; rows come back in argument order.
+     */
+    @Query(value = "SELECT c.id AS \"id\", c.book_id AS \"bookId\", c.chapter_order AS \"chapterOrder\", " +
+        "c.title AS \"title\", CAST(0 AS double precision) AS \"rank\", w.start AS \"snippetStart\", " +
+        "substr(c.content, w.start + 1, w.len) AS \"snippet\" " +
+        "FROM unnest(CAST(string_to_array(:ids, ',') AS bigint[]), " +
+        "            CAST(string_to_array(:starts, ',') AS int[]), " +
+        "            CAST(string_to_array(:lengths, ',') AS int[])) WITH ORDINALITY AS w(id, start, len, ord) " +
+        "JOIN chapters c ON c.id = w.id ORDER BY w.ord",
         nativeQuery = true)
-    List<Chapter> searchChaptersByIlikeForBooks(@Param("bookIds") List<Long> bookIds, @Param("pattern") String pattern);
+    List<ChapterSnippet> findSnippetWindows(@Param("ids") String ids,
+                                            @Param("starts") String starts,
+                                            @Param("lengths") String lengths);
+
+    /** Возвращает [id, book_id, title, content] пачкой по id — для построения ChapterSearchIndex без загрузки Book */
+    @Query("SELECT c.id, c.book.id, c.title, c.content FROM Chapter c WHERE c.id > :afterId ORDER BY c.id")
+    List<Object[]> findIndexBatchAfterId(@Param("afterId") Long afterId, Pageable pageable);
 }
\ No newline at end of file
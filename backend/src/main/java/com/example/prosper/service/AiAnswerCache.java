@@ -0,0 +1,254 @@
+package com.example.prosper.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.prosper.util.RussianText;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Answers to recent AI questions, keyed on (normalized question, resolved book ids), LRU with a TTL.
+ *
+ * Book resolution itself may cost a Gemini call, so the books a question resolved to are remembered too;
+ * a repeated question goes straight to its answer. Identical questions that arrive while the first one is
+ * still being answered wait for that answer instead of running the pipeline again (single flight).
+ *
+ * Chapter writes through AdminController drop the answers of that book; book writes also drop the
+ * remembered resolutions, since a new or renamed title can change which book a question means. Both happen
+ * once the write commits: a pipeline started before that still reads the old text, and the generation bump
+ * at commit keeps its answer out of the cache.
+ */
+@Component
+public class AiAnswerCache {
+
+    public static final class Entry {
+        private final String answer;
+        private final List<Map<String, Object>> sources;
+        private final List<Long> bookIds;
+        private final int llmCalls;
+        private final boolean cacheable;
+        private final long expiresAtNanos;
+
+        /**
+         * @param llmCalls  LLM calls it took to produce the answer (what a cache hit saves)
+         * @param cacheable false for error/"not found" answers — they are handed to waiting callers but not stored
+         */
+        public Entry(String answer, List<Map<String, Object>> sources, Collection<Long> bookIds,
+                     int llmCalls, boolean cacheable) {
+            this(answer, sources, bookIds, llmCalls, cacheable, 0);
+        }
+
+        private Entry(String answer, List<Map<String, Object>> sources, Collection<Long> bookIds,
+                      int llmCalls, boolean cacheable, long expiresAtNanos) {
+            this.answer = answer;
+            this.sources = List.copyOf(sources);
+            this.bookIds = new ArrayList<>(new TreeSet<>(bookIds));
+            this.llmCalls = llmCalls;
+            this.cacheable = cacheable;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        public String getAnswer() { return answer; }
+        public List<Map<String, Object>> getSources() { return sources; }
+        public List<Long> getBookIds() { return bookIds; }
+        public int getLlmCalls() { return llmCalls; }
+        public boolean isCacheable() { return cacheable; }
+    }
+
+    /** Result of {@link #lookupOrJoin}: a ready answer, someone else's flight to wait for, or our own to run. */
+    public static final class Lookup {
+        private final Entry hit;
+        private final CompletableFuture<Entry> flight;
+        private final boolean leader;
+        private final long generation;
+
+        private Lookup(Entry hit, CompletableFuture<Entry> flight, boolean leader, long generation) {
+            this.hit = hit;
+            this.flight = flight;
+            this.leader = leader;
+            this.generation = generation;
+        }
+
+        public Entry getHit() { return hit; }
+        /** The pending answer when another request is already running the pipeline for this question. */
+        public CompletableFuture<Entry> getFlight() { return leader ? null : flight; }
+        /** True when the caller has to run the pipeline and then call {@link #complete} or {@link #fail}. */
+        public boolean isLeader() { return leader; }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    // Both maps are access-ordered LRUs guarded by "this"
+    private final LinkedHashMap<String, Entry> answers;
+    private final LinkedHashMap<String, List<Long>> resolvedBooks;
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    // Bumped by every invalidation; an answer computed across one is handed out but not stored
+    private long generation;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+    private final Counter savedLlmCalls;
+
+    public AiAnswerCache(@Value("${ai.cache.max-entries:1000}") int maxEntries,
+                         @Value("${ai.cache.ttl-minutes:360}") long ttlMinutes,
+                         MeterRegistry registry) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(ttlMinutes);
+        this.answers = lru(maxEntries);
+        this.resolvedBooks = lru(maxEntries);
+
+        this.hits = Counter.builder("ai.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("ai.cache.requests").tag("result", "miss").register(registry);
+        this.coalesced = Counter.builder("ai.cache.requests").tag("result", "coalesced").register(registry);
+        this.savedLlmCalls = Counter.builder("ai.cache.saved.llm.calls")
+                .description("Gemini calls not made thanks to cache hits and coalesced questions")
+                .register(registry);
+        Gauge.builder("ai.cache.size", this, AiAnswerCache::size).register(registry);
+    }
+
+    private static <V> LinkedHashMap<String, V> lru(int maxEntries) {
+        return new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /** Case, ё/е, word endings and punctuation don't make a question different. */
+    public static String normalize(String question) {
+        return String.join(" ", RussianText.terms(question));
+    }
+
+    /**
+     * Cached answer for the question, else the flight to join if the question is already being answered,
+     * else makes the caller the leader of a new flight.
+     */
+    public Lookup lookupOrJoin(String normalizedQuestion) {
+        Entry hit = cached(normalizedQuestion);
+        if (hit != null) {
+            hits.increment();
+            savedLlmCalls.increment(hit.llmCalls);
+            return new Lookup(hit, null, false, 0);
+        }
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inFlight.putIfAbsent(normalizedQuestion, mine);
+        if (existing != null) {
+            coalesced.increment();
+            existing.thenAccept(e -> savedLlmCalls.increment(e.llmCalls));
+            return new Lookup(null, existing, false, 0);
+        }
+        misses.increment();
+        synchronized (this) {
+            return new Lookup(null, mine, true, generation);
+        }
+    }
+
+    /** Ends the caller's flight: waiting requests get the entry, and it is stored if cacheable. */
+    public void complete(String normalizedQuestion, Lookup lookup, Entry entry) {
+        if (entry.cacheable && !entry.bookIds.isEmpty()) {
+            Entry stored = new Entry(entry.answer, entry.sources, entry.bookIds, entry.llmCalls, true,
+                    System.nanoTime() + ttlNanos);
+            synchronized (this) {
+                if (lookup.generation == generation) {
+                    resolvedBooks.put(normalizedQuestion, stored.bookIds);
+                    answers.put(key(normalizedQuestion, stored.bookIds), stored);
+                }
+            }
+        }
+        inFlight.remove(normalizedQuestion, lookup.flight);
+        lookup.flight.complete(entry);
+    }
+
+    public void fail(String normalizedQuestion, Lookup lookup, Throwable error) {
+        inFlight.remove(normalizedQuestion, lookup.flight);
+        lookup.flight.completeExceptionally(error);
+    }
+
+    /** A chapter of the book changed: its answers may be stale. Takes effect after commit. */
+    public void invalidateBook(Long bookId) {
+        afterCommit(() -> evictBook(bookId));
+    }
+
+    /** The set of titles changed: questions may resolve to other books now. Takes effect after commit. */
+    public void invalidateResolutions() {
+        afterCommit(this::evictResolutions);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private synchronized void evictBook(Long bookId) {
+        generation++;
+        answers.values().removeIf(e -> e.bookIds.contains(bookId));
+        resolvedBooks.values().removeIf(ids -> ids.contains(bookId));
+    }
+
+    private synchronized void evictResolutions() {
+        generation++;
+        resolvedBooks.clear();
+    }
+
+    public synchronized int size() {
+        return answers.size();
+    }
+
+    private synchronized Entry cached(String normalizedQuestion) {
+        List<Long> bookIds = resolvedBooks.get(normalizedQuestion);
+        if (bookIds == null) return null;
+        String key = key(normalizedQuestion, bookIds);
+        Entry e = answers.get(key);
+        if (e == null) return null;
+        if (System.nanoTime() - e.expiresAtNanos > 0) {
+            answers.remove(key);
+            resolvedBooks.remove(normalizedQuestion);
+            return null;
+        }
+        return e;
+    }
+
+    private static String key(String normalizedQuestion, List<Long> sortedBookIds) {
+        return normalizedQuestion + "|" + sortedBookIds;
+    }
+
+    /** For the admin stats endpoint. */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("entries", size());
+        m.put("maxEntries", maxEntries);
+        m.put("inFlight", inFlight.size());
+        m.put("hits", (long) hits.count());
+        m.put("misses", (long) misses.count());
+        m.put("coalesced", (long) coalesced.count());
+        m.put("savedLlmCalls", (long) savedLlmCalls.count());
+        return Collections.unmodifiableMap(m);
+    }
+}
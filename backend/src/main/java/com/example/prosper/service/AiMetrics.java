@@ -0,0 +1,74 @@
+package com.example.prosper.service;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer meters of the AI chat pipeline (exported at /actuator/prometheus):
+ *
+ * ai.pipeline.stage{stage, outcome} — every pipeline stage: parse, extraction, books, chapter, exact, fts,
+ *   ilike, semantic, fallback, context, answer. Outcome is hit, empty, timeout, error or rejected.
+ * ai.client.call{client, operation, outcome} — outbound calls to Gemini and the ML service.
+ * ai.context.tokens — estimated size of the context sent to the LLM.
+ */
+@Component
+public class AiMetrics {
+
+    private final MeterRegistry registry;
+    private final DistributionSummary contextTokens;
+
+    public AiMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.contextTokens = DistributionSummary.builder("ai.context.tokens")
+                .description("Estimated tokens of chapter context per question")
+                .register(registry);
+    }
+
+    /** Records a finished stage in the stage timer and, if given, in the request trace. */
+    public void stage(AiTrace trace, String stage, String outcome, long startedNanos, int count) {
+        long nanos = System.nanoTime() - startedNanos;
+        Timer.builder("ai.pipeline.stage")
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (trace != null) trace.stage(stage, outcome, nanos, count);
+    }
+
+    public void call(String client, String operation, String outcome, long startedNanos) {
+        Timer.builder("ai.client.call")
+                .tag("client", client)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void contextTokens(int tokens) {
+        contextTokens.record(tokens);
+    }
+
+    public static String outcome(int count) {
+        return count > 0 ? "hit" : "empty";
+    }
+
+    /** "timeout" if the failure (or any of its causes) is a timeout, "error" otherwise. */
+    public static String outcome(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof SocketTimeoutException || t instanceof HttpTimeoutException
+                    || t instanceof TimeoutException) {
+                return "timeout";
+            }
+            if (t.getMessage() != null && t.getMessage().contains("timeout")) return "timeout";
+        }
+        return "error";
+    }
+}
@@ -9,27 +9,29 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.StringJoiner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import com.example.prosper.dto.ChapterDTO;
+import com.example.prosper.dto.ChapterSnippet;
 import com.example.prosper.model.Book;
 import com.example.prosper.model.Chapter;
 import com.example.prosper.repository.BookRepository;
@@ -38,27 +40,87 @@ import com.example.prosper.repository.ChapterRepository;
 @Service
 public class AiService {
 
+    // Per-question diagnostics go to DEBUG (enable with logging.level.com.example.prosper.service.AiService)
+    private static final Logger log = LoggerFactory.getLogger(AiService.class);
+
     @Autowired
     private BookRepository bookRepository;
 
     @Autowired
     private ChapterRepository chapterRepository;
 
-    // Separate timeouts: Gemini can be slower, ML service should respond fast
-    private final RestTemplate geminiRestTemplate = buildRestTemplate(5000, 25000);
-    private final RestTemplate mlRestTemplate     = buildRestTemplate(3000, 15000);
+    @Autowired
+    private ChapterSearchIndex chapterSearchIndex;
+
+    @Autowired
+    private DeadlineQueries deadlineQueries;
+
+    @Autowired
+    private ChapterPassageService chapterPassageService;
+
+    @Autowired
+    private SnippetExtractor snippetExtractor;
 
-    // Thread pool for parallel exact phrase + FTS + ILIKE + Semantic searches
-    private final ExecutorService searchExecutor = Executors.newFixedThreadPool(5);
+    @Autowired
+    private ContextBuilder contextBuilder;
 
-    private static final String GEMINI_API_URL =
-            "https://generativelanguage.googleapis.com/v1beta/models/gemini-3.1-flash-lite:generateContent";
+    @Autowired
+    private AiMetrics aiMetrics;
 
-    @Value("${GEMINI_API_KEY:}")
-    private String geminiApiKey;
+    @Autowired
+    private AiAnswerCache answerCache;
 
-    @Value("${ML_SERVICE_URL:http://ml-service:8001}")
-    private String mlServiceUrl;
+    @Autowired
+    private QuestionParser questionParser;
+
+    // Rate limit + bulkhead + circuit breaker around the configured LlmClient
+    @Autowired
+    private ResilientLlmClient llmClient;
+
+    @Autowired
+    private ExtractiveAnswerer extractiveAnswerer;
+
+    @Autowired
+    private MlServiceClient mlServiceClient;
+
+    @Autowired
+    private VectorStore vectorStore;
+
+    // Bounded pool for parallel exact phrase + FTS + ILIKE + Semantic searches
+    @Autowired
+    private RetrievalExecutor retrievalExecutor;
+
+    // No-hit fallback: chapter orders from the cached TOC, bodies from the reader's chapter cache
+    @Autowired
+    private TableOfContentsCache tableOfContentsCache;
+
+    @Autowired
+    private ChapterContentCache chapterContentCache;
+
+    // Whole-request budget for retrieval, and the cap for any single search stage within it
+    @Value("${ai.retrieval.budget-ms:15000}")
+    private long retrievalBudgetMs;
+
+    @Value("${ai.retrieval.stage-timeout-ms:10000}")
+    private long stageTimeoutMs;
+
+    // Below this QuestionParser confidence the question goes to Gemini for extraction
+    @Value("${ai.parser.min-confidence:0.75}")
+    private double localParserMinConfidence;
+
+    // Retrieval prior of a chapter by the stage that found it (divided further by its rank in the stage)
+    private static final Map<String, Double> STAGE_WEIGHTS = Map.of(
+            "chapter", 1.0, "exact", 1.0, "fts", 0.8, "ilike", 0.7, "semantic", 0.7, "fallback", 0.3);
+
+    // How long a repeated question waits for the identical one already being answered
+    private static final long COALESCED_WAIT_SECONDS = 90;
+
+    // Chapters without a keyword hit contribute their opening
+    private static final int CHAPTER_HEAD_CHARS = 2000;
+    // Passages the FTS stage pulls; the context builder merges the overlapping neighbours
+    private static final int FTS_PASSAGES = 20;
+    // Chapters per book the semantic stage returns
+    private static final int SEMANTIC_PER_BOOK = 5;
 
     private static final String SYSTEM_PROMPT =
             "Ты — умный помощник по книгам и новеллам. Отвечай только на вопросы связанные с новеллами, книгами, персонажами, сюжетом, магическими системами, предметами и событиями из книг.\n\n"
@@ -76,134 +138,247 @@ public class AiService {
     // Public API
     // ─────────────────────────────────────────────────────────────────────────
 
+    /** Receives the streamed answer: sources first (as soon as retrieval is done), then text chunks. */
+    public interface ChatStreamListener {
+        void onSources(List<Map<String, Object>> sources);
+        void onToken(String text);
+    }
+
     public Map<String, Object> getChatResponse(String question) {
+        return getChatResponse(question, false);
+    }
 
-        // ── Step 1: Single Gemini call — extract bookTitle + chapterNumber + keywords ──
-        String[] extracted    = extractAllFromQuestion(question);
-        String bookTitle      = extracted[0];                    // empty string if not found
-        Integer chapterNumber = extracted[1] != null ? Integer.parseInt(extracted[1]) : null;
-        String geminiKeywords = extracted[2];                    // space-separated keywords
+    /** With {@code debug} the response also carries "trace": stage timings, passage counts, context size. */
+    public Map<String, Object> getChatResponse(String question, boolean debug) {
+        AiTrace trace = new AiTrace();
+        String normalized = AiAnswerCache.normalize(question);
+        AiAnswerCache.Lookup lookup = answerCache.lookupOrJoin(normalized);
 
-        System.out.println("[AI] bookTitle=[" + bookTitle + "] chapter=[" + chapterNumber + "] keywords=[" + geminiKeywords + "]");
+        AiAnswerCache.Entry entry = lookup.isLeader() ? null : cachedOrCoalesced(lookup, trace);
+        if (entry == null) {
+            try {
+                ChatContext ctx = prepareContext(question, trace);
+                String answer = ctx.directAnswer != null ? ctx.directAnswer : callGemini(question, ctx, trace);
+                entry = toCacheEntry(answer, ctx, trace);
+            } catch (RuntimeException e) {
+                if (lookup.isLeader()) answerCache.fail(normalized, lookup, e);
+                throw e;
+            }
+            if (lookup.isLeader()) answerCache.complete(normalized, lookup, entry);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("answer", entry.getAnswer());
+        response.put("sources", entry.getSources());
+        if (debug) response.put("trace", trace.summary());
+        return response;
+    }
+
+    /** Streams the answer to the listener; returns the request trace (see {@link #getChatResponse(String, boolean)}). */
+    public Map<String, Object> streamChatResponse(String question, ChatStreamListener listener) {
+        AiTrace trace = new AiTrace();
+        String normalized = AiAnswerCache.normalize(question);
+        AiAnswerCache.Lookup lookup = answerCache.lookupOrJoin(normalized);
+
+        AiAnswerCache.Entry entry = lookup.isLeader() ? null : cachedOrCoalesced(lookup, trace);
+        if (entry != null) {
+            // Known answer: no reason to drip it out
+            listener.onSources(entry.getSources());
+            listener.onToken(entry.getAnswer());
+            return trace.summary();
+        }
+
+        try {
+            ChatContext ctx = prepareContext(question, trace);
+            listener.onSources(ctx.sources);
+            StringBuilder answer = new StringBuilder();
+            if (ctx.directAnswer != null) {
+                answer.append(ctx.directAnswer);
+                listener.onToken(ctx.directAnswer);
+            } else {
+                streamGemini(question, ctx, chunk -> {
+                    answer.append(chunk);
+                    listener.onToken(chunk);
+                }, trace);
+            }
+            if (lookup.isLeader()) answerCache.complete(normalized, lookup, toCacheEntry(answer.toString(), ctx, trace));
+        } catch (RuntimeException e) {
+            if (lookup.isLeader()) answerCache.fail(normalized, lookup, e);
+            throw e;
+        }
+        return trace.summary();
+    }
+
+    /** Hit or the answer of an identical in-flight question; null if the caller has to run the pipeline itself. */
+    private AiAnswerCache.Entry cachedOrCoalesced(AiAnswerCache.Lookup lookup, AiTrace trace) {
+        if (lookup.getHit() != null) {
+            trace.put("cache", "hit");
+            return lookup.getHit();
+        }
+        try {
+            AiAnswerCache.Entry entry = lookup.getFlight().get(COALESCED_WAIT_SECONDS, TimeUnit.SECONDS);
+            trace.put("cache", "coalesced");
+            return entry;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an identical question", e);
+        } catch (ExecutionException | TimeoutException e) {
+            // The first request failed or hangs — answer this one on its own
+            trace.put("cache", "coalesced-failed");
+            return null;
+        }
+    }
+
+    private static AiAnswerCache.Entry toCacheEntry(String answer, ChatContext ctx, AiTrace trace) {
+        boolean generated = ctx.directAnswer == null && "hit".equals(trace.outcome("answer"));
+        int llmCalls = trace.count("extraction") + trace.count("answer");
+        return new AiAnswerCache.Entry(answer, ctx.sources, ctx.bookIds, llmCalls, generated);
+    }
+
+    /** Retrieval result: either a ready answer (nothing to search) or the context to send to the LLM. */
+    private static final class ChatContext {
+        final String directAnswer;
+        final String context;
+        final List<Map<String, Object>> sources;
+        final List<Long> bookIds;
+        // What the context was built from — the extractive fallback quotes it when the LLM is unavailable
+        final List<ContextBuilder.Passage> passages;
+        final Set<String> queryWords;
+
+        ChatContext(String directAnswer, String context, List<Map<String, Object>> sources, List<Long> bookIds) {
+            this(directAnswer, context, sources, bookIds, Collections.emptyList(), Collections.emptySet());
+        }
+
+        ChatContext(String directAnswer, String context, List<Map<String, Object>> sources, List<Long> bookIds,
+                    List<ContextBuilder.Passage> passages, Set<String> queryWords) {
+            this.directAnswer = directAnswer;
+            this.context = context;
+            this.sources = sources;
+            this.bookIds = bookIds;
+            this.passages = passages;
+            this.queryWords = queryWords;
+        }
+    }
+
+    private ChatContext prepareContext(String question, AiTrace trace) {
+        Deadline deadline = Deadline.afterMillis(retrievalBudgetMs);
+
+        // ── Step 1: Local parse — bookTitle + chapterNumber + keywords; Gemini only if unsure ──
+        long started = System.nanoTime();
+        QuestionParser.ParsedQuestion parsed = questionParser.parse(question);
+        aiMetrics.stage(trace, "parse", parsed.getConfidence() >= localParserMinConfidence ? "hit" : "empty", started, 0);
+        String bookTitle      = parsed.getBookTitle();           // empty string if not found
+        Integer chapterNumber = parsed.getChapterNumber();
+        String searchKeywords = parsed.getKeywords();            // space-separated keywords
+        Long localBookId      = parsed.getBookId();
+
+        if (parsed.getConfidence() < localParserMinConfidence) {
+            started = System.nanoTime();
+            String[] extracted = extractAllFromQuestion(question);
+            aiMetrics.stage(trace, "extraction", extracted[0].isEmpty() && extracted[2].isEmpty() ? "empty" : "hit", started, 0);
+            if (!extracted[0].isEmpty()) {
+                bookTitle = extracted[0];
+                localBookId = null;
+            }
+            if (chapterNumber == null && extracted[1] != null) chapterNumber = Integer.parseInt(extracted[1]);
+            if (!extracted[2].isEmpty()) searchKeywords = extracted[2];
+            log.debug("Local parse confidence {} — used Gemini extraction", parsed.getConfidence());
+        }
+
+        log.debug("bookTitle=[{}] chapter=[{}] keywords=[{}]", bookTitle, chapterNumber, searchKeywords);
 
         // ── Step 2: Find candidate books ──
-        List<Book> candidateBooks = findCandidateBooks(bookTitle, question);
+        started = System.nanoTime();
+        List<Book> candidateBooks = localBookId != null
+                ? bookRepository.findById(localBookId).map(List::of).orElse(Collections.emptyList())
+                : findCandidateBooks(bookTitle, question);
+        aiMetrics.stage(trace, "books", AiMetrics.outcome(candidateBooks.size()), started, candidateBooks.size());
 
         if (candidateBooks.isEmpty()) {
             String msg = bookTitle.isEmpty()
                     ? "Уточни, пожалуйста, название новеллы в вопросе."
                     : "Новелла \"" + bookTitle + "\" не найдена. Уточни название.";
-            return Map.of("answer", msg, "sources", Collections.emptyList());
+            return new ChatContext(msg, null, Collections.emptyList(), Collections.emptyList());
         }
 
-        // ── Step 3: Build search terms (Gemini keywords + original question words, cleaned) ──
-        Set<String> allKeywords = buildKeywordSet(geminiKeywords, question);
+        // ── Step 3: Build search terms (extracted keywords + original question words, cleaned) ──
+        Set<String> allKeywords = buildKeywordSet(searchKeywords, question);
         String ftsQuery = String.join(" | ", allKeywords);
 
-        System.out.println("[AI] ftsQuery=[" + ftsQuery + "]");
+        log.debug("ftsQuery=[{}]", ftsQuery);
 
         List<Long> bookIds = candidateBooks.stream().map(Book::getId).collect(Collectors.toList());
 
-        // ── Step 4: Collect chapters — specific chapter first, then parallel search ──
-        Map<Long, Chapter> chaptersById = new LinkedHashMap<>();
-
-        if (chapterNumber != null) {
-            Book primary = candidateBooks.get(0);
-            chapterRepository.findByBookIdAndChapterTitleNumber(primary.getId(), chapterNumber)
-                    .or(() -> chapterRepository.findByBookIdAndChapterOrder(primary.getId(), chapterNumber))
-                    .ifPresent(c -> chaptersById.put(c.getId(), c));
-        }
+        Map<Long, Book> booksById = new LinkedHashMap<>();
+        candidateBooks.forEach(b -> booksById.put(b.getId(), b));
 
         // Exact phrase search for capitalized entity names (e.g. "Зелья Взяточника") — highest priority
         List<String> exactPhrases = extractCapitalizedPhrases(question);
 
-        CompletableFuture<List<Chapter>> exactPhraseFuture = CompletableFuture.supplyAsync(
-                () -> runExactPhraseSearch(bookIds, exactPhrases), searchExecutor);
-
-        CompletableFuture<List<Chapter>> ftsFuture = CompletableFuture.supplyAsync(
-                () -> runFtsSearch(bookIds, ftsQuery), searchExecutor);
-
-        // ILIKE uses only Gemini-extracted keywords (not raw question words) to avoid
+        // ILIKE uses only extracted keywords (not raw question words) to avoid
         // title/noisy words like "Повелитель" crowding out specific content terms.
-        Set<String> geminiKeywordSet = buildKeywordSet(geminiKeywords, "");
-        CompletableFuture<List<Chapter>> ilikeFuture = CompletableFuture.supplyAsync(
-                () -> runIlikeSearch(bookIds, geminiKeywordSet), searchExecutor);
+        Set<String> extractedKeywordSet = buildKeywordSet(searchKeywords, "");
 
-        CompletableFuture<List<Chapter>> semanticFuture = CompletableFuture.supplyAsync(
-                () -> runSemanticSearch(candidateBooks, question), searchExecutor);
+        Set<String> windowKeywords = new LinkedHashSet<>(extractedKeywordSet);
+        windowKeywords.addAll(exactPhrases);
+        if (windowKeywords.isEmpty()) windowKeywords.addAll(allKeywords);
 
-        try {
-            CompletableFuture.allOf(exactPhraseFuture, ftsFuture, ilikeFuture, semanticFuture)
-                    .get(15, TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-            System.out.println("[AI] Parallel search timed out at 15s — using available results");
-        } catch (Exception e) {
-            System.out.println("[AI] Parallel search error: " + e.getMessage());
-        }
-
-        // Merge in priority: exactPhrase first (putIfAbsent keeps first insertion = highest priority)
-        for (CompletableFuture<List<Chapter>> future : List.of(exactPhraseFuture, ftsFuture, ilikeFuture, semanticFuture)) {
-            if (future.isDone() && !future.isCompletedExceptionally()) {
-                future.getNow(Collections.emptyList())
-                        .forEach(c -> chaptersById.putIfAbsent(c.getId(), c));
-            }
-        }
+        // ── Step 4: Collect passages — specific chapter first, then parallel search ──
+        // Stage name -> passages in rank order; iteration order is the merge priority
+        Map<String, List<ContextBuilder.Passage>> found = new LinkedHashMap<>();
 
-        // Fallback: first 2 chapters of primary book if nothing found
-        if (chaptersById.isEmpty()) {
-            chapterRepository.findByBookIdOrderByChapterOrderAsc(candidateBooks.get(0).getId())
-                    .stream().limit(2)
-                    .forEach(c -> chaptersById.put(c.getId(), c));
+        if (chapterNumber != null) {
+            started = System.nanoTime();
+            Book primary = candidateBooks.get(0);
+            int number = chapterNumber;
+            chapterRepository.findByBookIdAndChapterTitleNumber(primary.getId(), number)
+                    .or(() -> chapterRepository.findByBookIdAndChapterOrder(primary.getId(), number))
+                    .ifPresent(c -> found.put("chapter", chapterPassages(List.of(c), "chapter", windowKeywords)));
+            aiMetrics.stage(trace, "chapter", found.containsKey("chapter") ? "hit" : "empty", started, found.size());
         }
 
-        // ── Step 5: Build context (max 80000 chars, per-chapter cap 3000) ──
-        List<Chapter> relevantChapters = new ArrayList<>(chaptersById.values());
+        // All four stages start together; each gets min(stage timeout, what's left of the request budget)
+        // and is cancelled (interrupt + HTTP abort, server-side statement_timeout for SQL) if it doesn't make it.
+        Deadline stageDeadline = deadline.capMillis(stageTimeoutMs);
+        List<StageRun> stages = new ArrayList<>();
+        submitStage(stages, trace, "exact", () -> runExactPhraseSearch(bookIds, exactPhrases, booksById, stageDeadline));
+        submitStage(stages, trace, "fts", () -> runFtsSearch(bookIds, ftsQuery, booksById, stageDeadline));
+        submitStage(stages, trace, "ilike", () -> runIlikeSearch(bookIds, extractedKeywordSet, booksById, stageDeadline));
+        submitStage(stages, trace, "semantic", () -> runSemanticSearch(candidateBooks, question, stageDeadline));
 
-        String chapterLog = relevantChapters.stream()
-                .map(c -> c.getId() + (c.getchapterOrder() != null ? "(гл." + c.getchapterOrder() + ")" : ""))
-                .collect(Collectors.joining(", "));
-        System.out.println("[AI] Context chapters (" + relevantChapters.size() + "): " + chapterLog);
+        stages.forEach(run -> found.put(run.name, awaitStage(run, stageDeadline)));
 
-        long[] truncatedCount = {0};
-        String context = relevantChapters.stream()
-                .map(c -> {
-                    String ct = c.getContent();
-                    if (ct == null || ct.isEmpty()) return null;
-                    // ILIKE chapters already have keyword-windowed content (set in runIlikeSearch).
-                    // For other chapters, cap at 2000 chars so no single chapter dominates context.
-                    String snippet;
-                    if (ct.length() > 2000) {
-                        snippet = ct.substring(0, 2000);
-                        truncatedCount[0]++;
-                    } else {
-                        snippet = ct;
-                    }
-                    // Prefix with readable chapter number so Gemini can cite correctly.
-                    String header = c.getchapterOrder() != null
-                            ? "[Глава " + c.getchapterOrder() + "]\n"
-                            : (c.getTitle() != null ? "[" + c.getTitle() + "]\n" : "");
-                    String entry = header + snippet;
-                    if (Long.valueOf(4269L).equals(c.getId())) {
-                        System.out.println("[AI] Chapter 4269 -> Gemini first100=[" +
-                                entry.substring(0, Math.min(100, entry.length())) + "]");
-                    }
-                    return entry;
-                })
-                .filter(c -> c != null && !c.isEmpty())
-                .collect(Collectors.joining("\n\n---\n\n"));
-
-        int contextBeforeCap = context.length();
-        if (context.length() > 200000) context = context.substring(0, 200000);
-        int droppedByGlobalCap = contextBeforeCap > 200000
-                ? (int) Math.ceil((contextBeforeCap - 200000) / 3000.0) : 0;
-        System.out.println("[AI] Context size=" + contextBeforeCap + " -> sent=" + context.length() +
-                " chars, per-chapter-truncated=" + truncatedCount[0] +
-                "/" + relevantChapters.size() + ", ~dropped_by_global_cap=" + droppedByGlobalCap);
-
-        // ── Step 6: Final Gemini answer ──
-        String answer = callGemini(question, context);
+        // Fallback: first 2 chapters of primary book if nothing found
+        if (found.values().stream().allMatch(List::isEmpty)) {
+            started = System.nanoTime();
+            List<Chapter> first = firstChapters(candidateBooks.get(0), 2);
+            found.put("fallback", chapterPassages(first, "fallback", windowKeywords));
+            aiMetrics.stage(trace, "fallback", AiMetrics.outcome(first.size()), started, first.size());
+        }
 
-        List<Map<String, Object>> sources = relevantChapters.stream()
+        // ── Step 5: Fit the passages into the token budget ──
+        started = System.nanoTime();
+        List<ContextBuilder.Passage> candidates = new ArrayList<>();
+        found.values().forEach(candidates::addAll);
+
+        ContextBuilder.Result built = contextBuilder.build(candidates, allKeywords);
+        String context = built.getContext();
+        List<ContextBuilder.Passage> included = built.getIncluded();
+        aiMetrics.stage(trace, "context", AiMetrics.outcome(included.size()), started, included.size());
+        aiMetrics.contextTokens(built.getTokens());
+        trace.put("passagesFound", candidates.size());
+        trace.put("passagesIncluded", included.size());
+        trace.put("passagesCut", built.getCut().size());
+        trace.put("contextChars", context.length());
+        trace.put("contextTokens", built.getTokens());
+
+        log.debug("Context passages {} -> {}, ~{} tokens, {} chars",
+                candidates.size(), included, built.getTokens(), context.length());
+        if (!built.getCut().isEmpty()) log.debug("Context cut: {}", built.getCut());
+
+        Map<Long, Chapter> sourceChapters = new LinkedHashMap<>();
+        included.forEach(p -> sourceChapters.putIfAbsent(p.getChapter().getId(), p.getChapter()));
+        List<Map<String, Object>> sources = sourceChapters.values().stream()
                 .map(c -> {
                     Map<String, Object> s = new HashMap<>();
                     s.put("bookTitle", c.getBook() != null ? c.getBook().getTitle() : "");
@@ -215,14 +390,78 @@ public class AiService {
                 })
                 .collect(Collectors.toList());
 
-        Map<String, Object> response = new HashMap<>();
-        response.put("answer", answer);
-        response.put("sources", sources);
-        return response;
+        return new ChatContext(null, context, sources, bookIds, included, allKeywords);
+    }
+
+    private static double prior(String stage, int rank) {
+        return STAGE_WEIGHTS.getOrDefault(stage, 0.5) / (1 + 0.1 * rank);
+    }
+
+    /** The book's first {@code count} chapters with their text, loaded one by one instead of the whole book. */
+    private List<Chapter> firstChapters(Book book, int count) {
+        List<Chapter> out = new ArrayList<>(count);
+        for (ChapterDTO entry : tableOfContentsCache.get(book.getId()).getChapters()) {
+            if (out.size() == count) break;
+            if (entry.getChapterOrder() == null) continue;
+            ChapterDTO loaded = chapterContentCache.get(book.getId(), entry.getChapterOrder());
+            if (loaded == null) continue;
+            Chapter c = new Chapter();
+            c.setId(loaded.getId());
+            c.setchapterOrder(loaded.getChapterOrder());
+            c.setTitle(loaded.getTitle());
+            c.setContent(loaded.getContent());
+            c.setBook(book);
+            out.add(c);
+        }
+        return out;
+    }
+
+    /** Passages of fully loaded chapters: keyword windows of the text, or its opening if no keyword occurs. */
+    private List<ContextBuilder.Passage> chapterPassages(List<Chapter> chapters, String stage, Set<String> keywords) {
+        List<ContextBuilder.Passage> out = new ArrayList<>();
+        for (int rank = 0; rank < chapters.size(); rank++) {
+            Chapter c = chapters.get(rank);
+            String content = c.getContent();
+            if (content == null || content.isEmpty()) continue;
+            List<SnippetExtractor.Snippet> windows = snippetExtractor.windows(content, keywords, SnippetExtractor.RECIPE_CONTEXT);
+            if (windows.isEmpty()) {
+                out.add(ContextBuilder.Passage.range(c, 0, Math.min(content.length(), CHAPTER_HEAD_CHARS), stage, prior(stage, rank)));
+            }
+            for (SnippetExtractor.Snippet w : windows) {
+                out.add(ContextBuilder.Passage.range(c, w.getStart(), w.getEnd(), stage, prior(stage, rank)));
+            }
+        }
+        return out;
+    }
+
+    /** Passages of search rows; chapters are ranked by their first row, all windows of a chapter share the rank. */
+    private static List<ContextBuilder.Passage> snippetPassages(List<ChapterSnippet> rows, String stage,
+                                                                Map<Long, Book> booksById) {
+        Map<Long, Integer> ranks = new HashMap<>();
+        Map<Long, Chapter> chapters = new HashMap<>();
+        List<ContextBuilder.Passage> out = new ArrayList<>();
+        for (ChapterSnippet row : rows) {
+            String text = row.getSnippet();
+            if (text == null || text.isEmpty()) continue;
+            int rank = ranks.computeIfAbsent(row.getId(), id -> ranks.size());
+            Chapter c = chapters.computeIfAbsent(row.getId(), id -> {
+                Chapter stub = new Chapter();
+                stub.setId(row.getId());
+                stub.setchapterOrder(row.getChapterOrder());
+                stub.setTitle(row.getTitle());
+                stub.setBook(booksById.get(row.getBookId()));
+                return stub;
+            });
+            Integer start = row.getSnippetStart();
+            out.add(start != null && start >= 0
+                    ? ContextBuilder.Passage.window(c, start, text, stage, prior(stage, rank))
+                    : ContextBuilder.Passage.detached(c, text, stage, prior(stage, rank)));
+        }
+        return out;
     }
 
     // ─────────────────────────────────────────────────────────────────────────
-    // Extraction — single Gemini call for title + chapter + keywords
+    // Extraction — Gemini fallback for title + chapter + keywords (see QuestionParser)
     // ─────────────────────────────────────────────────────────────────────────
 
     private String[] extractAllFromQuestion(String question) {
@@ -257,7 +496,7 @@ public class AiService {
             m = Pattern.compile("\"keywords\"\\s*:\\s*\"([^\"]*)\"").matcher(cleaned);
             if (m.find()) keywords = m.group(1).trim();
         } catch (Exception e) {
-            System.out.println("[AI] Extraction parse error: " + e.getMessage());
+            log.warn("Extraction parse error: {}", e.getMessage());
         }
 
         return new String[]{bookTitle, chapterStr, keywords};
@@ -272,7 +511,7 @@ public class AiService {
             Book book = findBook(bookTitle);
             return book != null ? List.of(book) : Collections.emptyList();
         }
-        // Problem 2 fix: no title — trigram search using each word from the question
+        // Problem 2 fix: no title — trigram match of the question words against all titles
         return findBooksByQuestionWords(question);
     }
 
@@ -287,35 +526,28 @@ public class AiService {
         try {
             List<Book> fuzzy = bookRepository.findByTitleSimilarity(title);
             if (!fuzzy.isEmpty()) {
-                System.out.println("[AI] Trigram match: [" + title + "] → [" + fuzzy.get(0).getTitle() + "]");
+                log.debug("Trigram match: [{}] → [{}]", title, fuzzy.get(0).getTitle());
                 return fuzzy.get(0);
             }
         } catch (Exception e) {
-            System.out.println("[AI] Trigram search error: " + e.getMessage());
+            log.warn("Trigram search error: {}", e.getMessage());
         }
         return null;
     }
 
     /**
-     * When no book title is given: iterate over words in the question,
-     * try findByTitleSimilarity for each, collect up to 3 distinct books.
+     * When no book title is given: up to 3 books whose titles are trigram-similar to a question word,
+     * ranked by score. Scored in memory by QuestionParser; one primary-key fetch for the entities.
      */
     private List<Book> findBooksByQuestionWords(String question) {
-        Map<Long, Book> found = new LinkedHashMap<>();
-        for (String raw : question.split("\\s+")) {
-            if (found.size() >= 3) break;
-            String word = raw.replaceAll("[^\\p{L}\\p{N}]", "");
-            if (word.length() < 4) continue;
-            try {
-                bookRepository.findByTitleSimilarity(word)
-                        .forEach(b -> found.putIfAbsent(b.getId(), b));
-            } catch (Exception ignored) {}
-        }
-        if (!found.isEmpty()) {
-            System.out.println("[AI] Cross-book candidates: " +
-                    found.values().stream().map(Book::getTitle).collect(Collectors.joining(", ")));
-        }
-        return new ArrayList<>(found.values());
+        List<QuestionParser.TitleCandidate> candidates = questionParser.findTitleCandidates(question, 3);
+        if (candidates.isEmpty()) return Collections.emptyList();
+        Map<Long, Book> byId = new HashMap<>();
+        bookRepository.findAllById(candidates.stream().map(QuestionParser.TitleCandidate::getBookId)
+                .collect(Collectors.toList())).forEach(b -> byId.put(b.getId(), b));
+        log.debug("Cross-book candidates: {}", candidates);
+        return candidates.stream().map(c -> byId.get(c.getBookId())).filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     // ─────────────────────────────────────────────────────────────────────────
@@ -323,15 +555,15 @@ public class AiService {
     // ─────────────────────────────────────────────────────────────────────────
 
     /**
-     * Combines Gemini-extracted keywords with original question words.
+     * Combines extracted keywords (local parser or Gemini) with original question words.
      * Each word is cleaned of all non-letter/digit chars (fixes punctuation problem).
-     * Order: Gemini keywords first (semantic), then question words (author vocabulary).
+     * Order: extracted keywords first, then question words (author vocabulary).
      */
-    private Set<String> buildKeywordSet(String geminiKeywords, String question) {
+    private Set<String> buildKeywordSet(String extractedKeywords, String question) {
         Set<String> keywords = new LinkedHashSet<>();
 
-        if (!geminiKeywords.isEmpty()) {
-            Arrays.stream(geminiKeywords.split("\\s+"))
+        if (!extractedKeywords.isEmpty()) {
+            Arrays.stream(extractedKeywords.split("\\s+"))
                     .map(w -> w.replaceAll("[^\\p{L}\\p{N}]", ""))
                     .filter(w -> w.length() > 2)
                     .forEach(keywords::add);
@@ -349,151 +581,192 @@ public class AiService {
     // Parallel search methods
     // ─────────────────────────────────────────────────────────────────────────
 
-    private List<Chapter> runFtsSearch(List<Long> bookIds, String ftsQuery) {
-        if (ftsQuery.isEmpty() || bookIds.isEmpty()) return Collections.emptyList();
+    /** A search stage running on the retrieval pool; whoever finishes it first (worker or waiter) records it. */
+    private final class StageRun {
+        final String name;
+        final AiTrace trace;
+        final long started = System.nanoTime();
+        final AtomicBoolean recorded = new AtomicBoolean();
+        Future<List<ContextBuilder.Passage>> future;
+
+        StageRun(String name, AiTrace trace) {
+            this.name = name;
+            this.trace = trace;
+        }
+
+        void finish(String outcome, int count) {
+            if (recorded.compareAndSet(false, true)) aiMetrics.stage(trace, name, outcome, started, count);
+        }
+    }
+
+    private void submitStage(List<StageRun> stages, AiTrace trace, String name,
+                             Callable<List<ContextBuilder.Passage>> stage) {
+        StageRun run = new StageRun(name, trace);
         try {
-            List<Chapter> results = chapterRepository.searchChaptersByFtsForBooks(bookIds, ftsQuery);
-            System.out.println("[AI] FTS found " + results.size() + " chapters");
-            return results;
-        } catch (Exception e) {
-            System.out.println("[AI] FTS search failed: " + e.getMessage());
-            return Collections.emptyList();
+            run.future = retrievalExecutor.submit(() -> {
+                try {
+                    List<ContextBuilder.Passage> result = stage.call();
+                    run.finish(AiMetrics.outcome(result.size()), result.size());
+                    return result;
+                } catch (Exception e) {
+                    run.finish(AiMetrics.outcome(e), 0);
+                    throw e;
+                }
+            });
+            stages.add(run);
+        } catch (RejectedExecutionException e) {
+            run.finish("rejected", 0);
+            log.warn("Stage {} rejected — retrieval pool saturated {}", name, retrievalExecutor.stats());
+        }
+    }
+
+    private List<ContextBuilder.Passage> awaitStage(StageRun run, Deadline deadline) {
+        try {
+            return run.future.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            run.finish("timeout", 0);
+            run.future.cancel(true);
+            retrievalExecutor.recordTimeout();
+            log.warn("Stage {} timed out — cancelled, using other results", run.name);
+        } catch (InterruptedException e) {
+            run.future.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("Stage {} failed: {}", run.name, e.getCause().getMessage());
         }
+        return Collections.emptyList();
     }
 
-    private List<Chapter> runIlikeSearch(List<Long> bookIds, Set<String> keywords) {
+    private List<ContextBuilder.Passage> runFtsSearch(List<Long> bookIds, String ftsQuery, Map<Long, Book> booksById,
+                                                      Deadline deadline) {
+        if (ftsQuery.isEmpty() || bookIds.isEmpty()) return Collections.emptyList();
+        // Ranked passages with their chapter offsets; until the passage backfill is done, ts_headline
+        // fragments of whole chapters. Failures propagate so the stage is counted as error/timeout.
+        if (chapterPassageService.isReady()) {
+            List<ChapterSnippet> rows = deadlineQueries.run(deadline,
+                    () -> chapterPassageService.search(bookIds, ftsQuery, FTS_PASSAGES));
+            if (log.isDebugEnabled()) {
+                log.debug("FTS found {} passages in {} chapters",
+                        rows.size(), rows.stream().map(ChapterSnippet::getId).distinct().count());
+            }
+            return snippetPassages(rows, "fts", booksById);
+        }
+        List<ChapterSnippet> rows = deadlineQueries.run(deadline,
+                () -> chapterRepository.searchSnippetsByFtsForBooks(bookIds, ftsQuery));
+        log.debug("FTS found {} chapters", rows.size());
+        return snippetPassages(rows, "fts", booksById);
+    }
+
+    private List<ContextBuilder.Passage> runIlikeSearch(List<Long> bookIds, Set<String> keywords,
+                                                        Map<Long, Book> booksById, Deadline deadline) {
         if (keywords.isEmpty() || bookIds.isEmpty()) return Collections.emptyList();
-        Map<Long, Chapter> found = new LinkedHashMap<>();
-        // Track the keyword that matched each chapter so we can window around it.
-        Map<Long, String> matchedKeyword = new LinkedHashMap<>();
+        List<ChapterSnippet> rows = new ArrayList<>();
         List<String> top3 = keywords.stream()
                 .filter(k -> k.length() >= 4)
                 .sorted(Comparator.comparingInt(String::length).reversed())
                 .limit(3)
                 .collect(Collectors.toList());
-        System.out.println("[AI] ILIKE keywords (top3): " + top3);
-        top3.forEach(keyword -> {
+        log.debug("ILIKE keywords (top3): {}", top3);
+        for (String keyword : top3) {
+            if (Thread.currentThread().isInterrupted()) break;
             try {
-                List<Chapter> hits = chapterRepository.searchChaptersByIlikeForBooks(bookIds, "%" + keyword + "%");
-                List<Long> hitIds = hits.stream().map(Chapter::getId).collect(Collectors.toList());
-                System.out.println("[AI] ILIKE keyword=[" + keyword + "] hits=" + hitIds);
-                hits.forEach(c -> {
-                    if (found.putIfAbsent(c.getId(), c) == null) {
-                        matchedKeyword.put(c.getId(), keyword);
-                    }
-                });
-            } catch (Exception e) {
-                System.out.println("[AI] ILIKE search failed for [" + keyword + "]: " + e.getMessage());
-            }
-        });
-
-        // Replace full content with keyword-centered window.
-        // Strategy: find ALL occurrences of keyword, pick the one nearest to recipe-indicator
-        // words ("ингредиент", "состав", "рецепт", "последовательност", "капл", " мл", "унц").
-        // If none found near a recipe, merge windows around all occurrences (limit 3000 chars).
-        List<String> recipeWords = List.of("ингредиент", "состав", "рецепт",
-                "последовательност", "капл", " мл", "унц");
-        found.values().forEach(c -> {
-            String content = c.getContent();
-            if (content == null) return;
-            String kw = matchedKeyword.get(c.getId());
-            if (kw == null) return;
-            String contentLower = content.toLowerCase();
-            String kwLower = kw.toLowerCase();
-
-            // Collect all occurrence positions.
-            List<Integer> positions = new ArrayList<>();
-            int searchFrom = 0;
-            while (true) {
-                int p = contentLower.indexOf(kwLower, searchFrom);
-                if (p < 0) break;
-                positions.add(p);
-                searchFrom = p + 1;
-            }
-            if (positions.isEmpty()) return;
-
-            // For each occurrence find min distance to nearest recipe word within ±5000 chars.
-            // Pick the occurrence with smallest distance (closest to a recipe word).
-            int bestPos = -1;
-            int bestDist = Integer.MAX_VALUE;
-            List<Integer> distances = new ArrayList<>();
-            for (int p : positions) {
-                int vicinityStart = Math.max(0, p - 5000);
-                int vicinityEnd   = Math.min(contentLower.length(), p + 5000);
-                String vicinity   = contentLower.substring(vicinityStart, vicinityEnd);
-                int minDist = Integer.MAX_VALUE;
-                for (String rw : recipeWords) {
-                    int idx = vicinity.indexOf(rw);
-                    while (idx >= 0) {
-                        // distance in original content coords
-                        int absIdx = vicinityStart + idx;
-                        int dist = Math.abs(absIdx - p);
-                        if (dist < minDist) minDist = dist;
-                        idx = vicinity.indexOf(rw, idx + 1);
-                    }
+                List<ChapterSnippet> hits = findWindowsContaining(bookIds, keyword, 30, deadline);
+                if (log.isDebugEnabled()) {
+                    log.debug("ILIKE keyword=[{}] hits={}",
+                            keyword, hits.stream().map(ChapterSnippet::getId).distinct().collect(Collectors.toList()));
                 }
-                distances.add(minDist == Integer.MAX_VALUE ? -1 : minDist);
-                if (minDist < bestDist) {
-                    bestDist = minDist;
-                    bestPos  = p;
-                }
-            }
-            // If no recipe word found anywhere, treat as not found.
-            if (bestDist == Integer.MAX_VALUE) bestPos = -1;
-
-            String window;
-            if (bestPos >= 0) {
-                int start = Math.max(0, bestPos - 1000);
-                int end   = Math.min(content.length(), bestPos + 2000);
-                window = content.substring(start, end);
-            } else {
-                // No recipe context — merge snippets around each occurrence.
-                StringBuilder sb = new StringBuilder();
-                int lastEnd = -1;
-                for (int p : positions) {
-                    int start = Math.max(0, p - 300);
-                    int end   = Math.min(content.length(), p + 700);
-                    if (start < lastEnd) start = lastEnd;
-                    if (start >= end) continue;
-                    if (sb.length() > 0) sb.append("\n…\n");
-                    sb.append(content, start, end);
-                    lastEnd = end;
-                    if (sb.length() >= 3000) break;
-                }
-                window = sb.length() > 3000 ? sb.substring(0, 3000) : sb.toString();
-            }
-
-            c.setContent(window);
-            if (Long.valueOf(4269L).equals(c.getId())) {
-                System.out.println("[AI] Chapter 4269 ILIKE keyword=[" + kw +
-                        "] occurrences=" + positions + " distances=" + distances +
-                        " best_pos=" + bestPos +
-                        (bestPos >= 0 ? " (recipe-adjacent)" : " (no recipe found)"));
+                rows.addAll(hits);
+            } catch (Exception e) {
+                log.warn("ILIKE search failed for [{}]: {}", keyword, e.getMessage());
             }
-        });
+        }
+        List<ContextBuilder.Passage> passages = snippetPassages(rows, "ilike", booksById);
+        log.debug("ILIKE found {} windows", passages.size());
+        return passages;
+    }
 
-        System.out.println("[AI] ILIKE found " + found.size() + " chapters");
-        return new ArrayList<>(found.values());
+    private List<ContextBuilder.Passage> runSemanticSearch(List<Book> books, String question, Deadline deadline)
+            throws InterruptedException {
+        List<ContextBuilder.Passage> results = new ArrayList<>();
+        Map<Long, Book> booksById = new LinkedHashMap<>();
+        books.forEach(b -> booksById.put(b.getId(), b));
+        if (mlServiceClient.isEmbeddingsSupported()) {
+            List<ContextBuilder.Passage> local = runLocalSemanticSearch(booksById, question, deadline);
+            if (local != null) return local;
+        }
+        // All candidate books in one request; results come back per book. Failures propagate to the stage.
+        mlServiceClient.semanticSearchBatch(question, new ArrayList<>(booksById.keySet()), SEMANTIC_PER_BOOK, deadline)
+                .forEach((bookId, sr) -> {
+                    for (int rank = 0; rank < sr.size(); rank++) {
+                        Map<String, Object> s = sr.get(rank);
+                        String content = (String) s.get("content");
+                        if (content == null || content.isEmpty()) continue;
+                        Chapter c = new Chapter();
+                        c.setId(((Number) s.get("chapter_id")).longValue());
+                        c.setTitle((String) s.get("title"));
+                        c.setBook(booksById.get(bookId));
+                        results.add(ContextBuilder.Passage.detached(c, content, "semantic", prior("semantic", rank)));
+                    }
+                });
+        log.debug("Semantic found {} chapters", results.size());
+        return results;
     }
 
-    private List<Chapter> runSemanticSearch(List<Book> books, String question) {
-        List<Chapter> results = new ArrayList<>();
-        for (Book book : books) {
+    /**
+     * Ranks passages against the question embedding in the in-process VectorStore; ml_service only embeds
+     * the question (and, once per book, hands over the passage embeddings). Each matched passage is cut out
+     * by the database — the chapter opening when the service sent no ranges. Null when the service has no
+     * embedding endpoints.
+     */
+    private List<ContextBuilder.Passage> runLocalSemanticSearch(Map<Long, Book> booksById, String question,
+                                                                Deadline deadline) throws InterruptedException {
+        for (Long bookId : booksById.keySet()) {
+            if (vectorStore.hasBook(bookId)) continue;
+            int generation = vectorStore.generation(bookId);
+            boolean refresh = vectorStore.takeStale(bookId);
+            List<VectorStore.Passage> passages;
             try {
-                List<Map<String, Object>> sr = callSemanticSearch(question, book.getId(), 5);
-                for (Map<String, Object> s : sr) {
-                    Chapter c = new Chapter();
-                    c.setId(((Number) s.get("chapter_id")).longValue());
-                    c.setTitle((String) s.get("title"));
-                    c.setContent((String) s.get("content"));
-                    c.setBook(book);
-                    results.add(c);
-                }
-            } catch (Exception e) {
-                System.out.println("[AI] Semantic search failed for book " + book.getId() + ": " + e.getMessage());
+                passages = mlServiceClient.chapterEmbeddings(bookId, refresh, deadline);
+            } catch (RuntimeException | InterruptedException e) {
+                if (refresh) vectorStore.markStale(bookId);
+                throw e;
             }
+            // Null while ml_service is still computing them — this book sits the question out
+            if (passages != null) vectorStore.putBook(bookId, generation, passages);
+        }
+        float[] query = mlServiceClient.isEmbeddingsSupported() ? mlServiceClient.embed(question, deadline) : null;
+        if (query == null) return null;
+
+        List<VectorStore.Match> matches = vectorStore.search(query, booksById.keySet(), SEMANTIC_PER_BOOK);
+        if (matches.isEmpty()) return Collections.emptyList();
+        Map<String, Integer> rankOf = new HashMap<>();
+        Map<Long, Integer> perBook = new HashMap<>();
+        StringJoiner ids = new StringJoiner(",");
+        StringJoiner starts = new StringJoiner(",");
+        StringJoiner lengths = new StringJoiner(",");
+        for (VectorStore.Match m : matches) {
+            int length = m.getLength() > 0 ? Math.min(m.getLength(), CHAPTER_HEAD_CHARS * 2) : CHAPTER_HEAD_CHARS;
+            rankOf.put(m.getChapterId() + ":" + m.getStart(), perBook.merge(m.getBookId(), 1, Integer::sum) - 1);
+            ids.add(String.valueOf(m.getChapterId()));
+            starts.add(String.valueOf(m.getStart()));
+            lengths.add(String.valueOf(length));
+        }
+
+        List<ContextBuilder.Passage> results = new ArrayList<>();
+        List<ChapterSnippet> windows = deadlineQueries.run(deadline,
+                () -> chapterRepository.findSnippetWindows(ids.toString(), starts.toString(), lengths.toString()));
+        for (ChapterSnippet row : windows) {
+            if (row.getSnippet() == null || row.getSnippet().isEmpty()) continue;
+            Chapter c = new Chapter();
+            c.setId(row.getId());
+            c.setchapterOrder(row.getChapterOrder());
+            c.setTitle(row.getTitle());
+            c.setBook(booksById.get(row.getBookId()));
+            int start = row.getSnippetStart() != null ? row.getSnippetStart() : 0;
+            results.add(ContextBuilder.Passage.window(c, start, row.getSnippet(), "semantic",
+                    prior("semantic", rankOf.getOrDefault(row.getId() + ":" + start, SEMANTIC_PER_BOOK))));
         }
-        System.out.println("[AI] Semantic found " + results.size() + " chapters");
+        log.debug("Semantic (local) found {} passages", results.size());
         return results;
     }
 
@@ -519,44 +792,64 @@ public class AiService {
         }
         if (!current.isEmpty()) phrases.add(String.join(" ", current));
         List<String> result = phrases.stream().filter(p -> p.length() > 3).collect(Collectors.toList());
-        if (!result.isEmpty()) System.out.println("[AI] Exact phrases extracted: " + result);
+        if (!result.isEmpty()) log.debug("Exact phrases extracted: {}", result);
         return result;
     }
 
-    private List<Chapter> runExactPhraseSearch(List<Long> bookIds, List<String> phrases) {
+    private List<ContextBuilder.Passage> runExactPhraseSearch(List<Long> bookIds, List<String> phrases,
+                                                              Map<Long, Book> booksById, Deadline deadline) {
         if (phrases.isEmpty() || bookIds.isEmpty()) return Collections.emptyList();
-        Map<Long, Chapter> found = new LinkedHashMap<>();
+        List<ChapterSnippet> rows = new ArrayList<>();
         for (String phrase : phrases) {
+            if (Thread.currentThread().isInterrupted()) break;
             try {
-                chapterRepository.searchChaptersByIlikeForBooks(bookIds, "%" + phrase + "%")
-                        .forEach(c -> found.putIfAbsent(c.getId(), c));
+                rows.addAll(findWindowsContaining(bookIds, phrase, 30, deadline));
             } catch (Exception e) {
-                System.out.println("[AI] Exact phrase search failed for [" + phrase + "]: " + e.getMessage());
+                log.warn("Exact phrase search failed for [{}]: {}", phrase, e.getMessage());
             }
         }
-        System.out.println("[AI] Exact phrase found " + found.size() + " chapters for: " + phrases);
-        return new ArrayList<>(found.values());
+        List<ContextBuilder.Passage> passages = snippetPassages(rows, "exact", booksById);
+        log.debug("Exact phrase found {} windows for: {}", passages.size(), phrases);
+        return passages;
     }
 
-    // ─────────────────────────────────────────────────────────────────────────
-    // ML service
-    // ─────────────────────────────────────────────────────────────────────────
-
-    @SuppressWarnings("unchecked")
-    private List<Map<String, Object>> callSemanticSearch(String question, Long bookId, int topK) {
-        String url = mlServiceUrl + "/semantic-search";
-        Map<String, Object> body = Map.of("question", question, "book_id", bookId, "top_k", topK);
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        ResponseEntity<Map> response = mlRestTemplate.postForEntity(
-                url, new HttpEntity<>(body, headers), Map.class);
-
-        if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-            Object chapters = response.getBody().get("chapters");
-            if (chapters instanceof List) return (List<Map<String, Object>>) chapters;
+    /**
+     * Windows around the text (word or exact phrase) in chapters of the given books, without loading bodies.
+     * With the ChapterSearchIndex built, match offsets (and those of recipe-context words) come from the index and
+     * only the windows around them are cut out by the database; until then one ILIKE query returns a window around
+     * the first match.
+     */
+    private List<ChapterSnippet> findWindowsContaining(List<Long> bookIds, String text, int limit, Deadline deadline) {
+        if (!chapterSearchIndex.isReady()) {
+            return deadlineQueries.run(deadline,
+                    () -> chapterRepository.searchSnippetsByIlikeForBooks(bookIds, text, "%" + text + "%"));
         }
-        return Collections.emptyList();
+        StringJoiner ids = new StringJoiner(",");
+        StringJoiner starts = new StringJoiner(",");
+        StringJoiner lengths = new StringJoiner(",");
+        for (ChapterSearchIndex.Hit hit : chapterSearchIndex.search(bookIds, text, limit)) {
+            int[] offsets = hit.getOffsets();
+            int firstInContent = 0;
+            while (firstInContent < offsets.length && offsets[firstInContent] < 0) firstInContent++;
+            List<int[]> ranges;
+            if (firstInContent < offsets.length) {
+                // Same choice as SnippetExtractor on loaded text: next to a recipe passage if one is near a match
+                int[] context = chapterSearchIndex.prefixOffsets(hit.getChapterId(), SnippetExtractor.RECIPE_CONTEXT);
+                ranges = SnippetExtractor.ranges(Arrays.copyOfRange(offsets, firstInContent, offsets.length),
+                        offsets.length - firstInContent, context, context.length, Integer.MAX_VALUE);
+            } else {
+                // Title-only match: the chapter opening
+                ranges = List.of(new int[]{0, CHAPTER_HEAD_CHARS});
+            }
+            for (int[] r : ranges) {
+                ids.add(String.valueOf(hit.getChapterId()));
+                starts.add(String.valueOf(r[0]));
+                lengths.add(String.valueOf(r[1] - r[0]));
+            }
+        }
+        if (ids.length() == 0) return Collections.emptyList();
+        return deadlineQueries.run(deadline,
+                () -> chapterRepository.findSnippetWindows(ids.toString(), starts.toString(), lengths.toString()));
     }
 
     // ─────────────────────────────────────────────────────────────────────────
@@ -564,71 +857,74 @@ public class AiService {
     // ─────────────────────────────────────────────────────────────────────────
 
     private String callGeminiRaw(String prompt) {
-        String apiKey = resolveApiKey();
-        if (apiKey == null) return "{}";
-        String url = GEMINI_API_URL + "?key=" + apiKey;
-        Map<String, Object> body = Map.of(
-                "contents", List.of(Map.of("role", "user", "parts", List.of(Map.of("text", prompt)))));
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (!llmClient.isConfigured()) return "{}";
         try {
-            ResponseEntity<Map> response = geminiRestTemplate.postForEntity(
-                    url, new HttpEntity<>(body, headers), Map.class);
-            return extractGeminiText(response);
+            String text = llmClient.generate(prompt);
+            return text != null ? text : "{}";
+        } catch (ResilientLlmClient.UnavailableException e) {
+            // Same as an empty extraction: the local parse result and the question words carry on
+            log.debug("Extraction skipped: {}", e.getMessage());
+            return "{}";
         } catch (Exception e) {
-            System.out.println("[AI] Gemini raw error: " + e.getMessage());
+            log.warn("Gemini raw error: {}", e.getMessage());
             return "{}";
         }
     }
 
-    private String callGemini(String question, String context) {
-        String apiKey = resolveApiKey();
-        if (apiKey == null) return "Ошибка: GEMINI_API_KEY не настроен.";
-        String url = GEMINI_API_URL + "?key=" + apiKey;
-        String fullPrompt = SYSTEM_PROMPT + "\n\nКонтекст из глав:\n" + context + "\n\nВопрос: " + question;
-        Map<String, Object> body = Map.of(
-                "contents", List.of(Map.of("role", "user", "parts", List.of(Map.of("text", fullPrompt)))));
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+    private String callGemini(String question, ChatContext ctx, AiTrace trace) {
+        if (!llmClient.isConfigured()) return "Ошибка: GEMINI_API_KEY не настроен.";
+        long started = System.nanoTime();
         try {
-            ResponseEntity<Map> response = geminiRestTemplate.postForEntity(
-                    url, new HttpEntity<>(body, headers), Map.class);
-            String result = extractGeminiText(response);
-            if (!result.equals("{}")) return result;
+            String result = llmClient.generate(buildAnswerPrompt(question, ctx.context));
+            boolean hit = result != null && !result.isEmpty();
+            aiMetrics.stage(trace, "answer", hit ? "hit" : "empty", started, hit ? result.length() : 0);
+            if (hit) return result;
+        } catch (ResilientLlmClient.UnavailableException e) {
+            return extractiveAnswer(ctx, e, started, trace);
         } catch (Exception e) {
+            aiMetrics.stage(trace, "answer", AiMetrics.outcome(e), started, 0);
             return "Ошибка при обращении к Gemini: " + e.getMessage();
         }
         return "Не удалось получить ответ от ИИ.";
     }
 
-    private String resolveApiKey() {
-        if (geminiApiKey != null && !geminiApiKey.isEmpty()) return geminiApiKey;
-        String env = System.getenv("GEMINI_API_KEY");
-        return (env != null && !env.isEmpty()) ? env : null;
+    private void streamGemini(String question, ChatContext ctx, Consumer<String> onChunk, AiTrace trace) {
+        if (!llmClient.isConfigured()) {
+            onChunk.accept("Ошибка: GEMINI_API_KEY не настроен.");
+            return;
+        }
+        long started = System.nanoTime();
+        int[] chars = {0};
+        try {
+            llmClient.stream(buildAnswerPrompt(question, ctx.context), chunk -> {
+                if (chars[0] == 0) trace.put("firstTokenMs", (System.nanoTime() - started) / 1_000_000);
+                chars[0] += chunk.length();
+                onChunk.accept(chunk);
+            });
+        } catch (ResilientLlmClient.UnavailableException e) {
+            // Rejected before the first chunk, so the fallback is the whole answer
+            onChunk.accept(extractiveAnswer(ctx, e, started, trace));
+            return;
+        } catch (Exception e) {
+            aiMetrics.stage(trace, "answer", AiMetrics.outcome(e), started, chars[0]);
+            onChunk.accept((chars[0] > 0 ? "\n\n" : "") + "Ошибка при обращении к Gemini: " + e.getMessage());
+            return;
+        }
+        aiMetrics.stage(trace, "answer", AiMetrics.outcome(chars[0]), started, chars[0]);
+        if (chars[0] == 0) onChunk.accept("Не удалось получить ответ от ИИ.");
     }
 
-    @SuppressWarnings("unchecked")
-    private String extractGeminiText(ResponseEntity<Map> response) {
-        if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-            List<Map> candidates = (List<Map>) response.getBody().get("candidates");
-            if (candidates != null && !candidates.isEmpty()) {
-                Map content = (Map) candidates.get(0).get("content");
-                if (content != null) {
-                    List<Map> parts = (List<Map>) content.get("parts");
-                    if (parts != null && !parts.isEmpty()) {
-                        String text = (String) parts.get(0).get("text");
-                        return text != null ? text : "{}";
-                    }
-                }
-            }
-        }
-        return "{}";
+    /** Quotes the best-matching sentences of the context; "fallback" answers are not cached. */
+    private String extractiveAnswer(ChatContext ctx, ResilientLlmClient.UnavailableException e,
+                                    long started, AiTrace trace) {
+        log.warn("LLM unavailable ({}), extractive answer", e.getReason());
+        String answer = extractiveAnswerer.answer(ctx.queryWords, ctx.passages);
+        aiMetrics.stage(trace, "answer", "fallback", started, answer.length());
+        trace.put("llmRejected", e.getReason());
+        return answer;
     }
 
-    private static RestTemplate buildRestTemplate(int connectMs, int readMs) {
-        SimpleClientHttpRequestFactory f = new SimpleClientHttpRequestFactory();
-        f.setConnectTimeout(connectMs);
-        f.setReadTimeout(readMs);
-        return new RestTemplate(f);
+    private static String buildAnswerPrompt(String question, String context) {
+        return SYSTEM_PROMPT + "\n\nКонтекст из глав:\n" + context + "\n\nВопрос: " + question;
     }
 }
@@ -0,0 +1,61 @@
+package com.example.prosper.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Bounded pool for streamed chat answers (/api/ai/chat/stream). Like {@link RetrievalExecutor}, the queue has a
+ * fixed capacity and overflow is rejected — the controller answers 503 — instead of piling up SSE connections
+ * whose answers would only start after the client has given up.
+ */
+@Component
+public class AiStreamExecutor {
+
+    private final ThreadPoolExecutor pool;
+    private final Counter rejected;
+
+    public AiStreamExecutor(@Value("${ai.stream.threads:8}") int threads,
+                            @Value("${ai.stream.queue-capacity:16}") int queueCapacity,
+                            MeterRegistry registry) {
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "ai-stream-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+        this.rejected = Counter.builder("ai.stream.rejected").register(registry);
+        Gauge.builder("ai.stream.active", pool, ThreadPoolExecutor::getActiveCount).register(registry);
+        Gauge.builder("ai.stream.queued", pool, p -> p.getQueue().size()).register(registry);
+    }
+
+    /** Starts a stream; throws RejectedExecutionException when the pool and its queue are full. */
+    public Future<?> submit(Runnable stream) {
+        try {
+            return pool.submit(stream);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.prosper.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Timings of one chat request, stage by stage. Stages may finish on retrieval threads, so entries are
+ * collected in a concurrent queue. Returned to the client as "trace" when the X-AI-Debug header is set.
+ */
+public final class AiTrace {
+
+    private final long startedNanos = System.nanoTime();
+    private final Queue<Map<String, Object>> stages = new ConcurrentLinkedQueue<>();
+    private final Map<String, Object> facts = new LinkedHashMap<>();
+
+    void stage(String stage, String outcome, long nanos, int count) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("stage", stage);
+        entry.put("outcome", outcome);
+        entry.put("ms", nanos / 1_000_000);
+        entry.put("count", count);
+        stages.add(entry);
+    }
+
+    /** How many times the stage ran in this request. */
+    int count(String stage) {
+        int n = 0;
+        for (Map<String, Object> entry : stages) if (stage.equals(entry.get("stage"))) n++;
+        return n;
+    }
+
+    /** Outcome of the stage's last run, or null if it did not run. */
+    String outcome(String stage) {
+        String outcome = null;
+        for (Map<String, Object> entry : stages) if (stage.equals(entry.get("stage"))) outcome = (String) entry.get("outcome");
+        return outcome;
+    }
+
+    /** A request-level figure: context size, passage counts, time to first token… */
+    synchronized void put(String key, Object value) {
+        facts.put(key, value);
+    }
+
+    public synchronized Map<String, Object> summary() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("totalMs", (System.nanoTime() - startedNanos) / 1_000_000);
+        List<Map<String, Object>> list = new ArrayList<>(stages);
+        m.put("stages", list);
+        m.putAll(facts);
+        return m;
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.prosper.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.prosper.dto.ChapterDTO;
+import com.example.prosper.model.Book;
+import com.example.prosper.repository.ChapterRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Whole-book (or chapter range) download for offline reading, as NDJSON:
+ * <pre>
+ * {"type":"book","id":..,"title":..,"author":..,"version":"..","from":..,"to":..,"chapters":n}
+ * {"type":"chapter","id":..,"order":..,"title":..,"content":..}     — one line per chapter, in order
+ * {"type":"end","chapters":n,"lastOrder":..}
+ * </pre>
+ * Chapters come from a database cursor and go straight into the (optionally gzip) response stream, so heap use
+ * is a few chapters no matter how long the book is. A download cut short has no "end" line; the client asks
+ * again with from = last order it got + 1, and compares "version" to notice that the book changed in between.
+ * The version is a digest of the chapter list and texts, read in the same repeatable-read snapshot as the
+ * chapters themselves, so it survives restarts and changes with any chapter write — unlike the in-memory TOC
+ * version, which starts over with every run.
+ *
+ * Each download holds a pooled connection while it runs, so at most catalog.download.max-concurrent run at once.
+ */
+@Service
+public class BookDownloadService {
+
+    private static final int GZIP_BUFFER = 16 * 1024;
+
+    @Autowired
+    private ChapterRepository chapterRepository;
+
+    @Autowired
+    private TableOfContentsCache tableOfContentsCache;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Semaphore slots;
+    private final Counter chaptersSent;
+    private final Counter aborted;
+
+    public BookDownloadService(@Value("${catalog.download.max-concurrent:4}") int maxConcurrent,
+                               MeterRegistry registry) {
+        this.slots = new Semaphore(maxConcurrent);
+        this.chaptersSent = Counter.builder("catalog.download.chapters").register(registry);
+        this.aborted = Counter.builder("catalog.download.aborted").register(registry);
+        Gauge.builder("catalog.download.in.flight", slots, s -> maxConcurrent - s.availablePermits()).register(registry);
+    }
+
+    /** Takes a download slot; every successful call must be paired with {@link #release()}. */
+    public boolean tryAcquire() {
+        return slots.tryAcquire();
+    }
+
+    public void release() {
+        slots.release();
+    }
+
+    /** Writes chapters with from <= order <= to of the book to {@code out}; returns how many were written. */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public int write(Book book, int from, int to, boolean gzip, OutputStream out) throws IOException {
+        long started = System.currentTimeMillis();
+        TableOfContentsCache.Toc toc = tableOfContentsCache.get(book.getId());
+        List<ChapterDTO> all = toc.getChapters();
+        int expected = (to == Integer.MAX_VALUE ? all.size() : toc.indexOfOrder(to + 1)) - toc.indexOfOrder(from);
+
+        GZIPOutputStream zip = gzip ? new GZIPOutputStream(out, GZIP_BUFFER) : null;
+        JsonGenerator json = objectMapper.getFactory().createGenerator(zip != null ? zip : out);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        json.setRootValueSeparator(null);
+
+        json.writeStartObject();
+        json.writeStringField("type", "book");
+        json.writeNumberField("id", book.getId());
+        json.writeStringField("title", book.getTitle());
+        json.writeStringField("author", book.getAuthor());
+        json.writeStringField("version", chapterRepository.contentDigestByBookId(book.getId()));
+        json.writeNumberField("from", from);
+        if (to != Integer.MAX_VALUE) json.writeNumberField("to", to);
+        json.writeNumberField("chapters", Math.max(0, expected));
+        json.writeEndObject();
+        json.writeRaw('\n');
+
+        int written = 0;
+        Integer lastOrder = null;
+        try (Stream<ChapterDTO> chapters = chapterRepository.streamContentByBookId(book.getId(), from, to)) {
+            for (ChapterDTO ch : (Iterable<ChapterDTO>) chapters::iterator) {
+                json.writeStartObject();
+                json.writeStringField("type", "chapter");
+                json.writeNumberField("id", ch.getId());
+                json.writeNumberField("order", ch.getChapterOrder());
+                json.writeStringField("title", ch.getTitle());
+                json.writeStringField("content", ch.getContent());
+                json.writeEndObject();
+                json.writeRaw('\n');
+                written++;
+                lastOrder = ch.getChapterOrder();
+            }
+        } catch (IOException e) {
+            // Client went away; it resumes from the last chapter it received
+            aborted.increment();
+            chaptersSent.increment(written);
+            System.out.println("[Download] Book " + book.getId() + " aborted after " + written + " chapters: "
+                    + e.getMessage());
+            throw e;
+        }
+
+        json.writeStartObject();
+        json.writeStringField("type", "end");
+        json.writeNumberField("chapters", written);
+        if (lastOrder != null) json.writeNumberField("lastOrder", lastOrder);
+        else json.writeNullField("lastOrder");
+        json.writeEndObject();
+        json.writeRaw('\n');
+        json.flush();
+        if (zip != null) zip.finish();
+
+        chaptersSent.increment(written);
+        System.out.println("[Download] Book " + book.getId() + ": " + written + " chapters from order " + from
+                + (gzip ? " (gzip)" : "") + " in " + (System.currentTimeMillis() - started) + " ms");
+        return written;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.prosper.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.prosper.model.BookmarkStatus;
+import com.example.prosper.repository.BookStatsRepository;
+
+/**
+ * Keeps book_stats in step with ratings, chapters and bookmarks, so catalog pages read counters instead of
+ * aggregating book_ratings / chapters / user_books per request.
+ *
+ * The write paths call the *Changed methods inside their own transaction. Anything that bypasses them
+ * (SQL by hand, cascades from user deletion) is corrected by the rebuild at startup and every night.
+ */
+@Service
+public class BookStatsService {
+
+    @Autowired
+    private BookStatsRepository bookStatsRepository;
+
+    @Autowired
+    private CatalogSnapshotService catalogSnapshotService;
+
+    @Transactional
+    public void bookCreated(Long bookId) {
+        bookStatsRepository.ensureRow(bookId);
+    }
+
+    @Transactional
+    public void bookDeleted(Long bookId) {
+        bookStatsRepository.deleteById(bookId);
+    }
+
+    /** @param oldRating the user's previous rating of the book, null if this is their first */
+    @Transactional
+    public void ratingChanged(Long bookId, Integer oldRating, int newRating) {
+        bookStatsRepository.ensureRow(bookId);
+        if (oldRating == null) {
+            bookStatsRepository.addRating(bookId, newRating, 1);
+        } else if (oldRating != newRating) {
+            bookStatsRepository.addRating(bookId, newRating - oldRating, 0);
+        }
+        catalogSnapshotService.ratingChanged();
+    }
+
+    /** Call after the chapter insert/delete was flushed: the latest chapter is re-read from chapters. */
+    @Transactional
+    public void chaptersChanged(Long bookId, int delta) {
+        bookStatsRepository.ensureRow(bookId);
+        bookStatsRepository.addChapters(bookId, delta);
+    }
+
+    /**
+     * A reader's bookmark moved. {@code before}/{@code after} are the status while bookmarked, null when the
+     * book was/is not bookmarked by them.
+     */
+    @Transactional
+    public void bookmarkChanged(Long bookId, BookmarkStatus before, BookmarkStatus after) {
+        if (before == after) return;
+        bookStatsRepository.ensureRow(bookId);
+        bookStatsRepository.moveReader(bookId, before != null ? before.name() : "", after != null ? after.name() : "");
+    }
+
+    /** Recount of the given books, e.g. after deleting a user whose ratings and bookmarks went with them. */
+    @Transactional
+    public void rebuild(Collection<Long> bookIds) {
+        if (!bookIds.isEmpty()) bookStatsRepository.rebuildBooks(new ArrayList<>(bookIds));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${catalog.stats.rebuild-cron:0 30 4 * * *}")
+    public void rebuildAll() {
+        long started = System.currentTimeMillis();
+        try {
+            int rows = bookStatsRepository.rebuildAll();
+            int orphans = bookStatsRepository.deleteOrphans();
+            System.out.println("[BookStats] Rebuilt " + rows + " books (" + orphans + " orphans removed) in "
+                    + (System.currentTimeMillis() - started) + " ms");
+            catalogSnapshotService.invalidate();
+        } catch (Exception e) {
+            System.out.println("[BookStats] Rebuild failed: " + e.getMessage());
+        }
+    }
+
+    /** bookId → average rating, for the books that have ratings. */
+    public Map<Long, Double> averageRatings(Collection<Long> bookIds) {
+        Map<Long, Double> result = new HashMap<>();
+        if (bookIds.isEmpty()) return result;
+        List<Object[]> rows = bookStatsRepository.findAverageRatings(new ArrayList<>(bookIds));
+        for (Object[] row : rows) result.put((Long) row[0], (Double) row[1]);
+        return result;
+    }
+}
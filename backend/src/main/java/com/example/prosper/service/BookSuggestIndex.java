@@ -0,0 +1,191 @@
+package com.example.prosper.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.example.prosper.model.Book;
+import com.example.prosper.model.BookStats;
+import com.example.prosper.util.RussianText;
+
+/**
+ * Typeahead over book titles and authors, built with each catalog snapshot and immutable afterwards.
+ *
+ * Every folded word of a title/author goes into a sorted term array — a flattened prefix trie, where all
+ * words starting with a prefix are one contiguous range found by binary search. Whole titles get trigram
+ * postings for typos. Queries are folded (case, ё/е) and also tried on the other keyboard layout, so
+ * "ufhhb" finds "Гарри". Ranking: how well the query matches (whole-title prefix, then word prefixes,
+ * then trigram similarity) plus a smaller share of popularity from book_stats.
+ */
+public final class BookSuggestIndex {
+
+    private static final int TITLE = 0;
+    private static final int AUTHOR = 1;
+    private static final double MIN_SIMILARITY = 0.5;
+    // Match quality decides, popularity orders books that match about equally well
+    private static final double POPULARITY_WEIGHT = 0.15;
+    private static final double SWITCHED_LAYOUT_PENALTY = 0.9;
+
+    private final Book[] books;
+    private final String[][] folded;         // [book][TITLE|AUTHOR]
+    private final double[] popularity;       // 0..1
+    private final String[] terms;            // sorted
+    private final int[][] termPostings;      // parallel to terms: book * 2 + field, ascending
+    private final Map<String, int[]> titlesByTrigram;
+
+    BookSuggestIndex(List<Book> catalog, Map<Long, BookStats> stats) {
+        int n = catalog.size();
+        books = catalog.toArray(new Book[0]);
+        folded = new String[n][2];
+        popularity = new double[n];
+
+        Map<String, List<Integer>> postings = new HashMap<>();
+        Map<String, List<Integer>> trigrams = new HashMap<>();
+        double maxReach = 0;
+        for (int i = 0; i < n; i++) {
+            Book b = books[i];
+            folded[i][TITLE] = RussianText.fold(b.getTitle() != null ? b.getTitle() : "");
+            folded[i][AUTHOR] = RussianText.fold(b.getAuthor() != null ? b.getAuthor() : "");
+            for (int field = TITLE; field <= AUTHOR; field++) {
+                for (String word : words(folded[i][field])) {
+                    List<Integer> p = postings.computeIfAbsent(word, k -> new ArrayList<>());
+                    int posting = i * 2 + field;
+                    if (p.isEmpty() || p.get(p.size() - 1) != posting) p.add(posting);
+                }
+            }
+            for (String t : RussianText.trigrams(folded[i][TITLE])) trigrams.computeIfAbsent(t, k -> new ArrayList<>()).add(i);
+
+            BookStats s = stats.get(b.getId());
+            if (s != null) {
+                popularity[i] = Math.log1p(s.getRatingCount() + s.getReadingCount() + s.getCompletedCount()
+                        + s.getFavoriteCount() + s.getPlannedCount());
+                maxReach = Math.max(maxReach, popularity[i]);
+            }
+        }
+        if (maxReach > 0) for (int i = 0; i < n; i++) popularity[i] /= maxReach;
+
+        terms = postings.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        termPostings = new int[terms.length][];
+        for (int t = 0; t < terms.length; t++) {
+            termPostings[t] = postings.get(terms[t]).stream().mapToInt(Integer::intValue).toArray();
+        }
+        titlesByTrigram = new HashMap<>();
+        trigrams.forEach((t, list) -> titlesByTrigram.put(t, list.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /** Top {@code limit} books for what the user has typed so far, best first. */
+    public List<Map<String, Object>> suggest(String query, int limit) {
+        String q = RussianText.fold(query == null ? "" : query).trim();
+        if (q.isEmpty() || books.length == 0) return Collections.emptyList();
+
+        double[] match = new double[books.length];
+        score(q, 1.0, match, limit);
+        String switched = RussianText.switchLayout(q);
+        if (!switched.equals(q)) score(switched, SWITCHED_LAYOUT_PENALTY, match, limit);
+
+        // Bounded selection of the best `limit` candidates
+        int[] top = new int[limit];
+        double[] topScore = new double[limit];
+        int size = 0;
+        for (int i = 0; i < books.length; i++) {
+            if (match[i] <= 0) continue;
+            double total = match[i] * (1 - POPULARITY_WEIGHT) + popularity[i] * POPULARITY_WEIGHT;
+            if (size == limit && total <= topScore[size - 1]) continue;
+            int pos = size < limit ? size++ : size - 1;
+            while (pos > 0 && topScore[pos - 1] < total) {
+                top[pos] = top[pos - 1];
+                topScore[pos] = topScore[pos - 1];
+                pos--;
+            }
+            top[pos] = i;
+            topScore[pos] = total;
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>(size);
+        for (int k = 0; k < size; k++) {
+            Book b = books[top[k]];
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id",       b.getId());
+            m.put("title",    b.getTitle());
+            m.put("author",   b.getAuthor());
+            m.put("coverUrl", b.getCoverUrl());
+            result.add(m);
+        }
+        return result;
+    }
+
+    /**
+     * Raises match[book] to how well the (folded) query matches it, scaled by weight. The typo pass only runs
+     * when prefixes found fewer than {@code enough} books.
+     */
+    private void score(String q, double weight, double[] match, int enough) {
+        List<String> tokens = words(q);
+        if (tokens.isEmpty()) return;
+
+        // Every query word has to be a prefix of some word of the same field; the last one is usually unfinished
+        BitSet[] hits = null;
+        for (String token : tokens) {
+            BitSet[] tokenHits = {new BitSet(books.length), new BitSet(books.length)};
+            int from = lowerBound(token);
+            for (int t = from; t < terms.length && terms[t].startsWith(token); t++) {
+                for (int posting : termPostings[t]) tokenHits[posting & 1].set(posting >> 1);
+            }
+            if (hits == null) {
+                hits = tokenHits;
+            } else {
+                hits[TITLE].and(tokenHits[TITLE]);
+                hits[AUTHOR].and(tokenHits[AUTHOR]);
+            }
+        }
+        for (int i = hits[TITLE].nextSetBit(0); i >= 0; i = hits[TITLE].nextSetBit(i + 1)) {
+            raise(match, i, weight * (folded[i][TITLE].startsWith(q) ? 1.0 : 0.7));
+        }
+        for (int i = hits[AUTHOR].nextSetBit(0); i >= 0; i = hits[AUTHOR].nextSetBit(i + 1)) {
+            raise(match, i, weight * (folded[i][AUTHOR].startsWith(q) ? 0.8 : 0.6));
+        }
+
+        // Typos: share of the query's trigrams found in the title (pg_trgm word_similarity, roughly), so a short
+        // query isn't penalised for a long title; always below a prefix match
+        if (q.length() < 3 || hits[TITLE].cardinality() + hits[AUTHOR].cardinality() >= enough) return;
+        Set<String> qTri = RussianText.trigrams(q);
+        int[] shared = new int[books.length];
+        for (String t : qTri) {
+            int[] list = titlesByTrigram.get(t);
+            if (list != null) for (int i : list) shared[i]++;
+        }
+        for (int i = 0; i < books.length; i++) {
+            double sim = (double) shared[i] / qTri.size();
+            if (sim >= MIN_SIMILARITY) raise(match, i, weight * 0.5 * sim);
+        }
+    }
+
+    private static void raise(double[] match, int i, double value) {
+        if (value > match[i]) match[i] = value;
+    }
+
+    private int lowerBound(String prefix) {
+        int lo = 0;
+        int hi = terms.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (terms[mid].compareTo(prefix) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static List<String> words(String folded) {
+        List<String> words = new ArrayList<>();
+        for (String w : folded.split("[^\\p{L}\\p{N}]+")) {
+            if (!w.isEmpty()) words.add(w);
+        }
+        return words;
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.prosper.service;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.prosper.model.Book;
+import com.example.prosper.model.BookStats;
+import com.example.prosper.model.Genre;
+import com.example.prosper.repository.BookRepository;
+import com.example.prosper.repository.BookStatsRepository;
+
+/**
+ * The whole public catalog (books with genres and their book_stats counters) held in memory as an immutable
+ * snapshot, pre-sorted for every sort mode of /api/books. Catalog reads never touch the database; each
+ * snapshot has a version, and BookController turns it into a strong ETag so unchanged lists cost a 304.
+ *
+ * The snapshot also carries the typeahead index ({@link BookSuggestIndex}) for /api/books/suggest.
+ *
+ * Writes don't patch the snapshot: {@link #invalidate()} schedules a rebuild on a background thread and
+ * readers keep getting the previous snapshot until the new one is swapped in. Book, genre and chapter writes
+ * in AdminController invalidate right away (after their transaction commits); ratings only move the
+ * averages a little, so they invalidate every catalog.snapshot.rating-threshold changes, and a periodic
+ * check picks up the rest.
+ */
+@Service
+public class CatalogSnapshotService {
+
+    /** One immutable catalog version: the same rows in every sort order. */
+    public static final class Snapshot {
+        private final long version;
+        private final String etag;
+        private final Map<String, List<Map<String, Object>>> bySort;
+        private final List<Map<String, Object>> newest;
+        private final BookSuggestIndex suggestIndex;
+        private final Map<String, Map<Long, Integer>> positions = new HashMap<>();
+        // Per sort: facet ordinal of each row, and row position of each facet ordinal (-1: not in this version)
+        private final Map<String, int[]> ordinals;
+        private final Map<String, int[]> positionByOrdinal = new HashMap<>();
+
+        private Snapshot(long version, String etag, Map<String, List<Map<String, Object>>> bySort,
+                         List<Map<String, Object>> newest, BookSuggestIndex suggestIndex, Map<String, int[]> ordinals) {
+            this.version = version;
+            this.etag = etag;
+            this.bySort = bySort;
+            this.newest = newest;
+            this.suggestIndex = suggestIndex;
+            this.ordinals = ordinals;
+            bySort.forEach((sort, rows) -> {
+                Map<Long, Integer> pos = new HashMap<>(rows.size() * 2);
+                for (int i = 0; i < rows.size(); i++) pos.put((Long) rows.get(i).get("id"), i);
+                positions.put(sort, pos);
+            });
+            ordinals.forEach((sort, ords) -> {
+                int[] byOrdinal = new int[Arrays.stream(ords).max().orElse(-1) + 1];
+                Arrays.fill(byOrdinal, -1);
+                for (int i = 0; i < ords.length; i++) if (ords[i] >= 0) byOrdinal[ords[i]] = i;
+                positionByOrdinal.put(sort, byOrdinal);
+            });
+        }
+
+        public long getVersion() { return version; }
+        /** Quoted strong ETag, unique across restarts. */
+        public String getEtag() { return etag; }
+
+        /** Book rows in the given sort order; unknown sorts fall back to "rating". */
+        public List<Map<String, Object>> books(String sort) {
+            return bySort.getOrDefault(sort, bySort.get("rating"));
+        }
+
+        /** Index of the book in {@link #books}(sort), -1 if it isn't in this version. */
+        public int indexOf(String sort, long bookId) {
+            return positions.getOrDefault(sort, positions.get("rating")).getOrDefault(bookId, -1);
+        }
+
+        /**
+         * Positions in {@link #books}(sort), ascending from {@code from}, of the rows whose facet ordinal is set in
+         * {@code matching}. A selective filter visits only its matches (one array read each, then a sort); a
+         * broad one walks the sort order from the cursor and stops as soon as the caller does.
+         */
+        public IntStream positions(String sort, BitSet matching, int from) {
+            String key = ordinals.containsKey(sort) ? sort : "rating";
+            int[] ords = ordinals.get(key);
+            int remaining = ords.length - from;
+            if (remaining <= 0) return IntStream.empty();
+            int count = matching.cardinality();
+            if ((long) count * 8 >= remaining) {
+                return IntStream.range(from, ords.length).filter(i -> ords[i] >= 0 && matching.get(ords[i]));
+            }
+            int[] byOrdinal = positionByOrdinal.get(key);
+            int[] found = new int[count];
+            int n = 0;
+            for (int o = matching.nextSetBit(0); o >= 0 && o < byOrdinal.length; o = matching.nextSetBit(o + 1)) {
+                if (byOrdinal[o] >= from) found[n++] = byOrdinal[o];
+            }
+            Arrays.sort(found, 0, n);
+            return Arrays.stream(found, 0, n);
+        }
+
+        /** Book rows, newest (highest id) first. */
+        public List<Map<String, Object>> newest() { return newest; }
+
+        /** Typeahead over the titles and authors of this version. */
+        public BookSuggestIndex suggestIndex() { return suggestIndex; }
+    }
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookStatsRepository bookStatsRepository;
+
+    @Autowired
+    private CatalogFacetIndex catalogFacetIndex;
+
+    @Value("${catalog.snapshot.rating-threshold:50}")
+    private int ratingThreshold;
+
+    // Distinguishes ETags of different runs, so a restart never re-issues an old version number
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "catalog-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private final AtomicInteger ratingChanges = new AtomicInteger();
+    private volatile Snapshot current;
+    private long version;
+
+    /** The current snapshot; built on the calling thread if there is none yet. */
+    public Snapshot current() {
+        Snapshot s = current;
+        if (s != null) return s;
+        synchronized (this) {
+            if (current == null) rebuild();
+            return current;
+        }
+    }
+
+    /** The catalog changed: rebuild once the current transaction (if any) has committed. */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    scheduleRebuild();
+                }
+            });
+        } else {
+            scheduleRebuild();
+        }
+    }
+
+    /** A rating was added or changed; every ratingThreshold of them triggers a rebuild. */
+    public void ratingChanged() {
+        if (ratingChanges.incrementAndGet() >= ratingThreshold) invalidate();
+    }
+
+    // Ratings below the threshold still show up within catalog.snapshot.refresh-ms
+    @Scheduled(fixedDelayString = "${catalog.snapshot.refresh-ms:300000}")
+    public void refreshIfRatingsChanged() {
+        if (ratingChanges.get() > 0) scheduleRebuild();
+    }
+
+    private void scheduleRebuild() {
+        // Invalidations that arrive while a rebuild is queued are covered by it
+        if (!rebuildQueued.compareAndSet(false, true)) return;
+        rebuilder.execute(() -> {
+            rebuildQueued.set(false);
+            try {
+                synchronized (this) {
+                    rebuild();
+                }
+            } catch (Exception e) {
+                System.out.println("[CatalogSnapshot] Rebuild failed, keeping version "
+                        + (current != null ? current.version : 0) + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private void rebuild() {
+        long started = System.currentTimeMillis();
+        ratingChanges.set(0);
+        List<Book> books = bookRepository.findAllWithGenres();
+        Map<Long, BookStats> stats = new HashMap<>();
+        for (BookStats s : bookStatsRepository.findAll()) stats.put(s.getBookId(), s);
+
+        Map<Long, Map<String, Object>> rows = new HashMap<>();
+        for (Book b : books) {
+            BookStats s = stats.get(b.getId());
+            double avg = s != null && s.getRatingCount() > 0 ? Math.round(s.getAvgRating() * 10.0) / 10.0 : 0.0;
+            rows.put(b.getId(), Collections.unmodifiableMap(row(b, new ArrayList<>(b.getGenres()), avg)));
+        }
+
+        // Same orders as the SQL behind the old endpoints: books without a stats row last, ties by id
+        Comparator<Book> byId = Comparator.comparing(Book::getId);
+        Comparator<Book> byRating = Comparator.comparing(
+                (Book b) -> stats.containsKey(b.getId()) ? stats.get(b.getId()).getAvgRating() : null,
+                Comparator.nullsLast(Comparator.reverseOrder()));
+        Comparator<Book> byChapters = Comparator.comparing(
+                (Book b) -> stats.containsKey(b.getId()) ? stats.get(b.getId()).getChapterCount() : null,
+                Comparator.nullsLast(Comparator.reverseOrder()));
+        Collator collator = Collator.getInstance(new Locale("ru"));
+        Comparator<Book> byTitle = Comparator.comparing(Book::getTitle, collator);
+
+        Map<String, List<Map<String, Object>>> bySort = new HashMap<>();
+        bySort.put("rating", sorted(books, byRating.thenComparing(byId), rows));
+        bySort.put("chapters", sorted(books, byChapters.thenComparing(byId), rows));
+        bySort.put("title_asc", sorted(books, byTitle.thenComparing(byId), rows));
+        bySort.put("title_desc", sorted(books, byTitle.thenComparing(byId).reversed(), rows));
+        List<Map<String, Object>> newest = sorted(books, byId.reversed(), rows);
+
+        long v = ++version;
+        catalogFacetIndex.rebuild(books, stats);
+        Map<String, int[]> ordinals = new HashMap<>();
+        bySort.forEach((sort, list) -> ordinals.put(sort, catalogFacetIndex.ordinals(
+                list.stream().map(r -> (Long) r.get("id")).collect(Collectors.toList()))));
+        current = new Snapshot(v, "\"catalog-" + epoch + "-" + v + "\"", bySort, newest,
+                new BookSuggestIndex(books, stats), ordinals);
+        System.out.println("[CatalogSnapshot] Version " + v + ": " + books.size() + " books in "
+                + (System.currentTimeMillis() - started) + " ms");
+    }
+
+    private static List<Map<String, Object>> sorted(List<Book> books, Comparator<Book> order,
+                                                    Map<Long, Map<String, Object>> rows) {
+        List<Map<String, Object>> list = new ArrayList<>(books.size());
+        books.stream().sorted(order).forEach(b -> list.add(rows.get(b.getId())));
+        return Collections.unmodifiableList(list);
+    }
+
+    /** The JSON shape of a catalog entry, shared with the endpoints that still read from the database. */
+    public static Map<String, Object> row(Book book, Collection<Genre> genres, double averageRating) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("id",            book.getId());
+        m.put("title",         book.getTitle());
+        m.put("author",        book.getAuthor());
+        m.put("description",   book.getDescription());
+        m.put("coverUrl",      book.getCoverUrl());
+        m.put("genres",        genres);
+        m.put("averageRating", averageRating);
+        return m;
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.prosper.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.prosper.model.Chapter;
+import com.example.prosper.model.ChapterBlob;
+import com.example.prosper.repository.ChapterBlobRepository;
+import com.example.prosper.repository.ChapterRepository;
+
+/**
+ * Keeps chapter_blobs in step with chapters: every body compressed once, at write time, with the best gzip
+ * level (Russian prose shrinks 4–6×), so the raw chapter endpoint sends stored bytes with
+ * Content-Encoding: gzip and never compresses per request.
+ *
+ * AdminController rewrites the blob on every chapter write; chapters that predate the table are compressed
+ * in the background at startup, the same way ChapterPassageService backfills passages. The local segment store
+ * serves bodies without asking the database, so it only hears of a write once the write has committed.
+ */
+@Service
+public class ChapterBlobService {
+
+    private static final int BACKFILL_BATCH = 100;
+
+    @Autowired
+    private ChapterBlobRepository blobRepository;
+
+    @Autowired
+    private ChapterRepository chapterRepository;
+
+    @Autowired
+    private ChapterSegmentStore segmentStore;
+
+    // Chapters written by admin while the backfill runs — skipped up front; insertIfAbsent covers the rest
+    private final Set<Long> touchedDuringBackfill = ConcurrentHashMap.newKeySet();
+    private volatile boolean backfilling;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        Thread worker = new Thread(this::backfill, "chapter-blob-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void backfill() {
+        long started = System.currentTimeMillis();
+        backfilling = true;
+        int chapters = 0;
+        try {
+            long afterId = 0;
+            while (true) {
+                List<Long> ids = blobRepository.findUnblobbedChapterIdsAfter(afterId, PageRequest.of(0, BACKFILL_BATCH));
+                if (ids.isEmpty()) break;
+                for (Long id : ids) {
+                    afterId = id;
+                    if (touchedDuringBackfill.contains(id)) continue;
+                    Chapter chapter = chapterRepository.findById(id).orElse(null);
+                    if (chapter != null && insertIfAbsent(chapter)) chapters++;
+                }
+            }
+            System.out.println("[Blobs] Backfill: " + chapters + " chapters compressed in "
+                    + (System.currentTimeMillis() - started) + " ms");
+        } catch (Exception e) {
+            System.out.println("[Blobs] Backfill failed after " + chapters + " chapters: " + e.getMessage());
+        } finally {
+            backfilling = false;
+            touchedDuringBackfill.clear();
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Updates (called from AdminController)
+    // ─────────────────────────────────────────────────────────────────────────
+
+    public void storeChapter(Chapter chapter) {
+        if (chapter == null || chapter.getId() == null || chapter.getBook() == null) return;
+        if (backfilling) touchedDuringBackfill.add(chapter.getId());
+        write(chapter);
+    }
+
+    public void removeChapter(Long chapterId) {
+        if (backfilling) touchedDuringBackfill.add(chapterId);
+        blobRepository.deleteByChapterId(chapterId);
+        afterCommit(() -> segmentStore.removeChapter(chapterId));
+    }
+
+    public void removeBook(Long bookId) {
+        blobRepository.deleteByBookId(bookId);
+        afterCommit(() -> segmentStore.removeBook(bookId));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void write(Chapter chapter) {
+        ChapterBlob blob = blobOf(chapter);
+        blobRepository.save(blob);
+        // A rolled-back write must not reach the store: /raw serves its slots without checking the database
+        afterCommit(() -> segmentStore.put(blob));
+    }
+
+    /**
+     * Backfill: the chapter was read before a concurrent admin write may have committed a newer blob, so the
+     * check and the insert are one statement — an existing row is left alone, and only a row actually inserted
+     * goes to the segment store.
+     */
+    private boolean insertIfAbsent(Chapter chapter) {
+        ChapterBlob blob = blobOf(chapter);
+        int inserted = blobRepository.insertIfAbsent(blob.getChapterId(), blob.getBookId(), blob.getChapterOrder(),
+                blob.getGzip(), blob.getSha256(), blob.getRawLength(), blob.getUpdatedAt());
+        if (inserted == 0) return false;
+        segmentStore.put(blob);
+        return true;
+    }
+
+    private static ChapterBlob blobOf(Chapter chapter) {
+        byte[] raw = (chapter.getContent() != null ? chapter.getContent() : "").getBytes(StandardCharsets.UTF_8);
+        ChapterBlob blob = new ChapterBlob();
+        blob.setChapterId(chapter.getId());
+        blob.setBookId(chapter.getBook().getId());
+        blob.setChapterOrder(chapter.getchapterOrder());
+        blob.setGzip(gzip(raw));
+        blob.setSha256(sha256(raw));
+        blob.setRawLength(raw.length);
+        blob.setUpdatedAt(LocalDateTime.now());
+        return blob;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Reads
+    // ─────────────────────────────────────────────────────────────────────────
+
+    public Optional<ChapterBlob> find(Long bookId, int chapterOrder) {
+        return blobRepository.findFirstByBookIdAndChapterOrderOrderByChapterIdDesc(bookId, chapterOrder);
+    }
+
+    public Optional<String> findSha256(Long bookId, int chapterOrder) {
+        return blobRepository.findSha256ByBookIdAndChapterOrder(bookId, chapterOrder, PageRequest.of(0, 1))
+                .stream().findFirst();
+    }
+
+    static byte[] gzip(byte[] raw) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 3 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out) {
+            { def.setLevel(Deflater.BEST_COMPRESSION); }
+        }) {
+            gz.write(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static String sha256(byte[] raw) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(raw));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.prosper.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.prosper.dto.ChapterDTO;
+import com.example.prosper.repository.ChapterRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Chapters as the reader gets them, keyed on (book id, chapter order), with the text held UTF-8 encoded
+ * in direct buffers — off the heap, and bounded by bytes rather than entries (LRU eviction).
+ *
+ * A new chapter of a popular book is requested by every subscriber at once: concurrent misses for the same
+ * chapter wait for one database load (single flight). Serving chapter N also queues a load of N+1 in the
+ * background, since readers go forward. A chapter that doesn't exist (a reader past the last chapter, the
+ * prefetch after it) is remembered as absent, so repeated requests don't go to the database either.
+ * AdminController invalidates a book on every chapter write, which drops both.
+ *
+ * The raw text endpoint writes the cached bytes straight from the direct buffer ({@link #getText}); the JSON
+ * endpoint needs a String, so {@link #get} decodes one per hit — for it the off-heap copy saves resident heap,
+ * not the per-request allocation.
+ */
+@Component
+public class ChapterContentCache {
+
+    /** Chapter text as UTF-8 in the cache's buffer (a read-only view of its own), with the SHA-256 of those bytes. */
+    public static final class Text {
+        private final ByteBuffer bytes;
+        private final String sha256;
+
+        private Text(ByteBuffer bytes, String sha256) {
+            this.bytes = bytes;
+            this.sha256 = sha256;
+        }
+
+        public ByteBuffer getBytes() { return bytes; }
+        public String getSha256() { return sha256; }
+    }
+
+    private static final ByteBuffer NO_TEXT = ByteBuffer.allocate(0).asReadOnlyBuffer();
+    private static final int MAX_ABSENT = 4096;
+
+    private static final class Entry {
+        final Long id;
+        final Integer order;
+        final String title;
+        final ByteBuffer content;   // read-only view of a direct buffer; null for a chapter without text
+        final String sha256;        // of the UTF-8 text ("" when there is none)
+
+        Entry(ChapterDTO ch) {
+            this.id = ch.getId();
+            this.order = ch.getChapterOrder();
+            this.title = ch.getTitle();
+            byte[] bytes = ch.getContent() != null ? ch.getContent().getBytes(StandardCharsets.UTF_8) : new byte[0];
+            this.sha256 = ChapterBlobService.sha256(bytes);
+            if (ch.getContent() != null) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+                buffer.put(bytes).flip();
+                this.content = buffer.asReadOnlyBuffer();
+            } else {
+                this.content = null;
+            }
+        }
+
+        int bytes() {
+            return (content != null ? content.capacity() : 0) + (title != null ? title.length() * 2 : 0) + 64;
+        }
+
+        ChapterDTO toDto() {
+            String text = null;
+            if (content != null) {
+                byte[] bytes = new byte[content.capacity()];
+                content.duplicate().get(bytes);
+                text = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return new ChapterDTO(id, order, title, text);
+        }
+
+        Text toText() {
+            return new Text(content != null ? content.duplicate() : NO_TEXT.duplicate(), sha256);
+        }
+    }
+
+    @Autowired
+    private ChapterRepository chapterRepository;
+
+    private final long maxBytes;
+    // Access-ordered LRU guarded by "this"
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    // Keys with no chapter, until the book's next invalidation; guarded by "this", oldest dropped past MAX_ABSENT
+    private final LinkedHashMap<String, Boolean> absent = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_ABSENT;
+        }
+    };
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final Map<Long, Long> generations = new ConcurrentHashMap<>();
+    private long bytes;
+
+    // Prefetches are best effort: a full queue drops them
+    private final ThreadPoolExecutor prefetcher;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+    private final Counter prefetches;
+
+    public ChapterContentCache(@Value("${catalog.chapter-cache.max-bytes:67108864}") long maxBytes,
+                               @Value("${catalog.chapter-cache.prefetch-threads:2}") int prefetchThreads,
+                               MeterRegistry registry) {
+        this.maxBytes = maxBytes;
+        this.prefetcher = new ThreadPoolExecutor(prefetchThreads, prefetchThreads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(64), r -> {
+                    Thread t = new Thread(r, "chapter-prefetch");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+        this.prefetcher.allowCoreThreadTimeOut(true);
+
+        this.hits = Counter.builder("catalog.chapter.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("catalog.chapter.cache.requests").tag("result", "miss").register(registry);
+        this.coalesced = Counter.builder("catalog.chapter.cache.requests").tag("result", "coalesced").register(registry);
+        this.prefetches = Counter.builder("catalog.chapter.cache.prefetches").register(registry);
+        Gauge.builder("catalog.chapter.cache.bytes", this, ChapterContentCache::usedBytes).register(registry);
+    }
+
+    /** The chapter with its text, or null if the book has no chapter with that order. */
+    public ChapterDTO get(Long bookId, int chapterOrder) {
+        Entry entry = lookup(bookId, chapterOrder, true);
+        if (entry == null) return null;
+        prefetch(bookId, chapterOrder + 1);
+        return entry.toDto();
+    }
+
+    /** The chapter's text without decoding or copying it, or null if the book has no chapter with that order. */
+    public Text getText(Long bookId, int chapterOrder) {
+        Entry entry = lookup(bookId, chapterOrder, true);
+        if (entry == null) return null;
+        prefetch(bookId, chapterOrder + 1);
+        return entry.toText();
+    }
+
+    /** Drops the cached chapters of the book, once the current transaction (if any) commits. */
+    public void invalidateBook(Long bookId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictBook(bookId);
+                }
+            });
+        } else {
+            evictBook(bookId);
+        }
+    }
+
+    private Entry lookup(Long bookId, int chapterOrder, boolean count) {
+        String key = bookId + ":" + chapterOrder;
+        synchronized (this) {
+            Entry cached = entries.get(key);
+            if (cached != null) {
+                if (count) hits.increment();
+                return cached;
+            }
+            if (absent.containsKey(key)) {
+                if (count) hits.increment();
+                return null;
+            }
+        }
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            if (count) coalesced.increment();
+            return existing.join();
+        }
+        if (count) misses.increment();
+        long generation = generations.getOrDefault(bookId, 0L);
+        try {
+            Entry loaded = chapterRepository.findContentByBookIdAndChapterOrder(bookId, chapterOrder)
+                    .map(Entry::new)
+                    .orElse(null);
+            store(key, bookId, generation, loaded);
+            mine.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private void prefetch(Long bookId, int chapterOrder) {
+        String key = bookId + ":" + chapterOrder;
+        synchronized (this) {
+            if (entries.containsKey(key) || absent.containsKey(key)) return;
+        }
+        if (inFlight.containsKey(key)) return;
+        prefetcher.execute(() -> {
+            try {
+                if (lookup(bookId, chapterOrder, false) != null) prefetches.increment();
+            } catch (RuntimeException e) {
+                System.out.println("[ChapterCache] Prefetch of " + key + " failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /** Keeps a loaded chapter, or remembers the key as absent when {@code entry} is null. */
+    private synchronized void store(String key, Long bookId, long generation, Entry entry) {
+        // An admin write during the load may have changed the chapter: hand the result out, don't keep it
+        if (generations.getOrDefault(bookId, 0L) != generation) return;
+        if (entry == null) {
+            absent.put(key, Boolean.TRUE);
+            return;
+        }
+        int size = entry.bytes();
+        if (size > maxBytes) return;
+        Entry previous = entries.put(key, entry);
+        if (previous != null) bytes -= previous.bytes();
+        bytes += size;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+        }
+    }
+
+    private synchronized void evictBook(Long bookId) {
+        generations.merge(bookId, 1L, Long::sum);
+        String prefix = bookId + ":";
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getKey().startsWith(prefix)) {
+                bytes -= e.getValue().bytes();
+                it.remove();
+            }
+        }
+        absent.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    public synchronized long usedBytes() {
+        return bytes;
+    }
+}
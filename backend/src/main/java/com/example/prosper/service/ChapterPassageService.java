@@ -0,0 +1,157 @@
+package com.example.prosper.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.prosper.dto.ChapterSnippet;
+import com.example.prosper.model.Chapter;
+import com.example.prosper.model.ChapterPassage;
+import com.example.prosper.repository.ChapterPassageRepository;
+import com.example.prosper.repository.ChapterRepository;
+
+/**
+ * Keeps chapter_passages in step with chapters: each body is cut into ~1200-char passages overlapping by
+ * ~200 chars (so a fact on a boundary is whole in one of them), each with its own tsvector. AI full-text
+ * search ranks and returns these instead of whole chapters.
+ *
+ * AdminController re-chunks a chapter on every write; chapters that predate the table are chunked in
+ * the background at startup. Until that backfill is done {@link #isReady()} is false.
+ */
+@Service
+public class ChapterPassageService {
+
+    static final int PASSAGE_CHARS = 1200;
+    static final int OVERLAP_CHARS = 200;
+    private static final int BACKFILL_BATCH = 100;
+
+    @Autowired
+    private ChapterPassageRepository passageRepository;
+
+    @Autowired
+    private ChapterRepository chapterRepository;
+
+    // Chapters written by admin while the backfill runs — the backfill must not overwrite them
+    private final Set<Long> touchedDuringBackfill = ConcurrentHashMap.newKeySet();
+    private volatile boolean backfilling;
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        Thread worker = new Thread(this::backfill, "chapter-passage-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void backfill() {
+        long started = System.currentTimeMillis();
+        backfilling = true;
+        int chapters = 0;
+        try {
+            long afterId = 0;
+            while (true) {
+                List<Long> ids = passageRepository.findUnchunkedChapterIdsAfter(afterId, PageRequest.of(0, BACKFILL_BATCH));
+                if (ids.isEmpty()) break;
+                for (Long id : ids) {
+                    afterId = id;
+                    if (touchedDuringBackfill.contains(id)) continue;
+                    chapterRepository.findById(id).ifPresent(this::write);
+                    chapters++;
+                }
+            }
+            ready = true;
+            System.out.println("[Passages] Backfill: " + chapters + " chapters chunked in "
+                    + (System.currentTimeMillis() - started) + " ms");
+        } catch (Exception e) {
+            System.out.println("[Passages] Backfill failed after " + chapters + " chapters: " + e.getMessage());
+        } finally {
+            backfilling = false;
+            touchedDuringBackfill.clear();
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Updates (called from AdminController)
+    // ─────────────────────────────────────────────────────────────────────────
+
+    @Transactional
+    public void indexChapter(Chapter chapter) {
+        if (chapter == null || chapter.getId() == null || chapter.getBook() == null) return;
+        if (backfilling) touchedDuringBackfill.add(chapter.getId());
+        write(chapter);
+    }
+
+    public void removeChapter(Long chapterId) {
+        if (backfilling) touchedDuringBackfill.add(chapterId);
+        passageRepository.deleteByChapterId(chapterId);
+    }
+
+    public void removeBook(Long bookId) {
+        passageRepository.deleteByBookId(bookId);
+    }
+
+    private void write(Chapter chapter) {
+        passageRepository.deleteByChapterId(chapter.getId());
+        String content = chapter.getContent();
+        if (content == null || content.isBlank()) return;
+        List<ChapterPassage> passages = new ArrayList<>();
+        for (int[] range : split(content)) {
+            passages.add(new ChapterPassage(chapter.getId(), chapter.getBook().getId(), passages.size(),
+                    range[0], content.substring(range[0], range[1])));
+        }
+        passageRepository.saveAll(passages);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Search
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /** Top passages for a to_tsquery expression, best first. */
+    public List<ChapterSnippet> search(List<Long> bookIds, String tsQuery, int limit) {
+        return passageRepository.searchPassagesByFts(bookIds, tsQuery, limit);
+    }
+
+    /**
+     * [start, end) ranges of PASSAGE_CHARS with OVERLAP_CHARS overlap. A passage ends at a sentence end
+     * (else a space) in its last third, and the next one starts at a word boundary.
+     */
+    static List<int[]> split(String content) {
+        List<int[]> out = new ArrayList<>();
+        int length = content.length();
+        int start = 0;
+        while (start < length) {
+            int end = Math.min(length, start + PASSAGE_CHARS);
+            if (end < length) end = breakBefore(content, start + PASSAGE_CHARS * 2 / 3, end);
+            out.add(new int[]{start, end});
+            if (end == length) break;
+
+            int next = end - OVERLAP_CHARS;
+            while (next < end && !Character.isWhitespace(content.charAt(next))) next++;
+            while (next < end && Character.isWhitespace(content.charAt(next))) next++;
+            start = next > start ? next : end;
+        }
+        return out;
+    }
+
+    private static int breakBefore(String content, int from, int end) {
+        int space = -1;
+        for (int i = end - 1; i >= from; i--) {
+            char ch = content.charAt(i);
+            if (ch == '.' || ch == '!' || ch == '?' || ch == '…' || ch == '\n') return i + 1;
+            if (space < 0 && Character.isWhitespace(ch)) space = i + 1;
+        }
+        return space > 0 ? space : end;
+    }
+}
@@ -0,0 +1,339 @@
+package com.example.prosper.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.prosper.model.Chapter;
+import com.example.prosper.repository.ChapterRepository;
+import com.example.prosper.util.RussianText;
+
+/**
+ * In-memory inverted index over chapter text: normalized term → (chapterId → positions/offsets).
+ * Replaces "content ILIKE '%kw%'" scans in AiService for keyword and exact-phrase lookups.
+ * Built in the background at startup and kept in sync by AdminController chapter writes, which are applied
+ * once their transaction commits — a rolled-back write leaves the index as it was.
+ */
+@Service
+public class ChapterSearchIndex {
+
+    private static final int BUILD_BATCH = 200;
+
+    @Autowired
+    private ChapterRepository chapterRepository;
+
+    // term -> chapterId -> [pos0, off0, pos1, off1, ...]; offsets are relative to chapter content,
+    // negative offsets point into the title
+    private final Map<String, Map<Long, int[]>> postings = new HashMap<>();
+    private final Map<Long, Long> chapterBook = new HashMap<>();
+    private final Map<Long, String[]> chapterTerms = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Chapters written by admin while the initial build runs — the builder must not overwrite them
+    private final Set<Long> touchedDuringBuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean building;
+    private volatile boolean ready;
+
+    public static final class Hit {
+        private final long chapterId;
+        private final long bookId;
+        private final int[] offsets;
+
+        Hit(long chapterId, long bookId, int[] offsets) {
+            this.chapterId = chapterId;
+            this.bookId = bookId;
+            this.offsets = offsets;
+        }
+
+        public long getChapterId() { return chapterId; }
+        public long getBookId() { return bookId; }
+        /** Content offsets of every match, ascending; negative values are matches in the title. */
+        public int[] getOffsets() { return offsets; }
+        public int getOccurrences() { return offsets.length; }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        Thread builder = new Thread(this::rebuild, "chapter-index-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    private void rebuild() {
+        long started = System.currentTimeMillis();
+        building = true;
+        int count = 0;
+        try {
+            long afterId = 0;
+            while (true) {
+                List<Object[]> batch = chapterRepository.findIndexBatchAfterId(afterId, PageRequest.of(0, BUILD_BATCH));
+                if (batch.isEmpty()) break;
+                for (Object[] row : batch) {
+                    Long chapterId = (Long) row[0];
+                    afterId = chapterId;
+                    if (put(chapterId, (Long) row[1], (String) row[2], (String) row[3], true)) count++;
+                }
+            }
+            ready = true;
+            int terms;
+            lock.readLock().lock();
+            try { terms = postings.size(); } finally { lock.readLock().unlock(); }
+            System.out.println("[ChapterIndex] Built: " + count + " chapters, " + terms + " terms in "
+                    + (System.currentTimeMillis() - started) + " ms");
+        } catch (Exception e) {
+            System.out.println("[ChapterIndex] Build failed after " + count + " chapters: " + e.getMessage());
+        } finally {
+            building = false;
+            touchedDuringBuild.clear();
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Updates (called from AdminController)
+    // ─────────────────────────────────────────────────────────────────────────
+
+    public void indexChapter(Chapter chapter) {
+        if (chapter == null || chapter.getId() == null || chapter.getBook() == null) return;
+        // Read the entity now: after commit it may be detached
+        Long chapterId = chapter.getId();
+        Long bookId = chapter.getBook().getId();
+        String title = chapter.getTitle();
+        String content = chapter.getContent();
+        afterCommit(() -> {
+            if (building) touchedDuringBuild.add(chapterId);
+            put(chapterId, bookId, title, content, false);
+        });
+    }
+
+    public void removeChapter(Long chapterId) {
+        afterCommit(() -> {
+            if (building) touchedDuringBuild.add(chapterId);
+            lock.writeLock().lock();
+            try {
+                removeLocked(chapterId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void removeBook(Long bookId) {
+        afterCommit(() -> removeBookNow(bookId));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void removeBookNow(Long bookId) {
+        lock.writeLock().lock();
+        try {
+            List<Long> ids = new ArrayList<>();
+            chapterBook.forEach((chapterId, owner) -> { if (owner.equals(bookId)) ids.add(chapterId); });
+            if (building) touchedDuringBuild.addAll(ids);
+            ids.forEach(this::removeLocked);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes the chapter; returns false if it was skipped. The builder's rows may be older than what an admin
+     * write has indexed since, so for them the touched check and the insert happen under one write lock.
+     */
+    private boolean put(Long chapterId, Long bookId, String title, String content, boolean fromBuild) {
+        // Tokenize outside the lock: title and content share one position space so phrases can't
+        // span them meaningfully, while offsets stay relative to content.
+        Map<String, IntList> local = new HashMap<>();
+        String safeTitle = title != null ? title : "";
+        int shift = safeTitle.length() + 1;
+        RussianText.tokenize(safeTitle + "\n" + (content != null ? content : ""), (term, position, offset) ->
+                local.computeIfAbsent(term, t -> new IntList()).add(position, offset - shift));
+
+        lock.writeLock().lock();
+        try {
+            if (fromBuild && touchedDuringBuild.contains(chapterId)) return false;
+            removeLocked(chapterId);
+            chapterBook.put(chapterId, bookId);
+            chapterTerms.put(chapterId, local.keySet().toArray(new String[0]));
+            local.forEach((term, list) ->
+                    postings.computeIfAbsent(term, t -> new HashMap<>()).put(chapterId, list.toArray()));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(Long chapterId) {
+        String[] terms = chapterTerms.remove(chapterId);
+        chapterBook.remove(chapterId);
+        if (terms == null) return;
+        for (String term : terms) {
+            Map<Long, int[]> byChapter = postings.get(term);
+            if (byChapter == null) continue;
+            byChapter.remove(chapterId);
+            if (byChapter.isEmpty()) postings.remove(term);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Queries
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /**
+     * Finds chapters of the given books containing the text. Single words are term lookups,
+     * multi-word text is matched as an exact phrase using token positions.
+     * Results are ordered by number of occurrences, most first.
+     */
+    public List<Hit> search(Collection<Long> bookIds, String text, int limit) {
+        List<String> terms = RussianText.terms(text);
+        if (terms.isEmpty() || bookIds.isEmpty()) return Collections.emptyList();
+        Set<Long> books = new HashSet<>(bookIds);
+
+        List<Hit> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            List<Map<Long, int[]>> lists = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                Map<Long, int[]> byChapter = postings.get(term);
+                if (byChapter == null) return Collections.emptyList();
+                lists.add(byChapter);
+            }
+            // Drive the intersection from the rarest term
+            Map<Long, int[]> driver = lists.stream().min(Comparator.comparingInt(Map::size)).orElseThrow();
+            for (Long chapterId : driver.keySet()) {
+                Long bookId = chapterBook.get(chapterId);
+                if (bookId == null || !books.contains(bookId)) continue;
+                int[] offsets = terms.size() == 1
+                        ? offsetsOf(lists.get(0).get(chapterId))
+                        : phraseOffsets(lists, chapterId);
+                if (offsets.length > 0) hits.add(new Hit(chapterId, bookId, offsets));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        hits.sort(Comparator.comparingInt(Hit::getOccurrences).reversed()
+                .thenComparingLong(Hit::getChapterId));
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    /**
+     * Sorted content offsets of the words of a chapter that start with one of {@code prefixes} — the index-side
+     * counterpart of SnippetExtractor's context words (e.g. {@link SnippetExtractor#RECIPE_CONTEXT}), so a window
+     * can still be placed next to a recipe passage without loading the chapter. Walks only the chapter's own terms.
+     */
+    public int[] prefixOffsets(long chapterId, Collection<String> prefixes) {
+        List<String> stems = new ArrayList<>(prefixes.size());
+        for (String p : prefixes) stems.add(RussianText.stem(RussianText.fold(p.trim())));
+        IntList offsets = new IntList();
+        lock.readLock().lock();
+        try {
+            String[] terms = chapterTerms.get(chapterId);
+            if (terms == null) return new int[0];
+            for (String term : terms) {
+                for (String prefix : stems) {
+                    if (!term.startsWith(prefix)) continue;
+                    int[] packed = postings.get(term).get(chapterId);
+                    for (int i = 1; i < packed.length; i += 2) {
+                        if (packed[i] >= 0) offsets.add(packed[i]);
+                    }
+                    break;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        int[] result = offsets.toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static int[] offsetsOf(int[] packed) {
+        int[] offsets = new int[packed.length / 2];
+        for (int i = 0; i < offsets.length; i++) offsets[i] = packed[2 * i + 1];
+        return offsets;
+    }
+
+    private static int[] phraseOffsets(List<Map<Long, int[]>> lists, Long chapterId) {
+        int[][] packed = new int[lists.size()][];
+        for (int t = 0; t < lists.size(); t++) {
+            packed[t] = lists.get(t).get(chapterId);
+            if (packed[t] == null) return new int[0];
+        }
+        IntList matches = new IntList();
+        int[] first = packed[0];
+        for (int i = 0; i < first.length; i += 2) {
+            int position = first[i];
+            boolean all = true;
+            for (int t = 1; t < packed.length && all; t++) {
+                all = containsPosition(packed[t], position + t);
+            }
+            if (all) matches.add(first[i + 1]);
+        }
+        return matches.toArray();
+    }
+
+    // Positions are stored ascending at even indexes
+    private static boolean containsPosition(int[] packed, int position) {
+        int lo = 0;
+        int hi = packed.length / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int value = packed[2 * mid];
+            if (value < position) lo = mid + 1;
+            else if (value > position) hi = mid - 1;
+            else return true;
+        }
+        return false;
+    }
+
+    private static final class IntList {
+        private int[] data = new int[8];
+        private int size;
+
+        void add(int value) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = value;
+        }
+
+        void add(int a, int b) {
+            add(a);
+            add(b);
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.example.prosper.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.example.prosper.model.ChapterBlob;
+import com.example.prosper.repository.ChapterBlobRepository;
+
+/**
+ * Optional local read store for the raw chapter endpoint (catalog.segment-store.enabled): the gzip bodies of
+ * chapter_blobs appended to fixed-size segment files that are memory-mapped, plus an in-memory
+ * (book id, chapter order) → (segment, offset, length) index. A hit is sent from the page cache — with
+ * Tomcat's sendfile (FileChannel.transferTo to the socket) when the connector offers it, else straight
+ * from the mapped region — without a database round-trip.
+ *
+ * Postgres stays the source of truth: the files are thrown away and rewritten from chapter_blobs at every
+ * startup, ChapterBlobService appends each blob it writes once that write commits, and deletes only drop index
+ * entries. A chapter that isn't indexed — rebuild still running, blob not written yet, body larger than a
+ * segment — is a miss, and the caller reads it from the database.
+ *
+ * Index changes happen under the store lock, so the startup rebuild's "was this chapter written meanwhile?"
+ * check and its insert are one step, and an older blob (by updated_at) never replaces a newer one. Rewrites
+ * and deletes leave dead bytes behind; once they outweigh the live bodies, a background compaction copies the
+ * live bodies into a fresh set of segments and retires the old files.
+ */
+@Component
+public class ChapterSegmentStore {
+
+    /** Where one chapter's gzip body lives. */
+    public static final class Slot {
+        private final Long chapterId;
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final String sha256;
+        private final LocalDateTime updatedAt;
+
+        private Slot(Long chapterId, Segment segment, int offset, int length, String sha256, LocalDateTime updatedAt) {
+            this.chapterId = chapterId;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.sha256 = sha256;
+            this.updatedAt = updatedAt;
+        }
+
+        public String getSha256() { return sha256; }
+        public int getLength() { return length; }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final MappedByteBuffer map;
+        // Bytes appended so far; guarded by the store lock
+        int used;
+
+        // The mapping outlives the channel; sendfile opens the file by path
+        Segment(Path path, int capacity) throws IOException {
+            this.path = path;
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                file.setLength(capacity);
+                this.map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+        }
+    }
+
+    private static final int REBUILD_BATCH = 200;
+
+    @Autowired
+    private ChapterBlobRepository blobRepository;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentBytes;
+    private final double compactRatio;
+
+    // Written only under "this"; read without it
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    private final Map<Long, String> keyByChapter = new ConcurrentHashMap<>();
+    // Guarded by "this": segments (the last one takes appends) and the live byte count
+    private final List<Segment> segments = new ArrayList<>();
+    private long liveBytes;
+    private final AtomicInteger fileNumber = new AtomicInteger();
+    // Replaced by a compaction; deleted by the next one, so a sendfile already handed the path can finish
+    private final List<Segment> retired = new ArrayList<>();
+
+    // Chapters written while the rebuild runs — the rebuild must not put an older body over them
+    private final Set<Long> touchedDuringRebuild = new HashSet<>();
+    private final Set<Long> booksRemovedDuringRebuild = new HashSet<>();
+    private volatile boolean rebuilding;
+    private volatile boolean ready;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    public ChapterSegmentStore(@Value("${catalog.segment-store.enabled:false}") boolean enabled,
+                               @Value("${catalog.segment-store.dir:data/chapter-segments}") String dir,
+                               @Value("${catalog.segment-store.segment-mb:256}") int segmentMb,
+                               @Value("${catalog.segment-store.compact-ratio:2.0}") double compactRatio) {
+        this.enabled = enabled;
+        this.dir = Paths.get(dir);
+        this.segmentBytes = segmentMb * 1024 * 1024;
+        this.compactRatio = compactRatio;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (!enabled) return;
+        Thread worker = new Thread(this::rebuild, "chapter-segment-rebuild");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void rebuild() {
+        long started = System.currentTimeMillis();
+        rebuilding = true;
+        int chapters = 0;
+        try {
+            Files.createDirectories(dir);
+            try (DirectoryStream<Path> old = Files.newDirectoryStream(dir, "segment-*.dat")) {
+                for (Path p : old) Files.deleteIfExists(p);
+            }
+            long afterId = 0;
+            while (true) {
+                List<ChapterBlob> batch = blobRepository.findBatchAfter(afterId, PageRequest.of(0, REBUILD_BATCH));
+                if (batch.isEmpty()) break;
+                for (ChapterBlob blob : batch) {
+                    afterId = blob.getChapterId();
+                    if (append(blob, true)) chapters++;
+                }
+            }
+            ready = true;
+            System.out.println("[Segments] Rebuilt " + chapters + " chapters into " + segmentCount()
+                    + " segment(s) in " + (System.currentTimeMillis() - started) + " ms");
+        } catch (Exception e) {
+            System.out.println("[Segments] Rebuild failed after " + chapters + " chapters, serving from the database: "
+                    + e.getMessage());
+        } finally {
+            synchronized (this) {
+                rebuilding = false;
+                touchedDuringRebuild.clear();
+                booksRemovedDuringRebuild.clear();
+            }
+        }
+        compactIfWasteful();
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Updates (called from ChapterBlobService)
+    // ─────────────────────────────────────────────────────────────────────────
+
+    public void put(ChapterBlob blob) {
+        if (!enabled) return;
+        try {
+            append(blob, false);
+        } catch (IOException e) {
+            // The old slot, if any, is stale now: drop it so reads go to the database
+            removeChapter(blob.getChapterId());
+            System.out.println("[Segments] Append of chapter " + blob.getChapterId() + " failed: " + e.getMessage());
+        }
+        compactIfWasteful();
+    }
+
+    public synchronized void removeChapter(Long chapterId) {
+        if (!enabled) return;
+        if (rebuilding) touchedDuringRebuild.add(chapterId);
+        dropSlot(chapterId);
+    }
+
+    public synchronized void removeBook(Long bookId) {
+        if (!enabled) return;
+        if (rebuilding) booksRemovedDuringRebuild.add(bookId);
+        String prefix = bookId + ":";
+        Iterator<Map.Entry<String, Slot>> it = slots.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Slot> e = it.next();
+            if (e.getKey().startsWith(prefix)) {
+                if (rebuilding) touchedDuringRebuild.add(e.getValue().chapterId);
+                keyByChapter.remove(e.getValue().chapterId);
+                liveBytes -= e.getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    // Caller holds "this"
+    private void dropSlot(Long chapterId) {
+        String key = keyByChapter.remove(chapterId);
+        if (key == null) return;
+        Slot slot = slots.get(key);
+        if (slot != null && slot.chapterId.equals(chapterId)) {
+            slots.remove(key);
+            liveBytes -= slot.length;
+        }
+    }
+
+    /**
+     * Writes the body and indexes it, all under the lock. The rebuild skips chapters written or deleted since it
+     * started; neither path replaces a newer body, and an identical one is not written twice.
+     */
+    private synchronized boolean append(ChapterBlob blob, boolean fromRebuild) throws IOException {
+        Long chapterId = blob.getChapterId();
+        if (fromRebuild) {
+            if (touchedDuringRebuild.contains(chapterId) || booksRemovedDuringRebuild.contains(blob.getBookId())) {
+                return false;
+            }
+        } else if (rebuilding) {
+            touchedDuringRebuild.add(chapterId);
+        }
+        String key = blob.getBookId() + ":" + blob.getChapterOrder();
+        String currentKey = keyByChapter.get(chapterId);
+        Slot current = currentKey != null ? slots.get(currentKey) : null;
+        if (current != null && current.chapterId.equals(chapterId)) {
+            if (current.updatedAt != null && blob.getUpdatedAt() != null
+                    && current.updatedAt.isAfter(blob.getUpdatedAt())) return false;
+            if (key.equals(currentKey) && current.sha256 != null && current.sha256.equals(blob.getSha256())) {
+                return false;
+            }
+        }
+
+        byte[] body = blob.getGzip();
+        if (body.length > segmentBytes) {
+            dropSlot(chapterId);
+            return false;
+        }
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.used + body.length > segmentBytes) {
+            segment = newSegment();
+            segments.add(segment);
+        }
+        segment.map.put(segment.used, body);
+        Slot slot = new Slot(chapterId, segment, segment.used, body.length, blob.getSha256(), blob.getUpdatedAt());
+        segment.used += body.length;
+
+        // The chapter may have moved to another order: its old key must not keep serving it
+        dropSlot(chapterId);
+        Slot displaced = slots.put(key, slot);
+        if (displaced != null) {
+            keyByChapter.remove(displaced.chapterId, key);
+            liveBytes -= displaced.length;
+        }
+        keyByChapter.put(chapterId, key);
+        liveBytes += slot.length;
+        return true;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Compaction
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void compactIfWasteful() {
+        synchronized (this) {
+            if (rebuilding || !ready) return;
+            long written = writtenBytes();
+            if (written <= segmentBytes || written <= liveBytes * compactRatio) return;
+        }
+        if (!compacting.compareAndSet(false, true)) return;
+        Thread worker = new Thread(() -> {
+            try {
+                compact();
+            } finally {
+                compacting.set(false);
+            }
+        }, "chapter-segment-compact");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Copies the live bodies into a new generation of segment files, then swaps each slot over unless it was
+     * rewritten or dropped meanwhile. Appends go on into the old files during the copy; old files still holding
+     * live slots stay, the rest are retired. Readers never wait: they keep the old slot until the swap.
+     */
+    void compact() {
+        long started = System.currentTimeMillis();
+        Map<String, Slot> live;
+        long before;
+        synchronized (this) {
+            for (Segment s : retired) {
+                try {
+                    Files.deleteIfExists(s.path);
+                } catch (IOException e) {
+                    System.out.println("[Segments] Could not delete " + s.path + ": " + e.getMessage());
+                }
+            }
+            retired.clear();
+            live = new HashMap<>(slots);
+            before = writtenBytes();
+        }
+
+        List<Segment> fresh = new ArrayList<>();
+        Map<String, Slot> moved = new HashMap<>();
+        try {
+            for (Map.Entry<String, Slot> e : live.entrySet()) {
+                Slot old = e.getValue();
+                Segment target = fresh.isEmpty() ? null : fresh.get(fresh.size() - 1);
+                if (target == null || target.used + old.length > segmentBytes) {
+                    target = newSegment();
+                    fresh.add(target);
+                }
+                target.map.put(target.used, old.segment.map, old.offset, old.length);
+                moved.put(e.getKey(), new Slot(old.chapterId, target, target.used, old.length, old.sha256, old.updatedAt));
+                target.used += old.length;
+            }
+        } catch (IOException e) {
+            System.out.println("[Segments] Compaction failed, keeping the current files: " + e.getMessage());
+            for (Segment s : fresh) {
+                try {
+                    Files.deleteIfExists(s.path);
+                } catch (IOException ignored) {
+                }
+            }
+            return;
+        }
+
+        synchronized (this) {
+            for (Map.Entry<String, Slot> e : moved.entrySet()) {
+                slots.replace(e.getKey(), live.get(e.getKey()), e.getValue());
+            }
+            Set<Segment> referenced = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Slot slot : slots.values()) referenced.add(slot.segment);
+            List<Segment> kept = new ArrayList<>();
+            for (Segment s : segments) {
+                if (referenced.contains(s)) kept.add(s);
+                else retired.add(s);
+            }
+            segments.clear();
+            segments.addAll(kept);
+            segments.addAll(fresh);
+            System.out.println("[Segments] Compacted " + before / 1024 + " KB into " + writtenBytes() / 1024
+                    + " KB (" + liveBytes / 1024 + " KB live) in " + (System.currentTimeMillis() - started) + " ms");
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        return new Segment(dir.resolve("segment-" + fileNumber.getAndIncrement() + ".dat"), segmentBytes);
+    }
+
+    // Caller holds "this"
+    private long writtenBytes() {
+        long total = 0;
+        for (Segment s : segments) total += s.used;
+        return total;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Reads
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /** The chapter's slot, or null when it has to be read from the database. */
+    public Slot find(Long bookId, int chapterOrder) {
+        if (!ready) return null;
+        return slots.get(bookId + ":" + chapterOrder);
+    }
+
+    /**
+     * Sends the slot's bytes as the response body; headers other than Content-Length are the caller's.
+     * With Tomcat sendfile the connector transfers the file region after the handler returns.
+     */
+    public void send(Slot slot, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentLength(slot.length);
+        if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+            request.setAttribute("org.apache.tomcat.sendfile.filename", slot.segment.path.toAbsolutePath().toString());
+            request.setAttribute("org.apache.tomcat.sendfile.start", (long) slot.offset);
+            request.setAttribute("org.apache.tomcat.sendfile.end", (long) slot.offset + slot.length);
+            return;
+        }
+        ByteBuffer region = slot.segment.map.duplicate();
+        region.position(slot.offset).limit(slot.offset + slot.length);
+        OutputStream out = response.getOutputStream();
+        Channels.newChannel(out).write(region);
+        out.flush();
+    }
+
+    private synchronized int segmentCount() {
+        return segments.size();
+    }
+}
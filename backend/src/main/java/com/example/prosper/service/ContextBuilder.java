@@ -0,0 +1,295 @@
+package com.example.prosper.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.prosper.model.Chapter;
+import com.example.prosper.util.RussianText;
+
+/**
+ * Assembles the LLM context from retrieved passages under a token budget.
+ *
+ * 1. Passages of the same chapter whose ranges overlap (or nearly touch) are merged into one.
+ * 2. Passages are picked by maximal marginal relevance: relevance to the question minus similarity to
+ *    what is already picked, so a second copy of the same scene loses to a different scene.
+ *    Near-duplicates of a picked passage are dropped outright.
+ * 3. Picking stops when the budget is spent; the last passage that only partly fits is truncated.
+ *
+ * Everything that was dropped or truncated is reported in {@link Result#getCut()}.
+ */
+@Component
+public class ContextBuilder {
+
+    public static final String SEPARATOR = "\n\n---\n\n";
+
+    /** Ranges of one chapter closer than this are merged together with the text between them. */
+    private static final int MERGE_GAP = 200;
+    private static final double LAMBDA = 0.7;
+    private static final double DUPLICATE_SIMILARITY = 0.8;
+    /** Chars per token for Russian prose in Gemini's tokenizer, rounded down so the estimate errs high. */
+    private static final int CHARS_PER_TOKEN = 3;
+    /** A truncated tail shorter than this isn't worth sending. */
+    private static final int MIN_TRUNCATED_TOKENS = 150;
+
+    @Value("${ai.context.token-budget:12000}")
+    private int tokenBudget;
+
+    /**
+     * Candidate piece of context. {@code start} is the position of the text in the chapter content, or -1 when
+     * unknown (semantic chunks, ts_headline fragments); only passages with a known position are merged.
+     */
+    public static final class Passage {
+        private final Chapter chapter;
+        private final String text;
+        private final int start;
+        private final String stage;
+        private final double prior;
+
+        private Passage(Chapter chapter, String text, int start, String stage, double prior) {
+            this.chapter = chapter;
+            this.text = text;
+            this.start = start;
+            this.stage = stage;
+            this.prior = prior;
+        }
+
+        /** A range of the chapter's full (loaded) content. */
+        public static Passage range(Chapter chapter, int start, int end, String stage, double prior) {
+            return new Passage(chapter, chapter.getContent().substring(start, end), start, stage, prior);
+        }
+
+        /** A window that starts at {@code start} of the chapter content; the content itself need not be loaded. */
+        public static Passage window(Chapter chapter, int start, String text, String stage, double prior) {
+            return new Passage(chapter, text, start, stage, prior);
+        }
+
+        /** Text whose position in the chapter is unknown. */
+        public static Passage detached(Chapter chapter, String text, String stage, double prior) {
+            return new Passage(chapter, text, -1, stage, prior);
+        }
+
+        public Chapter getChapter() { return chapter; }
+        public String getText() { return text; }
+        public int getStart() { return start; }
+        public int getEnd() { return start < 0 ? -1 : start + text.length(); }
+        public String getStage() { return stage; }
+        /** Relevance given by retrieval (stage and rank within it), 0..1. */
+        public double getPrior() { return prior; }
+
+        public String getHeader() {
+            if (chapter.getchapterOrder() != null) return "[Глава " + chapter.getchapterOrder() + "]\n";
+            return chapter.getTitle() != null ? "[" + chapter.getTitle() + "]\n" : "";
+        }
+
+        @Override
+        public String toString() {
+            return chapter.getId() + (start >= 0 ? "[" + start + ".." + getEnd() + ")" : "[chunk]") + "/" + stage;
+        }
+    }
+
+    public static final class Cut {
+        private final Passage passage;
+        private final String reason;
+
+        Cut(Passage passage, String reason) {
+            this.passage = passage;
+            this.reason = reason;
+        }
+
+        public Passage getPassage() { return passage; }
+        /** "duplicate", "budget" or "truncated". */
+        public String getReason() { return reason; }
+
+        @Override
+        public String toString() {
+            return passage + ":" + reason;
+        }
+    }
+
+    public static final class Result {
+        private final String context;
+        private final List<Passage> included;
+        private final List<Cut> cut;
+        private final int tokens;
+
+        Result(String context, List<Passage> included, List<Cut> cut, int tokens) {
+            this.context = context;
+            this.included = included;
+            this.cut = cut;
+            this.tokens = tokens;
+        }
+
+        public String getContext() { return context; }
+        /** Passages in the order they appear in the context. */
+        public List<Passage> getIncluded() { return included; }
+        public List<Cut> getCut() { return cut; }
+        /** Estimated tokens of the context. */
+        public int getTokens() { return tokens; }
+    }
+
+    public Result build(List<Passage> candidates, Collection<String> queryWords) {
+        return build(candidates, queryWords, tokenBudget);
+    }
+
+    public Result build(List<Passage> candidates, Collection<String> queryWords, int budget) {
+        List<Passage> merged = mergeOverlaps(candidates);
+
+        Set<String> queryTerms = new HashSet<>();
+        for (String w : queryWords) queryTerms.addAll(RussianText.terms(w));
+
+        int n = merged.size();
+        List<Set<String>> terms = new ArrayList<>(n);
+        double[] relevance = new double[n];
+        for (int i = 0; i < n; i++) {
+            Set<String> t = new HashSet<>(RussianText.terms(merged.get(i).getText()));
+            terms.add(t);
+            relevance[i] = 0.5 * merged.get(i).getPrior() + 0.5 * coverage(t, queryTerms);
+        }
+
+        List<Passage> included = new ArrayList<>();
+        List<Integer> picked = new ArrayList<>();
+        List<Cut> cut = new ArrayList<>();
+        boolean[] done = new boolean[n];
+        StringBuilder context = new StringBuilder();
+        int used = 0;
+
+        for (int round = 0; round < n; round++) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            double bestSim = 0;
+            for (int i = 0; i < n; i++) {
+                if (done[i]) continue;
+                double maxSim = 0;
+                for (int j : picked) maxSim = Math.max(maxSim, jaccard(terms.get(i), terms.get(j)));
+                double score = LAMBDA * relevance[i] - (1 - LAMBDA) * maxSim;
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                    bestSim = maxSim;
+                }
+            }
+            done[best] = true;
+            Passage p = merged.get(best);
+
+            if (bestSim >= DUPLICATE_SIMILARITY) {
+                cut.add(new Cut(p, "duplicate"));
+                continue;
+            }
+
+            String entry = p.getHeader() + p.getText();
+            int cost = estimateTokens(entry) + (context.length() > 0 ? estimateTokens(SEPARATOR) : 0);
+            if (used + cost > budget) {
+                int room = budget - used - estimateTokens(SEPARATOR) - estimateTokens(p.getHeader());
+                if (room < MIN_TRUNCATED_TOKENS) {
+                    cut.add(new Cut(p, "budget"));
+                    continue;
+                }
+                int chars = Math.min(p.getText().length(), room * CHARS_PER_TOKEN);
+                p = new Passage(p.chapter, p.text.substring(0, chars), p.start, p.stage, p.prior);
+                entry = p.getHeader() + p.getText();
+                cost = estimateTokens(entry) + (context.length() > 0 ? estimateTokens(SEPARATOR) : 0);
+                cut.add(new Cut(p, "truncated"));
+            }
+
+            if (context.length() > 0) context.append(SEPARATOR);
+            context.append(entry);
+            used += cost;
+            included.add(p);
+            picked.add(best);
+        }
+
+        return new Result(context.toString(), included, cut, used);
+    }
+
+    public static int estimateTokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * Merges ranges of the same chapter that overlap or touch — or are within MERGE_GAP of each other when the
+     * chapter content is loaded and the gap can be filled in. The merged passage keeps the best prior and the
+     * first position among its parts.
+     */
+    static List<Passage> mergeOverlaps(List<Passage> candidates) {
+        Map<Long, List<Passage>> byChapter = new LinkedHashMap<>();
+        List<Passage> result = new ArrayList<>();
+        Map<Passage, Integer> order = new LinkedHashMap<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            Passage p = candidates.get(i);
+            if (p.text.isEmpty()) continue;
+            order.putIfAbsent(p, i);
+            if (p.start >= 0 && p.chapter.getId() != null) {
+                byChapter.computeIfAbsent(p.chapter.getId(), k -> new ArrayList<>()).add(p);
+            } else {
+                result.add(p);
+            }
+        }
+
+        Map<Passage, Integer> mergedOrder = new LinkedHashMap<>();
+        for (Passage p : result) mergedOrder.put(p, order.get(p));
+
+        for (List<Passage> ranges : byChapter.values()) {
+            ranges.sort(Comparator.comparingInt(Passage::getStart));
+            Passage cur = ranges.get(0);
+            int curOrder = order.get(cur);
+            for (int i = 1; i < ranges.size(); i++) {
+                Passage next = ranges.get(i);
+                String joined = join(cur, next);
+                if (joined != null) {
+                    cur = new Passage(cur.chapter, joined, cur.start,
+                            cur.stage.equals(next.stage) ? cur.stage : cur.stage + "+" + next.stage,
+                            Math.max(cur.prior, next.prior));
+                    curOrder = Math.min(curOrder, order.get(next));
+                } else {
+                    mergedOrder.put(cur, curOrder);
+                    cur = next;
+                    curOrder = order.get(next);
+                }
+            }
+            mergedOrder.put(cur, curOrder);
+        }
+
+        List<Passage> merged = new ArrayList<>(mergedOrder.keySet());
+        merged.sort(Comparator.comparingInt(mergedOrder::get));
+        return merged;
+    }
+
+    /** Text of {@code a} followed by {@code b} (which starts at or after {@code a}), or null if they can't be joined. */
+    private static String join(Passage a, Passage b) {
+        int aEnd = a.getEnd();
+        int bEnd = b.getEnd();
+        if (b.start <= aEnd) {
+            return bEnd <= aEnd ? a.text : a.text + b.text.substring(aEnd - b.start);
+        }
+        String content = a.chapter.getContent();
+        if (b.start - aEnd <= MERGE_GAP && content != null && content.length() >= bEnd) {
+            return a.text + content.substring(aEnd, b.start) + b.text;
+        }
+        return null;
+    }
+
+    private static double coverage(Set<String> passageTerms, Set<String> queryTerms) {
+        if (queryTerms.isEmpty()) return 0.0;
+        int hit = 0;
+        for (String t : queryTerms) if (passageTerms.contains(t)) hit++;
+        return (double) hit / queryTerms.size();
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) return 0.0;
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int shared = 0;
+        for (String t : smaller) if (larger.contains(t)) shared++;
+        return (double) shared / (a.size() + b.size() - shared);
+    }
+}
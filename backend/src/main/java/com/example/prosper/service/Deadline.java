@@ -0,0 +1,32 @@
+package com.example.prosper.service;
+
+/**
+ * Absolute point in time a piece of work must finish by. Stages of the AI pipeline take
+ * {@code min(their own timeout, what is left of the request budget)}.
+ */
+public final class Deadline {
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline afterMillis(long millis) {
+        return new Deadline(System.nanoTime() + millis * 1_000_000L);
+    }
+
+    public long remainingMillis() {
+        return Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000L);
+    }
+
+    public boolean isExpired() {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /** The earlier of this deadline and {@code millis} from now. */
+    public Deadline capMillis(long millis) {
+        long candidate = System.nanoTime() + millis * 1_000_000L;
+        return candidate - deadlineNanos < 0 ? new Deadline(candidate) : this;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.prosper.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.stereotype.Component;
+
+import com.example.prosper.util.RussianText;
+
+/**
+ * Answer without the LLM: the sentences of the retrieved passages that share the most terms with the
+ * question, quoted with their chapter. Used when ResilientLlmClient refuses a call, so the reader gets
+ * the relevant text in milliseconds instead of an error after a timeout.
+ */
+@Component
+public class ExtractiveAnswerer {
+
+    private static final int MAX_SENTENCES = 4;
+    private static final int MAX_SENTENCE_CHARS = 400;
+    private static final Pattern SENTENCE = Pattern.compile("[^.!?…\\n]+(?:[.!?…]+|$)");
+
+    private static final String HEADER = "ИИ-помощник сейчас перегружен, поэтому вот что нашлось в тексте по вашему вопросу:";
+    private static final String NOTHING = "ИИ-помощник сейчас перегружен, попробуйте спросить чуть позже.";
+
+    private static final class Sentence {
+        final ContextBuilder.Passage passage;
+        final int passageIndex;
+        final int position;
+        final String text;
+        final int score;
+
+        Sentence(ContextBuilder.Passage passage, int passageIndex, int position, String text, int score) {
+            this.passage = passage;
+            this.passageIndex = passageIndex;
+            this.position = position;
+            this.text = text;
+            this.score = score;
+        }
+    }
+
+    public String answer(Collection<String> queryWords, List<ContextBuilder.Passage> passages) {
+        Set<String> queryTerms = new HashSet<>();
+        for (String w : queryWords) queryTerms.addAll(RussianText.terms(w));
+
+        List<Sentence> scored = new ArrayList<>();
+        for (int i = 0; i < passages.size(); i++) {
+            Matcher m = SENTENCE.matcher(passages.get(i).getText());
+            while (m.find()) {
+                String text = m.group().trim();
+                if (text.length() < 20) continue;
+                Set<String> terms = new HashSet<>(RussianText.terms(text));
+                terms.retainAll(queryTerms);
+                if (!terms.isEmpty()) scored.add(new Sentence(passages.get(i), i, m.start(), text, terms.size()));
+            }
+        }
+        if (scored.isEmpty()) return NOTHING;
+
+        // Best sentences (earlier passages win ties — they ranked higher), then back in reading order
+        scored.sort(Comparator.comparingInt((Sentence s) -> -s.score).thenComparingInt(s -> s.passageIndex));
+        List<Sentence> picked = new ArrayList<>(scored.subList(0, Math.min(MAX_SENTENCES, scored.size())));
+        picked.sort(Comparator.comparingInt((Sentence s) -> s.passageIndex).thenComparingInt(s -> s.position));
+
+        StringBuilder sb = new StringBuilder(HEADER);
+        for (Sentence s : picked) {
+            String text = s.text.length() > MAX_SENTENCE_CHARS ? s.text.substring(0, MAX_SENTENCE_CHARS) + "…" : s.text;
+            sb.append("\n\n").append(s.passage.getHeader().trim()).append(" «").append(text).append("»");
+        }
+        return sb.toString();
+    }
+}
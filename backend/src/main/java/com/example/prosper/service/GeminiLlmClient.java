@@ -0,0 +1,129 @@
+package com.example.prosper.service;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@Component
+@ConditionalOnProperty(name = "ai.llm.provider", havingValue = "gemini", matchIfMissing = true)
+public class GeminiLlmClient implements LlmClient {
+
+    private static final String GEMINI_MODEL_URL =
+            "https://generativelanguage.googleapis.com/v1beta/models/gemini-3.1-flash-lite";
+
+    // Gemini can be slow; for streams the read timeout is the max gap between chunks
+    private final RestTemplate restTemplate = buildRestTemplate(5000, 25000);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${GEMINI_API_KEY:}")
+    private String geminiApiKey;
+
+    @Autowired
+    private AiMetrics aiMetrics;
+
+    @Override
+    public boolean isConfigured() {
+        return resolveApiKey() != null;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public String generate(String prompt) {
+        long started = System.nanoTime();
+        String url = GEMINI_MODEL_URL + ":generateContent?key=" + resolveApiKey();
+        try {
+            ResponseEntity<Map> response = restTemplate.postForEntity(url, new HttpEntity<>(body(prompt), jsonHeaders()), Map.class);
+            String text = response.getStatusCode() != HttpStatus.OK || response.getBody() == null
+                    ? null : extractText(objectMapper.valueToTree(response.getBody()));
+            aiMetrics.call("gemini", "generate", AiMetrics.outcome(text != null ? text.length() : 0), started);
+            return text;
+        } catch (RuntimeException e) {
+            aiMetrics.call("gemini", "generate", AiMetrics.outcome(e), started);
+            throw e;
+        }
+    }
+
+    @Override
+    public void stream(String prompt, Consumer<String> onChunk) {
+        long started = System.nanoTime();
+        try {
+            streamChunks(prompt, onChunk);
+            aiMetrics.call("gemini", "stream", "hit", started);
+        } catch (RuntimeException e) {
+            aiMetrics.call("gemini", "stream", AiMetrics.outcome(e), started);
+            throw e;
+        }
+    }
+
+    private void streamChunks(String prompt, Consumer<String> onChunk) {
+        String url = GEMINI_MODEL_URL + ":streamGenerateContent?alt=sse&key=" + resolveApiKey();
+        restTemplate.execute(url, HttpMethod.POST,
+                request -> {
+                    request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                    objectMapper.writeValue(request.getBody(), body(prompt));
+                },
+                response -> {
+                    try (BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(response.getBody(), StandardCharsets.UTF_8))) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            if (!line.startsWith("data:")) continue;
+                            String text = extractText(objectMapper.readTree(line.substring(5).trim()));
+                            if (text != null && !text.isEmpty()) onChunk.accept(text);
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    private static Map<String, Object> body(String prompt) {
+        return Map.of("contents", List.of(Map.of("role", "user", "parts", List.of(Map.of("text", prompt)))));
+    }
+
+    private static HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+    }
+
+    private static String extractText(JsonNode root) {
+        JsonNode parts = root.path("candidates").path(0).path("content").path("parts");
+        if (!parts.isArray() || parts.isEmpty()) return null;
+        StringBuilder sb = new StringBuilder();
+        for (JsonNode part : parts) sb.append(part.path("text").asText(""));
+        return sb.toString();
+    }
+
+    private String resolveApiKey() {
+        if (geminiApiKey != null && !geminiApiKey.isEmpty()) return geminiApiKey;
+        String env = System.getenv("GEMINI_API_KEY");
+        return (env != null && !env.isEmpty()) ? env : null;
+    }
+
+    private static RestTemplate buildRestTemplate(int connectMs, int readMs) {
+        SimpleClientHttpRequestFactory f = new SimpleClientHttpRequestFactory();
+        f.setConnectTimeout(connectMs);
+        f.setReadTimeout(readMs);
+        return new RestTemplate(f);
+    }
+}
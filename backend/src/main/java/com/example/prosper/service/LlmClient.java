@@ -0,0 +1,19 @@
+package com.example.prosper.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Text-generation backend used by AiService. The Gemini implementation is the default;
+ * {@code ai.llm.provider=stub} swaps in {@link StubLlmClient} for offline runs.
+ */
+public interface LlmClient {
+
+    /** False when the provider can't be called at all (e.g. no API key). */
+    boolean isConfigured();
+
+    /** Returns the full answer, or null if the provider returned no text. Throws on transport errors. */
+    String generate(String prompt);
+
+    /** Delivers the answer chunk by chunk as the provider produces it; returns when the answer is complete. */
+    void stream(String prompt, Consumer<String> onChunk);
+}
@@ -0,0 +1,259 @@
+package com.example.prosper.service;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * HTTP client for ml_service. Calls are async under the hood so that a timeout or an interrupt
+ * of the calling stage cancels the exchange instead of leaving a socket read running.
+ *
+ * One HttpClient is shared, so connections are pooled and kept alive between questions. HTTP/2 is
+ * negotiated over TLS only: uvicorn speaks plain HTTP/1.1 and does not do the h2c upgrade.
+ */
+@Component
+public class MlServiceClient {
+
+    private final String mlServiceUrl;
+    private final AiMetrics aiMetrics;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Flip to false when the service answers 404 (older ml_service build)
+    private volatile boolean batchSupported = true;
+    private volatile boolean embeddingsSupported = true;
+
+    public MlServiceClient(@Value("${ML_SERVICE_URL:http://ml-service:8001}") String mlServiceUrl,
+                           AiMetrics aiMetrics) {
+        this.mlServiceUrl = mlServiceUrl;
+        this.aiMetrics = aiMetrics;
+        this.httpClient = HttpClient.newBuilder()
+                .version(mlServiceUrl.startsWith("https:") ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(3))
+                .build();
+    }
+
+    // Top-k chapters of one book: maps with chapter_id, title, content
+    private List<Map<String, Object>> searchOne(String question, Long bookId, int topK, Deadline deadline)
+            throws InterruptedException {
+        Map<String, Object> body = Map.of("question", question, "book_id", bookId, "top_k", topK);
+        Map<String, Object> response = post("/semantic-search", body, deadline);
+        Object chapters = response.get("chapters");
+        return chapters instanceof List ? castList(chapters) : Collections.emptyList();
+    }
+
+    /**
+     * Top-k chapters of each book for the question, in one request. Books the service has no results
+     * for (e.g. embeddings still warming up) map to an empty list. Against a service without the batch
+     * endpoint it falls back to per-book calls, sent concurrently.
+     */
+    public Map<Long, List<Map<String, Object>>> semanticSearchBatch(String question, List<Long> bookIds, int topK,
+                                                                    Deadline deadline) throws InterruptedException {
+        long started = System.nanoTime();
+        try {
+            Map<Long, List<Map<String, Object>>> results = searchBatch(question, bookIds, topK, deadline);
+            int found = results.values().stream().mapToInt(List::size).sum();
+            aiMetrics.call("ml", "semantic-search-batch", AiMetrics.outcome(found), started);
+            return results;
+        } catch (RuntimeException e) {
+            aiMetrics.call("ml", "semantic-search-batch", AiMetrics.outcome(e), started);
+            throw e;
+        }
+    }
+
+    private Map<Long, List<Map<String, Object>>> searchBatch(String question, List<Long> bookIds, int topK,
+                                                             Deadline deadline) throws InterruptedException {
+        Map<Long, List<Map<String, Object>>> results = new LinkedHashMap<>();
+        for (Long bookId : bookIds) results.put(bookId, Collections.emptyList());
+        if (bookIds.isEmpty()) return results;
+        if (bookIds.size() == 1) {
+            results.put(bookIds.get(0), searchOne(question, bookIds.get(0), topK, deadline));
+            return results;
+        }
+
+        if (batchSupported) {
+            Map<String, Object> body = Map.of("question", question, "book_ids", bookIds, "top_k", topK);
+            HttpResponse<byte[]> response = await(send("/semantic-search/batch", body, deadline), deadline);
+            if (response.statusCode() != 404) {
+                Object byBook = parse(response).get("results");
+                if (byBook instanceof Map) {
+                    ((Map<?, ?>) byBook).forEach((bookId, chapters) -> {
+                        if (chapters instanceof List) results.put(Long.valueOf(bookId.toString()), castList(chapters));
+                    });
+                }
+                return results;
+            }
+            batchSupported = false;
+            System.out.println("[ML] /semantic-search/batch not available — using per-book calls");
+        }
+
+        Map<Long, CompletableFuture<HttpResponse<byte[]>>> calls = new LinkedHashMap<>();
+        for (Long bookId : bookIds) {
+            calls.put(bookId, send("/semantic-search",
+                    Map.of("question", question, "book_id", bookId, "top_k", topK), deadline));
+        }
+        for (Map.Entry<Long, CompletableFuture<HttpResponse<byte[]>>> call : calls.entrySet()) {
+            try {
+                Object chapters = parse(await(call.getValue(), deadline)).get("chapters");
+                if (chapters instanceof List) results.put(call.getKey(), castList(chapters));
+            } catch (InterruptedException e) {
+                calls.values().forEach(c -> c.cancel(true));
+                throw e;
+            } catch (RuntimeException e) {
+                System.out.println("[ML] Semantic search failed for book " + call.getKey() + ": " + e.getMessage());
+            }
+        }
+        return results;
+    }
+
+    /** Whether the service exposes /embed and /chapter-embeddings (false after a 404 on either). */
+    public boolean isEmbeddingsSupported() {
+        return embeddingsSupported;
+    }
+
+    /** Embedding of the text with the same model as the chapters; null if the service can't embed. */
+    public float[] embed(String text, Deadline deadline) throws InterruptedException {
+        long started = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response = await(send("/embed", Map.of("text", text), deadline), deadline);
+            if (unsupported(response)) return null;
+            float[] vector = toFloats(parse(response).get("vector"));
+            aiMetrics.call("ml", "embed", AiMetrics.outcome(vector.length), started);
+            return vector;
+        } catch (RuntimeException e) {
+            aiMetrics.call("ml", "embed", AiMetrics.outcome(e), started);
+            throw e;
+        }
+    }
+
+    /**
+     * Passage embeddings (chapter id, character range, vector) of every chapter of the book, or null while
+     * the service is still computing them (the request starts that computation) or can't serve them.
+     * {@code refresh} makes the service drop what it has for the book and recompute. A service that only
+     * sends the mean chapter vector yields one passage per chapter with length 0.
+     */
+    public List<VectorStore.Passage> chapterEmbeddings(Long bookId, boolean refresh, Deadline deadline)
+            throws InterruptedException {
+        long started = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response = await(send("/chapter-embeddings",
+                    Map.of("book_id", bookId, "refresh", refresh), deadline), deadline);
+            if (unsupported(response)) return null;
+            Map<String, Object> body = parse(response);
+            if (!Boolean.TRUE.equals(body.get("ready"))) {
+                aiMetrics.call("ml", "chapter-embeddings", "empty", started);
+                return null;
+            }
+            List<VectorStore.Passage> passages = new ArrayList<>();
+            Object chapters = body.get("chapters");
+            if (chapters instanceof List) {
+                for (Map<String, Object> c : castList(chapters)) {
+                    long chapterId = ((Number) c.get("chapter_id")).longValue();
+                    Object chunks = c.get("passages");
+                    if (chunks instanceof List && !((List<?>) chunks).isEmpty()) {
+                        for (Map<String, Object> p : castList(chunks)) {
+                            int start = ((Number) p.get("start")).intValue();
+                            int end = ((Number) p.get("end")).intValue();
+                            passages.add(new VectorStore.Passage(chapterId, start, end - start, toFloats(p.get("vector"))));
+                        }
+                    } else {
+                        passages.add(new VectorStore.Passage(chapterId, 0, 0, toFloats(c.get("vector"))));
+                    }
+                }
+            }
+            aiMetrics.call("ml", "chapter-embeddings", AiMetrics.outcome(passages.size()), started);
+            return passages;
+        } catch (RuntimeException e) {
+            aiMetrics.call("ml", "chapter-embeddings", AiMetrics.outcome(e), started);
+            throw e;
+        }
+    }
+
+    private boolean unsupported(HttpResponse<byte[]> response) {
+        if (response.statusCode() != 404) return false;
+        if (embeddingsSupported) {
+            embeddingsSupported = false;
+            System.out.println("[ML] Embedding endpoints not available — semantic search stays on the ML side");
+        }
+        return true;
+    }
+
+    private static float[] toFloats(Object value) {
+        if (!(value instanceof List)) throw new RuntimeException("ML response has no vector");
+        List<?> list = (List<?>) value;
+        float[] out = new float[list.size()];
+        for (int i = 0; i < out.length; i++) out[i] = ((Number) list.get(i)).floatValue();
+        return out;
+    }
+
+    private Map<String, Object> post(String path, Object body, Deadline deadline) throws InterruptedException {
+        return parse(await(send(path, body, deadline), deadline));
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> send(String path, Object body, Deadline deadline) {
+        long timeoutMs = deadline.remainingMillis();
+        if (timeoutMs <= 0) throw new RuntimeException("ML service call skipped: deadline exceeded");
+
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder()
+                    .uri(URI.create(mlServiceUrl + path))
+                    .timeout(Duration.ofMillis(timeoutMs))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (Exception e) {
+            throw new RuntimeException("ML request build failed: " + e.getMessage(), e);
+        }
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static HttpResponse<byte[]> await(CompletableFuture<HttpResponse<byte[]>> call, Deadline deadline)
+            throws InterruptedException {
+        long timeoutMs = deadline.remainingMillis();
+        try {
+            return call.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            throw e;
+        } catch (TimeoutException e) {
+            call.cancel(true);
+            throw new RuntimeException("ML service timeout after " + timeoutMs + " ms");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("ML service error: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private Map<String, Object> parse(HttpResponse<byte[]> response) {
+        if (response.statusCode() != 200) {
+            throw new RuntimeException("ML service HTTP " + response.statusCode());
+        }
+        try {
+            return objectMapper.readValue(response.body(), new TypeReference<Map<String, Object>>() {});
+        } catch (Exception e) {
+            throw new RuntimeException("ML response parse failed: " + e.getMessage(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> castList(Object value) {
+        return (List<Map<String, Object>>) value;
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.prosper.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.example.prosper.model.Book;
+import com.example.prosper.repository.BookRepository;
+import com.example.prosper.util.KeywordAutomaton;
+import com.example.prosper.util.RussianText;
+
+/**
+ * Local replacement for the first Gemini call in AiService: finds the book title, chapter number
+ * and search keywords in the question without leaving the JVM.
+ *
+ * Titles are matched by an automaton over stemmed title words (so "Преподобного Гу" finds
+ * "Преподобный Гу"), with a trigram-similarity fallback for typos. The result carries a confidence;
+ * AiService only asks Gemini when it is low.
+ */
+@Service
+public class QuestionParser {
+
+    private static final Pattern CHAPTER_AFTER = Pattern.compile(
+            "глав[а-я]*\\s*(?:№\\s*)?(\\d{1,5})", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    private static final Pattern CHAPTER_BEFORE = Pattern.compile(
+            "(\\d{1,5})\\s*-?\\s*(?:[а-я]{1,3}\\s+)?глав", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+
+    private static final double FUZZY_MIN_SIMILARITY = 0.45;
+    // Title score of a perfect fuzzy hit; an exact stemmed match scores 1.0
+    private static final double FUZZY_MAX_SCORE = 0.5;
+    // Single question word vs whole title — the threshold of the old per-word similarity() query
+    private static final double WORD_MIN_SIMILARITY = 0.25;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "что", "кто", "как", "какой", "какая", "какое", "какие", "каким", "какую", "каков",
+            "где", "когда", "почему", "зачем", "чем", "чего", "кем", "кого", "сколько", "откуда", "куда",
+            "это", "этот", "эта", "эти", "этом", "этой", "тот", "та", "те", "том", "такое", "такой",
+            "был", "была", "было", "были", "есть", "будет", "стал", "стала", "ли", "ещё", "еще", "уже",
+            "для", "про", "при", "без", "над", "под", "после", "перед", "между", "через", "или", "либо",
+            "его", "её", "ее", "их", "он", "она", "они", "оно", "мне", "меня", "мой", "твой", "свой", "себя",
+            "который", "которая", "которое", "которые", "всё", "все", "весь", "вся", "так", "там", "тут",
+            "расскажи", "скажи", "объясни", "опиши", "подробно", "пожалуйста", "можешь", "хочу", "знать",
+            "новелла", "новелле", "новеллы", "новеллу", "книга", "книге", "книги", "книгу",
+            "глава", "главе", "главы", "главу", "главах", "глав", "произошло", "случилось", "происходит");
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    private volatile TitleDictionary titles = new TitleDictionary(List.of());
+
+    public static final class ParsedQuestion {
+        private final Long bookId;
+        private final String bookTitle;
+        private final Integer chapterNumber;
+        private final String keywords;
+        private final double confidence;
+
+        ParsedQuestion(Long bookId, String bookTitle, Integer chapterNumber, String keywords, double confidence) {
+            this.bookId = bookId;
+            this.bookTitle = bookTitle;
+            this.chapterNumber = chapterNumber;
+            this.keywords = keywords;
+            this.confidence = confidence;
+        }
+
+        /** Resolved book id, or null when no title was recognized. */
+        public Long getBookId() { return bookId; }
+        /** Catalog title of the recognized book, empty string if none. */
+        public String getBookTitle() { return bookTitle; }
+        public Integer getChapterNumber() { return chapterNumber; }
+        /** Space-separated keywords: question words minus stop words and the title. */
+        public String getKeywords() { return keywords; }
+        /** 0..1; exact title match with keywords scores highest. */
+        public double getConfidence() { return confidence; }
+    }
+
+    /** A book whose title resembles a word of the question. */
+    public static final class TitleCandidate {
+        private final Long bookId;
+        private final String title;
+        private final double score;
+
+        TitleCandidate(Long bookId, String title, double score) {
+            this.bookId = bookId;
+            this.title = title;
+            this.score = score;
+        }
+
+        public Long getBookId() { return bookId; }
+        public String getTitle() { return title; }
+        /** pg_trgm-style similarity of the title to the best-matching question word. */
+        public double getScore() { return score; }
+
+        @Override
+        public String toString() {
+            return title + String.format(" (%.2f)", score);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void refreshTitles() {
+        try {
+            List<Book> books = bookRepository.findAll();
+            titles = new TitleDictionary(books);
+            System.out.println("[QuestionParser] Title dictionary loaded: " + books.size() + " books");
+        } catch (Exception e) {
+            System.out.println("[QuestionParser] Title dictionary load failed: " + e.getMessage());
+        }
+    }
+
+    public ParsedQuestion parse(String question) {
+        TitleDictionary dict = titles;
+
+        List<String> words = new ArrayList<>();
+        List<String> stems = new ArrayList<>();
+        for (String raw : question.split("[^\\p{L}\\p{N}]+")) {
+            if (raw.isEmpty()) continue;
+            String folded = RussianText.fold(raw);
+            words.add(folded);
+            stems.add(RussianText.stem(folded));
+        }
+
+        // ── Title: exact stemmed match, then trigram fallback ──
+        int[] span = dict.findExact(stems);
+        int bookIndex = -1;
+        double titleScore = 0.0;
+        if (span != null) {
+            bookIndex = span[2];
+            titleScore = 1.0;
+        } else {
+            double[] fuzzy = dict.findFuzzy(words);
+            if (fuzzy != null) {
+                span = new int[]{(int) fuzzy[0], (int) fuzzy[1], (int) fuzzy[2]};
+                bookIndex = span[2];
+                titleScore = fuzzyTitleScore(fuzzy[3]);
+            }
+        }
+
+        // ── Chapter number ──
+        Integer chapterNumber = null;
+        Matcher m = CHAPTER_AFTER.matcher(question);
+        if (m.find()) {
+            chapterNumber = Integer.parseInt(m.group(1));
+        } else {
+            m = CHAPTER_BEFORE.matcher(question);
+            if (m.find()) chapterNumber = Integer.parseInt(m.group(1));
+        }
+
+        // ── Keywords: everything that is not a stop word, a number or part of the title ──
+        Set<String> keywords = new LinkedHashSet<>();
+        for (int i = 0; i < words.size(); i++) {
+            if (span != null && i >= span[0] && i < span[1]) continue;
+            String w = words.get(i);
+            if (w.length() <= 2 || STOP_WORDS.contains(w) || w.chars().allMatch(Character::isDigit)) continue;
+            keywords.add(w);
+        }
+
+        // A recognized title is the main signal; keywords only matter if there's something to search for.
+        // Exact title: 0.9-1.0. Fuzzy title: 0.5-0.8, and above 0.75 only for near-exact spellings (see below).
+        double confidence = bookIndex >= 0 ? 0.5 + 0.4 * titleScore : 0.2;
+        if (!keywords.isEmpty() || chapterNumber != null) confidence += 0.1;
+
+        Long bookId = bookIndex >= 0 ? dict.ids[bookIndex] : null;
+        String bookTitle = bookIndex >= 0 ? dict.titles[bookIndex] : "";
+        return new ParsedQuestion(bookId, bookTitle, chapterNumber, String.join(" ", keywords), confidence);
+    }
+
+    /**
+     * Maps a trigram similarity in [FUZZY_MIN_SIMILARITY, 1] to a title score in [0, FUZZY_MAX_SCORE]. A hit at
+     * the floor only names a candidate (confidence 0.6, so Gemini still extracts the title); a score clears the
+     * default ai.parser.min-confidence of 0.75 only from a similarity of about 0.86, a typo or two in the title.
+     */
+    static double fuzzyTitleScore(double similarity) {
+        double share = (similarity - FUZZY_MIN_SIMILARITY) / (1.0 - FUZZY_MIN_SIMILARITY);
+        return FUZZY_MAX_SCORE * Math.max(0.0, Math.min(1.0, share));
+    }
+
+    /**
+     * Books whose title is trigram-similar to a question word of 4+ letters, best score first. For questions
+     * without a recognizable title; answered from the in-memory title trigram index, no database round-trip.
+     */
+    public List<TitleCandidate> findTitleCandidates(String question, int limit) {
+        TitleDictionary dict = titles;
+        double[] best = new double[dict.ids.length];
+        for (String raw : question.split("[^\\p{L}\\p{N}]+")) {
+            if (raw.length() < 4) continue;
+            dict.scoreWord(RussianText.trigrams(RussianText.fold(raw)), best);
+        }
+        List<TitleCandidate> out = new ArrayList<>();
+        for (int t = 0; t < best.length; t++) {
+            if (best[t] > WORD_MIN_SIMILARITY) out.add(new TitleCandidate(dict.ids[t], dict.titles[t], best[t]));
+        }
+        out.sort((a, b) -> Double.compare(b.score, a.score));
+        return out.size() > limit ? new ArrayList<>(out.subList(0, limit)) : out;
+    }
+
+    /** Immutable snapshot of catalog titles, swapped as a whole on refresh. */
+    private static final class TitleDictionary {
+        final Long[] ids;
+        final String[] titles;
+        final int[] wordCounts;
+        final List<Set<String>> trigrams;
+        final KeywordAutomaton automaton;
+        // trigram -> indexes of the titles containing it
+        final Map<String, List<Integer>> titlesByTrigram = new HashMap<>();
+
+        TitleDictionary(List<Book> books) {
+            int n = books.size();
+            ids = new Long[n];
+            titles = new String[n];
+            wordCounts = new int[n];
+            trigrams = new ArrayList<>(n);
+            List<String> patterns = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                Book b = books.get(i);
+                ids[i] = b.getId();
+                titles[i] = b.getTitle() != null ? b.getTitle() : "";
+                List<String> stems = RussianText.terms(titles[i]);
+                wordCounts[i] = stems.size();
+                // Surrounding spaces force matches to start and end on word boundaries
+                patterns.add(stems.isEmpty() ? "" : " " + String.join(" ", stems) + " ");
+                trigrams.add(RussianText.trigrams(RussianText.fold(titles[i])));
+                for (String tri : trigrams.get(i)) titlesByTrigram.computeIfAbsent(tri, k -> new ArrayList<>()).add(i);
+            }
+            automaton = new KeywordAutomaton(patterns);
+        }
+
+        /** Returns [fromWord, toWordExclusive, bookIndex] of the longest title found in the question. */
+        int[] findExact(List<String> stems) {
+            if (ids.length == 0 || stems.isEmpty()) return null;
+            StringBuilder sb = new StringBuilder(" ");
+            Map<Integer, Integer> wordByStart = new HashMap<>();
+            for (int i = 0; i < stems.size(); i++) {
+                wordByStart.put(sb.length() - 1, i);
+                sb.append(stems.get(i)).append(' ');
+            }
+            int[] best = {-1, -1, -1};
+            automaton.scan(sb, (pattern, start, end) -> {
+                Integer from = wordByStart.get(start);
+                if (from == null) return;
+                int to = from + wordCounts[pattern];
+                if (best[2] < 0 || to - from > best[1] - best[0]) {
+                    best[0] = from;
+                    best[1] = to;
+                    best[2] = pattern;
+                }
+            });
+            return best[2] >= 0 ? best : null;
+        }
+
+        /** Raises best[t] to the similarity of title t to the word, for titles sharing a trigram with it. */
+        void scoreWord(Set<String> word, double[] best) {
+            Map<Integer, Integer> shared = new HashMap<>();
+            for (String tri : word) {
+                List<Integer> hits = titlesByTrigram.get(tri);
+                if (hits != null) hits.forEach(t -> shared.merge(t, 1, Integer::sum));
+            }
+            shared.forEach((t, n) -> {
+                double sim = (double) n / (word.size() + trigrams.get(t).size() - n);
+                if (sim > best[t]) best[t] = sim;
+            });
+        }
+
+        /** Returns [fromWord, toWordExclusive, bookIndex, similarity] of the closest title, or null. */
+        double[] findFuzzy(List<String> words) {
+            double[] best = null;
+            Map<Integer, Set<String>> windows = new HashMap<>();
+            for (int t = 0; t < ids.length; t++) {
+                int len = Math.max(1, wordCounts[t]);
+                for (int size = Math.max(1, len - 1); size <= len + 1; size++) {
+                    for (int from = 0; from + size <= words.size(); from++) {
+                        int f = from;
+                        int s = size;
+                        Set<String> window = windows.computeIfAbsent(from * 1024 + size,
+                                k -> RussianText.trigrams(String.join(" ", words.subList(f, f + s))));
+                        double sim = RussianText.similarity(window, trigrams.get(t));
+                        if (sim >= FUZZY_MIN_SIMILARITY && (best == null || sim > best[3])) {
+                            best = new double[]{from, from + size, t, sim};
+                        }
+                    }
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.prosper.service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Guards every call to the configured {@link LlmClient}:
+ *
+ * - token bucket sized to the provider quota (ai.llm.rate.*) — a call waits briefly for a token, then gives up;
+ * - bulkhead: at most ai.llm.max-concurrent calls in flight, so a slow provider can't hold every request thread;
+ * - circuit breaker over the last ai.llm.breaker.window calls: opens when the error or slow-call share reaches
+ *   the threshold, rejects calls for ai.llm.breaker.open-seconds, then lets one trial call through.
+ *
+ * A rejected call throws {@link UnavailableException} right away; callers fall back to an extractive answer.
+ * With ai.llm.provider=stub (and its failure/latency knobs) all of this can be exercised offline.
+ */
+@Component
+public class ResilientLlmClient {
+
+    /** The call was not made: rate limit, bulkhead or open breaker. */
+    public static final class UnavailableException extends RuntimeException {
+        private final String reason;
+
+        UnavailableException(String reason) {
+            super("LLM unavailable: " + reason);
+            this.reason = reason;
+        }
+
+        /** "rate", "bulkhead" or "breaker". */
+        public String getReason() { return reason; }
+    }
+
+    private final LlmClient delegate;
+    private final TokenBucket bucket;
+    private final Semaphore inFlight;
+    private final CircuitBreaker breaker;
+    private final long maxWaitMs;
+    private final MeterRegistry registry;
+
+    public ResilientLlmClient(LlmClient delegate,
+                              @Value("${ai.llm.rate.per-minute:30}") int perMinute,
+                              @Value("${ai.llm.rate.burst:5}") int burst,
+                              @Value("${ai.llm.max-concurrent:4}") int maxConcurrent,
+                              @Value("${ai.llm.max-wait-ms:2000}") long maxWaitMs,
+                              @Value("${ai.llm.breaker.window:20}") int window,
+                              @Value("${ai.llm.breaker.failure-rate:0.5}") double failureRate,
+                              @Value("${ai.llm.breaker.slow-call-ms:10000}") long slowCallMs,
+                              @Value("${ai.llm.breaker.open-seconds:30}") long openSeconds,
+                              MeterRegistry registry) {
+        this.delegate = delegate;
+        this.bucket = new TokenBucket(burst, perMinute / 60.0);
+        this.inFlight = new Semaphore(maxConcurrent);
+        this.breaker = new CircuitBreaker(window, failureRate, slowCallMs, openSeconds * 1000);
+        this.maxWaitMs = maxWaitMs;
+        this.registry = registry;
+        Gauge.builder("ai.llm.breaker.state", breaker, b -> b.state().ordinal())
+                .description("0 closed, 1 open, 2 half-open")
+                .register(registry);
+        Gauge.builder("ai.llm.in.flight", inFlight, s -> maxConcurrent - s.availablePermits()).register(registry);
+    }
+
+    public boolean isConfigured() {
+        return delegate.isConfigured();
+    }
+
+    /** Whether a call would currently be let through by the breaker (rate and bulkhead not considered). */
+    public boolean isAvailable() {
+        return breaker.state() != CircuitBreaker.State.OPEN;
+    }
+
+    public String generate(String prompt) {
+        CircuitBreaker.Pass pass = admit();
+        try {
+            String text = delegate.generate(prompt);
+            breaker.record(pass, true, System.nanoTime() - pass.started);
+            return text;
+        } catch (RuntimeException e) {
+            breaker.record(pass, false, System.nanoTime() - pass.started);
+            throw e;
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Latency of a stream is judged by its first chunk — a long answer isn't a slow provider. An exception from
+     * {@code onChunk} (typically the SSE client having disconnected) is rethrown but not held against the
+     * provider: only failures of the delegate itself count.
+     */
+    public void stream(String prompt, Consumer<String> onChunk) {
+        CircuitBreaker.Pass pass = admit();
+        long[] firstChunk = {0};
+        boolean[] consumerFailed = {false};
+        try {
+            delegate.stream(prompt, chunk -> {
+                if (firstChunk[0] == 0) firstChunk[0] = System.nanoTime() - pass.started;
+                try {
+                    onChunk.accept(chunk);
+                } catch (RuntimeException e) {
+                    consumerFailed[0] = true;
+                    throw e;
+                }
+            });
+            breaker.record(pass, true, firstChunk[0] > 0 ? firstChunk[0] : System.nanoTime() - pass.started);
+        } catch (RuntimeException e) {
+            if (consumerFailed[0]) breaker.cancelPass(pass);
+            else breaker.record(pass, false, System.nanoTime() - pass.started);
+            throw e;
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    /** Takes a breaker pass, a rate token and a bulkhead permit, or throws. The pass carries the start time. */
+    private CircuitBreaker.Pass admit() {
+        CircuitBreaker.Pass pass = breaker.tryPass();
+        if (pass == null) throw reject("breaker");
+        try {
+            if (!bucket.tryTake(maxWaitMs)) {
+                breaker.cancelPass(pass);
+                throw reject("rate");
+            }
+            if (!inFlight.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                breaker.cancelPass(pass);
+                throw reject("bulkhead");
+            }
+        } catch (InterruptedException e) {
+            breaker.cancelPass(pass);
+            Thread.currentThread().interrupt();
+            throw reject("interrupted");
+        }
+        pass.started = System.nanoTime();
+        return pass;
+    }
+
+    private UnavailableException reject(String reason) {
+        Counter.builder("ai.llm.rejected").tag("reason", reason).register(registry).increment();
+        return new UnavailableException(reason);
+    }
+
+    /** Classic token bucket: {@code capacity} tokens, refilled continuously at {@code perSecond}. */
+    static final class TokenBucket {
+        private final double capacity;
+        private final double perNano;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(int capacity, double perSecond) {
+            this.capacity = capacity;
+            this.perNano = perSecond / 1e9;
+            this.tokens = capacity;
+        }
+
+        /** Takes a token, waiting up to maxWaitMs for one to accrue; false if it would take longer. */
+        boolean tryTake(long maxWaitMs) throws InterruptedException {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return true;
+                }
+                waitNanos = (long) ((1 - tokens) / perNano);
+                if (waitNanos > TimeUnit.MILLISECONDS.toNanos(maxWaitMs)) return false;
+                // Reserve the token now so concurrent waiters queue up behind each other
+                tokens -= 1;
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            return true;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * perNano);
+            refilledAt = now;
+        }
+    }
+
+    /**
+     * Count-based sliding window over the last calls; failure = error or slower than slowCallMs. Every admitted
+     * call holds a {@link Pass} stamped with the breaker's epoch, which advances each time it opens: calls that
+     * started before the last opening finish into a window they no longer belong to and are ignored, and only
+     * the half-open trial call decides whether to close again.
+     */
+    static final class CircuitBreaker {
+        enum State { CLOSED, OPEN, HALF_OPEN }
+
+        /** Permission for one call; record or cancel it exactly once. */
+        static final class Pass {
+            final long epoch;
+            final boolean trial;
+            long started;
+
+            Pass(long epoch, boolean trial) {
+                this.epoch = epoch;
+                this.trial = trial;
+            }
+        }
+
+        private final boolean[] bad;
+        private final int minCalls;
+        private final double threshold;
+        private final long slowCallNanos;
+        private final long openMillis;
+        private int size;
+        private int next;
+        private int badCount;
+        private State state = State.CLOSED;
+        private long openedAt;
+        private long epoch;
+        private boolean trialInFlight;
+
+        CircuitBreaker(int window, double threshold, long slowCallMs, long openMillis) {
+            this.bad = new boolean[window];
+            this.minCalls = Math.max(1, window / 2);
+            this.threshold = threshold;
+            this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMs);
+            this.openMillis = openMillis;
+        }
+
+        synchronized State state() {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) state = State.HALF_OPEN;
+            return state;
+        }
+
+        /** Closed: always. Half-open: one trial call at a time. Open: never (null). */
+        synchronized Pass tryPass() {
+            switch (state()) {
+                case CLOSED:
+                    return new Pass(epoch, false);
+                case HALF_OPEN:
+                    if (trialInFlight) return null;
+                    trialInFlight = true;
+                    return new Pass(epoch, true);
+                default:
+                    return null;
+            }
+        }
+
+        /** The passed call never reached the provider, or was abandoned by the caller: it says nothing. */
+        synchronized void cancelPass(Pass pass) {
+            if (pass.trial) trialInFlight = false;
+        }
+
+        synchronized void record(Pass pass, boolean success, long nanos) {
+            boolean failed = !success || nanos > slowCallNanos;
+            if (pass.trial) {
+                trialInFlight = false;
+                if (failed) {
+                    open();
+                } else {
+                    state = State.CLOSED;
+                    size = next = badCount = 0;
+                }
+                return;
+            }
+            // Started before the breaker last opened, or finishing while it is open / half-open: stale
+            if (pass.epoch != epoch || state != State.CLOSED) return;
+            if (size == bad.length) {
+                if (bad[next]) badCount--;
+            } else {
+                size++;
+            }
+            bad[next] = failed;
+            if (failed) badCount++;
+            next = (next + 1) % bad.length;
+            // Judge only after minCalls, so two early failures don't trip it
+            if (size >= minCalls && badCount >= threshold * size) open();
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            epoch++;
+            size = next = badCount = 0;
+        }
+    }
+}
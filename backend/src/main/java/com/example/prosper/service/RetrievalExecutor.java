@@ -0,0 +1,82 @@
+package com.example.prosper.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Bounded pool for the AI retrieval stages (exact phrase, FTS, ILIKE, semantic).
+ * The queue has a fixed capacity and overflow is rejected instead of queued forever, so one burst of
+ * slow questions can't build an unbounded backlog in front of everybody else. Counters are exposed
+ * through {@link #stats()}; active and queued stages are also Micrometer gauges.
+ */
+@Component
+public class RetrievalExecutor {
+
+    private final ThreadPoolExecutor pool;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public RetrievalExecutor(@Value("${ai.retrieval.threads:8}") int threads,
+                             @Value("${ai.retrieval.queue-capacity:32}") int queueCapacity,
+                             MeterRegistry registry) {
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "ai-retrieval-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("ai.retrieval.active", pool, ThreadPoolExecutor::getActiveCount).register(registry);
+        Gauge.builder("ai.retrieval.queued", pool, p -> p.getQueue().size()).register(registry);
+    }
+
+    /** Submits a stage; throws RejectedExecutionException when the pool and its queue are full. */
+    public <T> Future<T> submit(Callable<T> stage) {
+        try {
+            return pool.submit(stage);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /** Called by the pipeline when it gives up on a stage and cancels it. */
+    public void recordTimeout() {
+        timedOut.incrementAndGet();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("threads", pool.getMaximumPoolSize());
+        m.put("active", pool.getActiveCount());
+        m.put("queued", pool.getQueue().size());
+        m.put("queueCapacity", pool.getQueue().size() + pool.getQueue().remainingCapacity());
+        m.put("completed", pool.getCompletedTaskCount());
+        m.put("rejected", rejected.get());
+        m.put("timedOut", timedOut.get());
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.prosper.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+
+import com.example.prosper.util.KeywordAutomaton;
+import com.example.prosper.util.RussianText;
+
+/**
+ * Cuts keyword-centered windows out of long chapter text for the AI context.
+ *
+ * One automaton pass collects offsets of all keywords (anchors) and context words together.
+ * If some anchor has a context word nearby, the window is built around the closest such anchor;
+ * otherwise there is a window around every anchor, overlapping ones merged. Only the windows are allocated.
+ */
+@Component
+public class SnippetExtractor {
+
+    /** Words that mark recipe/composition passages — the most common kind of "what is X made of" question. */
+    public static final List<String> RECIPE_CONTEXT = List.of(
+            "ингредиент", "состав", "рецепт", "последовательност", "капл", " мл", "унц");
+
+    private static final int CONTEXT_RADIUS = 5000;
+    private static final int ANCHORED_BEFORE = 1000;
+    private static final int ANCHORED_AFTER = 2000;
+    private static final int SNIPPET_BEFORE = 300;
+    private static final int SNIPPET_AFTER = 700;
+    private static final int MAX_MERGED = 3000;
+
+    public static final class Snippet {
+        private final String text;
+        private final int start;
+        private final int end;
+        private final int anchors;
+        private final boolean contextAnchored;
+
+        Snippet(String text, int start, int end, int anchors, boolean contextAnchored) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.anchors = anchors;
+            this.contextAnchored = contextAnchored;
+        }
+
+        public String getText() { return text; }
+        /** Offset of the first snippet char in the source text. */
+        public int getStart() { return start; }
+        /** Offset just past the last snippet char in the source text. */
+        public int getEnd() { return end; }
+        public int getAnchors() { return anchors; }
+        /** True when the window was placed next to a context word rather than merged from anchors. */
+        public boolean isContextAnchored() { return contextAnchored; }
+    }
+
+    /**
+     * The windows of {@code content} around {@code keywords}, each a contiguous range of the text; empty if no
+     * keyword occurs. Keywords are matched by their stem, so "Зелья" also finds "зелье" and "зельем".
+     */
+    public List<Snippet> windows(String content, Collection<String> keywords, Collection<String> contextWords) {
+        if (content == null || content.isEmpty() || keywords.isEmpty()) return List.of();
+
+        List<String> patterns = new ArrayList<>(keywords.size() + contextWords.size());
+        for (String k : keywords) patterns.add(RussianText.stem(RussianText.fold(k)));
+        patterns.addAll(contextWords);
+        int keywordCount = keywords.size();
+
+        OffsetList anchors = new OffsetList();
+        OffsetList context = new OffsetList();
+        new KeywordAutomaton(patterns).scan(content, (pattern, start, end) -> {
+            if (pattern < keywordCount) anchors.add(start);
+            else context.add(start);
+        });
+        if (anchors.size == 0) return List.of();
+
+        // Offsets arrive in end order; patterns of different length can interleave starts
+        anchors.sort();
+        context.sort();
+
+        int best = nearestToContext(anchors.data, anchors.size, context.data, context.size);
+        if (best >= 0) {
+            int[] r = anchoredRange(best, content.length());
+            return List.of(new Snippet(content.substring(r[0], r[1]), r[0], r[1], anchors.size, true));
+        }
+        return aroundAnchors(content, anchors);
+    }
+
+    /**
+     * The same selection on offsets alone, for callers that know match positions without the text
+     * (ChapterSearchIndex): one window next to the anchor closest to a context word, if any is near enough,
+     * otherwise {@link #anchorRanges}. Both offset arrays must be sorted.
+     */
+    public static List<int[]> ranges(int[] anchors, int count, int[] context, int contextCount, int length) {
+        int best = nearestToContext(anchors, count, context, contextCount);
+        return best >= 0 ? List.of(anchoredRange(best, length)) : anchorRanges(anchors, count, length);
+    }
+
+    private static int[] anchoredRange(int anchor, int length) {
+        return new int[]{Math.max(0, anchor - ANCHORED_BEFORE), Math.min(length, anchor + ANCHORED_AFTER)};
+    }
+
+    /**
+     * Two-pointer sweep over both sorted offset lists: for every anchor the nearest context word
+     * is either the last one before it or the first one after it.
+     */
+    private static int nearestToContext(int[] anchors, int count, int[] context, int contextCount) {
+        if (contextCount == 0) return -1;
+        int bestPos = -1;
+        int bestDist = Integer.MAX_VALUE;
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            int a = anchors[i];
+            while (j < contextCount && context[j] < a) j++;
+            int dist = Integer.MAX_VALUE;
+            if (j < contextCount) dist = context[j] - a;
+            if (j > 0) dist = Math.min(dist, a - context[j - 1]);
+            if (dist <= CONTEXT_RADIUS && dist < bestDist) {
+                bestDist = dist;
+                bestPos = a;
+            }
+        }
+        return bestPos;
+    }
+
+    private static List<Snippet> aroundAnchors(String content, OffsetList anchors) {
+        List<Snippet> windows = new ArrayList<>();
+        for (int[] r : anchorRanges(anchors.data, anchors.size, content.length())) {
+            windows.add(new Snippet(content.substring(r[0], r[1]), r[0], r[1], anchors.size, false));
+        }
+        return windows;
+    }
+
+    /**
+     * [start, end) ranges around every anchor (sorted offsets), overlapping ones merged, MAX_MERGED chars
+     * in total. Works on offsets alone, so callers that know match positions (ChapterSearchIndex) can have
+     * the windows cut out on the database side without loading the text.
+     */
+    public static List<int[]> anchorRanges(int[] anchors, int count, int length) {
+        List<int[]> ranges = new ArrayList<>();
+        int runStart = -1;
+        int runEnd = -1;
+        int total = 0;
+        for (int i = 0; i < count && total < MAX_MERGED; i++) {
+            int p = anchors[i];
+            int start = Math.max(0, p - SNIPPET_BEFORE);
+            int end = Math.min(length, p + SNIPPET_AFTER);
+            if (runStart >= 0 && start <= runEnd) {
+                runEnd = Math.max(runEnd, Math.min(end, runStart + MAX_MERGED - total));
+                continue;
+            }
+            if (runStart >= 0) {
+                ranges.add(new int[]{runStart, runEnd});
+                total += runEnd - runStart;
+                if (total >= MAX_MERGED) break;
+            }
+            runStart = start;
+            runEnd = Math.min(end, start + MAX_MERGED - total);
+        }
+        if (runStart >= 0 && total < MAX_MERGED && runEnd > runStart) ranges.add(new int[]{runStart, runEnd});
+        return ranges;
+    }
+
+    private static final class OffsetList {
+        int[] data = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = value;
+        }
+
+        void sort() {
+            Arrays.sort(data, 0, size);
+        }
+    }
+}
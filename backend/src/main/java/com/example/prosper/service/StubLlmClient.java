@@ -0,0 +1,72 @@
+package com.example.prosper.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Offline LLM for local runs and endpoint checks without Gemini access.
+ * Answers with the tail of the prompt (the question) and streams it word by word
+ * with a fixed delay, so SSE clients see real incremental delivery.
+ * failure-rate and latency-ms make it misbehave on purpose, to watch ResilientLlmClient trip and recover.
+ */
+@Component
+@ConditionalOnProperty(name = "ai.llm.provider", havingValue = "stub")
+public class StubLlmClient implements LlmClient {
+
+    @Value("${ai.llm.stub.chunk-delay-ms:30}")
+    private long chunkDelayMs;
+
+    @Value("${ai.llm.stub.failure-rate:0}")
+    private double failureRate;
+
+    @Value("${ai.llm.stub.latency-ms:0}")
+    private long latencyMs;
+
+    @Override
+    public boolean isConfigured() {
+        return true;
+    }
+
+    @Override
+    public String generate(String prompt) {
+        misbehave();
+        return answerFor(prompt);
+    }
+
+    @Override
+    public void stream(String prompt, Consumer<String> onChunk) {
+        misbehave();
+        for (String word : answerFor(prompt).split("(?<= )")) {
+            onChunk.accept(word);
+            try {
+                Thread.sleep(chunkDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void misbehave() {
+        if (latencyMs > 0) {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+            throw new RuntimeException("Stub LLM failure");
+        }
+    }
+
+    private static String answerFor(String prompt) {
+        int idx = prompt.lastIndexOf("Вопрос:");
+        String question = idx >= 0 ? prompt.substring(idx + "Вопрос:".length()).trim() : "";
+        return "[stub] Ответ на вопрос \"" + question + "\" по " + prompt.length() + " символам контекста.";
+    }
+}
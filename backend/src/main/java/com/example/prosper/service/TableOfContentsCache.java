@@ -0,0 +1,114 @@
+package com.example.prosper.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.prosper.dto.ChapterDTO;
+import com.example.prosper.repository.ChapterRepository;
+
+/**
+ * Tables of contents (id, order, title of every chapter) of recently read books, keyed on a per-book
+ * chapter-list version. AdminController bumps the version on every chapter write; the version doubles as
+ * the ETag of the TOC endpoints, so an unchanged list is a 304 and a changed one is one projection query.
+ */
+@Component
+public class TableOfContentsCache {
+
+    /** One version of a book's TOC, sorted by chapter order. */
+    public static final class Toc {
+        private final long version;
+        private final List<ChapterDTO> chapters;
+        private final int[] orders;
+
+        private Toc(long version, List<ChapterDTO> chapters) {
+            this.version = version;
+            this.chapters = List.copyOf(chapters);
+            this.orders = chapters.stream().mapToInt(ChapterDTO::getChapterOrder).toArray();
+        }
+
+        public long getVersion() { return version; }
+        public List<ChapterDTO> getChapters() { return chapters; }
+
+        /** Index of the first chapter with order >= {@code order}; size() if there is none. */
+        public int indexOfOrder(int order) {
+            int lo = 0;
+            int hi = orders.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (orders[mid] < order) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    @Autowired
+    private ChapterRepository chapterRepository;
+
+    private final int maxBooks;
+    // Distinguishes ETags of different runs, so a restart never re-issues an old version
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong versionClock = new AtomicLong();
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+    // Access-ordered LRU guarded by "this"
+    private final LinkedHashMap<Long, Toc> tocs;
+
+    public TableOfContentsCache(@Value("${catalog.toc.max-books:500}") int maxBooks) {
+        this.maxBooks = maxBooks;
+        this.tocs = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Toc> eldest) {
+                return size() > TableOfContentsCache.this.maxBooks;
+            }
+        };
+    }
+
+    public Toc get(Long bookId) {
+        long version = versions.getOrDefault(bookId, 0L);
+        synchronized (this) {
+            Toc toc = tocs.get(bookId);
+            if (toc != null && toc.version == version) return toc;
+        }
+        Toc loaded = new Toc(version, chapterRepository.findTocByBookId(bookId));
+        synchronized (this) {
+            // A chapter write that landed during the query has bumped the version: don't keep the stale list
+            if (versions.getOrDefault(bookId, 0L) == version) tocs.put(bookId, loaded);
+        }
+        return loaded;
+    }
+
+    /** Quoted strong ETag of the given TOC version. */
+    public String etag(Long bookId, Toc toc) {
+        return "\"toc-" + epoch + "-" + bookId + "-" + toc.version + "\"";
+    }
+
+    /** The chapter list of the book changed; takes effect once the current transaction (if any) commits. */
+    public void invalidate(Long bookId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bump(bookId);
+                }
+            });
+        } else {
+            bump(bookId);
+        }
+    }
+
+    private void bump(Long bookId) {
+        versions.put(bookId, versionClock.incrementAndGet());
+        synchronized (this) {
+            tocs.remove(bookId);
+        }
+    }
+}
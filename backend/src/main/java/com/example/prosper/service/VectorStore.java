@@ -0,0 +1,330 @@
+package com.example.prosper.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Passage embeddings held in process, so a semantic question costs one ml_service call (embedding the
+ * question) instead of a ranking round-trip per book.
+ *
+ * One row per passage — the ~500-word chunks ml_service embeds anyway — with its chapter id and character
+ * range, so a match points at the part of the chapter that matched rather than at a whole-chapter average.
+ * Vectors are L2-normalized on insert and kept row-major in one direct (off-heap) float buffer; each
+ * book's passages occupy a contiguous block of rows, so a query scans only the blocks of its candidate
+ * books with a plain dot-product loop. Books are loaded on first use and evicted oldest-first once
+ * ai.vectors.max-rows is reached. A chapter write drops the book after commit and bumps its generation, so a
+ * load that fetched the old vectors meanwhile is discarded and the next one asks ml_service to recompute.
+ */
+@Component
+public class VectorStore {
+
+    /** One embedded passage: [start, start + length) of the chapter text; length 0 when the range is unknown. */
+    public static final class Passage {
+        private final long chapterId;
+        private final int start;
+        private final int length;
+        private final float[] vector;
+
+        public Passage(long chapterId, int start, int length, float[] vector) {
+            this.chapterId = chapterId;
+            this.start = start;
+            this.length = length;
+            this.vector = vector;
+        }
+
+        public long getChapterId() { return chapterId; }
+        public int getStart() { return start; }
+        public int getLength() { return length; }
+        public float[] getVector() { return vector; }
+    }
+
+    public static final class Match {
+        private final long chapterId;
+        private final long bookId;
+        private final int start;
+        private final int length;
+        private final float score;
+
+        Match(long chapterId, long bookId, int start, int length, float score) {
+            this.chapterId = chapterId;
+            this.bookId = bookId;
+            this.start = start;
+            this.length = length;
+            this.score = score;
+        }
+
+        public long getChapterId() { return chapterId; }
+        public long getBookId() { return bookId; }
+        public int getStart() { return start; }
+        public int getLength() { return length; }
+        public float getScore() { return score; }
+    }
+
+    private final int maxRows;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock. Book blocks are in load order: {first row, row count}
+    private FloatBuffer matrix = FloatBuffer.allocate(0);
+    private long[] chapterIds = new long[0];
+    private int[] starts = new int[0];
+    private int[] lengths = new int[0];
+    private final LinkedHashMap<Long, int[]> blocks = new LinkedHashMap<>();
+    // Bumped on every invalidation; guarded by the write lock
+    private final Map<Long, Integer> generations = new HashMap<>();
+    // Books whose cached embeddings on the ml_service side predate a chapter write
+    private final Set<Long> stale = ConcurrentHashMap.newKeySet();
+    private int dim = -1;
+    private int rows;
+
+    public VectorStore(@Value("${ai.vectors.max-rows:200000}") int maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    public boolean hasBook(Long bookId) {
+        lock.readLock().lock();
+        try {
+            return blocks.containsKey(bookId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Taken before fetching a book's vectors and handed back to {@link #putBook}. */
+    public int generation(Long bookId) {
+        lock.readLock().lock();
+        try {
+            return generations.getOrDefault(bookId, 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the book's passages. An empty list marks the book as having none. Ignored (false) when the
+     * book was invalidated since {@code generation} was taken — the vectors may describe the old text.
+     */
+    public boolean putBook(Long bookId, int generation, List<Passage> passages) {
+        lock.writeLock().lock();
+        try {
+            if (generations.getOrDefault(bookId, 0) != generation) return false;
+            removeBlock(bookId);
+            if (passages.isEmpty()) {
+                blocks.put(bookId, new int[]{rows, 0});
+                return true;
+            }
+            int vectorDim = passages.get(0).vector.length;
+            if (vectorDim != dim) {
+                // First book, or the embedding model changed — nothing loaded before is comparable
+                clear();
+                dim = vectorDim;
+            }
+            int count = passages.size();
+            if (count > maxRows) return false;
+            while (rows + count > maxRows && !blocks.isEmpty()) removeBlock(blocks.keySet().iterator().next());
+            ensureCapacity(rows + count);
+
+            int first = rows;
+            for (Passage p : passages) {
+                float[] v = p.vector;
+                if (v.length != dim) throw new IllegalArgumentException("Embedding of chapter " + p.chapterId
+                        + " has " + v.length + " dimensions, expected " + dim);
+                float norm = (float) Math.sqrt(dot(v, v));
+                float scale = norm > 0 ? 1 / norm : 0;
+                int base = rows * dim;
+                for (int i = 0; i < dim; i++) matrix.put(base + i, v[i] * scale);
+                chapterIds[rows] = p.chapterId;
+                starts[rows] = p.start;
+                lengths[rows] = p.length;
+                rows++;
+            }
+            blocks.put(bookId, new int[]{first, count});
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeBook(Long bookId) {
+        lock.writeLock().lock();
+        try {
+            removeBlock(bookId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A chapter of the book was written: after commit (immediately outside a transaction) its passages are
+     * dropped and the next load asks ml_service to recompute them.
+     */
+    public void invalidateBook(Long bookId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(bookId);
+                }
+            });
+        } else {
+            invalidate(bookId);
+        }
+    }
+
+    private void invalidate(Long bookId) {
+        lock.writeLock().lock();
+        try {
+            generations.merge(bookId, 1, Integer::sum);
+            stale.add(bookId);
+            removeBlock(bookId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** True once per invalidation: the caller must ask ml_service to recompute, or {@link #markStale} on failure. */
+    public boolean takeStale(Long bookId) {
+        return stale.remove(bookId);
+    }
+
+    public void markStale(Long bookId) {
+        stale.add(bookId);
+    }
+
+    /**
+     * Top {@code perBook} passages by cosine similarity within each of the given books (all loaded books
+     * when null), best first per book; books are in the order given.
+     */
+    public List<Match> search(float[] query, Collection<Long> bookIds, int perBook) {
+        if (perBook <= 0) return Collections.emptyList();
+        lock.readLock().lock();
+        try {
+            if (dim < 0 || query.length != dim) return Collections.emptyList();
+            float norm = (float) Math.sqrt(dot(query, query));
+            if (norm == 0) return Collections.emptyList();
+            float[] q = new float[dim];
+            for (int i = 0; i < dim; i++) q[i] = query[i] / norm;
+
+            List<Match> out = new ArrayList<>();
+            Iterable<Long> books = bookIds != null ? bookIds : new ArrayList<>(blocks.keySet());
+            for (Long bookId : books) {
+                int[] block = blocks.get(bookId);
+                if (block == null || block[1] == 0) continue;
+                PriorityQueue<Match> top = new PriorityQueue<>(perBook + 1, (a, b) -> Float.compare(a.score, b.score));
+                for (int row = block[0], end = block[0] + block[1]; row < end; row++) {
+                    float score = dotRow(row, q);
+                    if (top.size() < perBook) {
+                        top.add(match(row, bookId, score));
+                    } else if (score > top.peek().score) {
+                        top.poll();
+                        top.add(match(row, bookId, score));
+                    }
+                }
+                List<Match> best = new ArrayList<>(top);
+                best.sort((a, b) -> Float.compare(b.score, a.score));
+                out.addAll(best);
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Match match(int row, long bookId, float score) {
+        return new Match(chapterIds[row], bookId, starts[row], lengths[row], score);
+    }
+
+    /** For the admin stats endpoint. */
+    public Map<String, Object> stats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("books", blocks.size());
+            m.put("rows", rows);
+            m.put("maxRows", maxRows);
+            m.put("dimensions", Math.max(dim, 0));
+            m.put("offHeapBytes", (long) matrix.capacity() * Float.BYTES);
+            return Collections.unmodifiableMap(m);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Four independent accumulators: no loop-carried dependency on a single sum, which lets the JIT
+    // unroll and vectorize
+    private float dotRow(int row, float[] q) {
+        FloatBuffer m = matrix;
+        int base = row * dim;
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < dim; i += 4) {
+            s0 += m.get(base + i) * q[i];
+            s1 += m.get(base + i + 1) * q[i + 1];
+            s2 += m.get(base + i + 2) * q[i + 2];
+            s3 += m.get(base + i + 3) * q[i + 3];
+        }
+        for (; i < dim; i++) s0 += m.get(base + i) * q[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float s = 0;
+        for (int i = 0; i < a.length; i++) s += a[i] * b[i];
+        return s;
+    }
+
+    private void ensureCapacity(int neededRows) {
+        if (chapterIds.length >= neededRows) return;
+        int capacity = Math.min(maxRows, Math.max(neededRows, chapterIds.length * 2));
+        FloatBuffer grown = ByteBuffer.allocateDirect(capacity * dim * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        grown.put(0, matrix, 0, rows * dim);
+        matrix = grown;
+        chapterIds = Arrays.copyOf(chapterIds, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+    }
+
+    /** Drops the book's rows and shifts the rows after them down, keeping the blocks contiguous. */
+    private void removeBlock(Long bookId) {
+        int[] block = blocks.remove(bookId);
+        if (block == null || block[1] == 0) return;
+        int from = block[0] + block[1];
+        int tail = rows - from;
+        matrix.put(block[0] * dim, matrix, from * dim, tail * dim);
+        System.arraycopy(chapterIds, from, chapterIds, block[0], tail);
+        System.arraycopy(starts, from, starts, block[0], tail);
+        System.arraycopy(lengths, from, lengths, block[0], tail);
+        rows -= block[1];
+        for (int[] b : blocks.values()) {
+            if (b[0] >= from) b[0] -= block[1];
+        }
+    }
+
+    private void clear() {
+        blocks.clear();
+        rows = 0;
+        matrix = FloatBuffer.allocate(0);
+        chapterIds = new long[0];
+        starts = new int[0];
+        lengths = new int[0];
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.prosper.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over case-folded patterns (see {@link RussianText#fold(char)}).
+ * Finds every occurrence of every pattern in one left-to-right pass; text is folded char by char,
+ * so no lowercased copy of the input is ever allocated.
+ *
+ * Small automata (a few keywords, as in SnippetExtractor) are compiled into a DFA over the patterns' own
+ * alphabet: one table load per text char, no failure-link walks. Large ones (the title dictionary of
+ * QuestionParser) keep sparse transitions plus failure links, which need far less memory.
+ */
+public final class KeywordAutomaton {
+
+    /** Receives pattern index (order of the constructor list) and match start/end offsets in the text. */
+    @FunctionalInterface
+    public interface MatchConsumer {
+        void accept(int pattern, int start, int end);
+    }
+
+    // DFA table size limit (states x alphabet) before falling back to sparse transitions
+    private static final int MAX_DFA_CELLS = 1 << 16;
+    // Chars below this are classified through a direct table, the rest by binary search
+    private static final int CLASS_TABLE = 0x500;
+
+    // Per-node sparse transitions, kept sorted by char for binary search
+    private final char[][] keys;
+    private final int[][] targets;
+    private final int[] sizes;
+    private final int[] fail;
+    private final int[][] outputs;
+    private int nodeCount;
+    private final int[] patternLengths;
+
+    // DFA form, null for large automata: delta[state * alphabet + charClass]; class 0 is "not in any pattern"
+    private final int[] delta;
+    private final int alphabet;
+    private final short[] lowClasses;
+    private final char[] highChars;
+    private final int[] highClasses;
+
+    public KeywordAutomaton(List<String> patterns) {
+        int capacity = 1;
+        for (String p : patterns) capacity += p.length();
+        keys = new char[capacity][];
+        targets = new int[capacity][];
+        sizes = new int[capacity];
+        fail = new int[capacity];
+        outputs = new int[capacity][];
+        nodeCount = 1;
+        patternLengths = new int[patterns.size()];
+
+        List<List<Integer>> out = new ArrayList<>(capacity);
+        for (int i = 0; i < capacity; i++) out.add(null);
+
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = RussianText.fold(patterns.get(p));
+            patternLengths[p] = pattern.length();
+            if (pattern.isEmpty()) continue;
+            int node = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char ch = pattern.charAt(i);
+                int next = child(node, ch);
+                if (next < 0) {
+                    next = nodeCount++;
+                    addChild(node, ch, next);
+                }
+                node = next;
+            }
+            if (out.get(node) == null) out.set(node, new ArrayList<>(1));
+            out.get(node).add(p);
+        }
+
+        // BFS: failure links, and merge outputs along them so scan never walks dictionary links
+        int[] order = new int[nodeCount];
+        int ordered = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int i = 0; i < sizes[0]; i++) {
+            fail[targets[0][i]] = 0;
+            queue.add(targets[0][i]);
+        }
+        outputs[0] = new int[0];
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            order[ordered++] = node;
+            List<Integer> own = out.get(node);
+            int[] inherited = outputs[fail[node]];
+            int ownSize = own != null ? own.size() : 0;
+            int[] merged = Arrays.copyOf(inherited, inherited.length + ownSize);
+            for (int i = 0; i < ownSize; i++) merged[inherited.length + i] = own.get(i);
+            outputs[node] = merged;
+
+            for (int i = 0; i < sizes[node]; i++) {
+                char ch = keys[node][i];
+                int next = targets[node][i];
+                int f = fail[node];
+                while (f > 0 && child(f, ch) < 0) f = fail[f];
+                int candidate = child(f, ch);
+                fail[next] = candidate >= 0 && candidate != next ? candidate : 0;
+                queue.add(next);
+            }
+        }
+
+        // Alphabet: the distinct chars of all patterns, in order, numbered from 1
+        StringBuilder chars = new StringBuilder();
+        for (int node = 0; node < nodeCount; node++) {
+            for (int i = 0; i < sizes[node]; i++) chars.append(keys[node][i]);
+        }
+        char[] distinct = chars.chars().distinct().sorted().collect(StringBuilder::new,
+                StringBuilder::appendCodePoint, StringBuilder::append).toString().toCharArray();
+        int size = distinct.length + 1;
+        if ((long) nodeCount * size > MAX_DFA_CELLS) {
+            delta = null;
+            alphabet = 0;
+            lowClasses = null;
+            highChars = null;
+            highClasses = null;
+            return;
+        }
+
+        alphabet = size;
+        lowClasses = new short[CLASS_TABLE];
+        List<Integer> high = new ArrayList<>();
+        for (int c = 0; c < distinct.length; c++) {
+            if (distinct[c] < CLASS_TABLE) lowClasses[distinct[c]] = (short) (c + 1);
+            else high.add(c);
+        }
+        highChars = new char[high.size()];
+        highClasses = new int[high.size()];
+        for (int i = 0; i < high.size(); i++) {
+            highChars[i] = distinct[high.get(i)];
+            highClasses[i] = high.get(i) + 1;
+        }
+
+        // delta(node, c) = child if there is one, else delta(fail(node), c); BFS order has fail(node) done first
+        delta = new int[nodeCount * alphabet];
+        for (int c = 1; c < alphabet; c++) delta[c] = Math.max(0, child(0, distinct[c - 1]));
+        for (int k = 0; k < ordered; k++) {
+            int node = order[k];
+            int base = node * alphabet;
+            int fallback = fail[node] * alphabet;
+            for (int c = 1; c < alphabet; c++) {
+                int next = child(node, distinct[c - 1]);
+                delta[base + c] = next >= 0 ? next : delta[fallback + c];
+            }
+        }
+    }
+
+    public void scan(CharSequence text, MatchConsumer consumer) {
+        if (delta != null) {
+            scanDfa(text, consumer);
+            return;
+        }
+        int node = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char ch = RussianText.fold(text.charAt(i));
+            int next = child(node, ch);
+            while (next < 0 && node > 0) {
+                node = fail[node];
+                next = child(node, ch);
+            }
+            node = next < 0 ? 0 : next;
+            int[] matched = outputs[node];
+            for (int p : matched) {
+                consumer.accept(p, i + 1 - patternLengths[p], i + 1);
+            }
+        }
+    }
+
+    private void scanDfa(CharSequence text, MatchConsumer consumer) {
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char ch = RussianText.fold(text.charAt(i));
+            int cls = ch < CLASS_TABLE ? lowClasses[ch] : highClass(ch);
+            // Class 0 can't continue any pattern: every state goes back to the root
+            if (cls == 0) {
+                state = 0;
+                continue;
+            }
+            state = delta[state * alphabet + cls];
+            int[] matched = outputs[state];
+            for (int p : matched) {
+                consumer.accept(p, i + 1 - patternLengths[p], i + 1);
+            }
+        }
+    }
+
+    private int highClass(char ch) {
+        int i = Arrays.binarySearch(highChars, ch);
+        return i >= 0 ? highClasses[i] : 0;
+    }
+
+    private int child(int node, char ch) {
+        char[] k = keys[node];
+        if (k == null) return -1;
+        int lo = 0;
+        int hi = sizes[node] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (k[mid] < ch) lo = mid + 1;
+            else if (k[mid] > ch) hi = mid - 1;
+            else return targets[node][mid];
+        }
+        return -1;
+    }
+
+    private void addChild(int node, char ch, int next) {
+        if (keys[node] == null) {
+            keys[node] = new char[2];
+            targets[node] = new int[2];
+        } else if (sizes[node] == keys[node].length) {
+            keys[node] = Arrays.copyOf(keys[node], sizes[node] * 2);
+            targets[node] = Arrays.copyOf(targets[node], sizes[node] * 2);
+        }
+        int pos = sizes[node];
+        while (pos > 0 && keys[node][pos - 1] > ch) {
+            keys[node][pos] = keys[node][pos - 1];
+            targets[node][pos] = targets[node][pos - 1];
+            pos--;
+        }
+        keys[node][pos] = ch;
+        targets[node][pos] = next;
+        sizes[node]++;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.prosper.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Нормализация русского текста для поисковых индексов:
+ * нижний регистр, ё → е и лёгкий стемминг (отрезаем окончания),
+ * чтобы "Зелья", "зелье" и "зельем" давали один и тот же терм.
+ */
+public final class RussianText {
+
+    // Longest endings first so that "ями" wins over "я". Noun endings that begin with the soft sign or
+    // with "и" before a vowel (ья, ье, ьем, ия, ией, ию) are left out on purpose: only the last vowel is cut,
+    // so "зелья"/"зелье"/"зельем" and "история"/"историей"/"истории" keep the same stem. The adjective
+    // endings ими/ий/их and the single letters "и"/"ь" do stay in the list.
+    private static final String[] ENDINGS = {
+            "ями", "ами", "ого", "его", "ому", "ему", "ыми", "ими",
+            "ая", "яя", "ое", "ее", "ой", "ей", "ий", "ый", "ых", "их", "ую", "юю",
+            "ом", "ем", "ам", "ям", "ах", "ях", "ов", "ев",
+            "а", "я", "о", "е", "ы", "и", "у", "ю", "ь", "й"
+    };
+
+    private static final int MIN_STEM = 3;
+
+    // Same keys on the QWERTY and ЙЦУКЕН layouts, lowercase
+    private static final String LATIN_KEYS    = "`qwertyuiop[]asdfghjkl;'zxcvbnm,.";
+    private static final String CYRILLIC_KEYS = "ёйцукенгшщзхъфывапролджэячсмитьбю";
+
+    private RussianText() {}
+
+    /** Callback for {@link #tokenize}: normalized term, token position and char offset in the source. */
+    @FunctionalInterface
+    public interface TokenConsumer {
+        void accept(String term, int position, int offset);
+    }
+
+    public static char fold(char ch) {
+        // ASCII and the basic Cyrillic block without the Unicode tables: nearly every char of a chapter
+        if (ch < 0x80) return ch >= 'A' && ch <= 'Z' ? (char) (ch + 32) : ch;
+        if (ch >= 'а' && ch <= 'я') return ch;
+        char lower;
+        if (ch >= 'А' && ch <= 'Я') lower = (char) (ch + 0x20);
+        else if (ch >= 0x400 && ch <= 0x40F) lower = (char) (ch + 0x50);
+        else lower = Character.toLowerCase(ch);
+        return lower == 'ё' ? 'е' : lower;
+    }
+
+    public static String fold(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) sb.append(fold(text.charAt(i)));
+        return sb.toString();
+    }
+
+    public static String stem(String folded) {
+        for (String ending : ENDINGS) {
+            if (folded.length() - ending.length() >= MIN_STEM && folded.endsWith(ending)) {
+                return folded.substring(0, folded.length() - ending.length());
+            }
+        }
+        return folded;
+    }
+
+    /** Splits text into letter/digit runs and emits each one as a folded, stemmed term. */
+    public static void tokenize(String text, TokenConsumer consumer) {
+        if (text == null) return;
+        int position = 0;
+        int i = 0;
+        int n = text.length();
+        StringBuilder sb = new StringBuilder(32);
+        while (i < n) {
+            while (i < n && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            if (i >= n) break;
+            int start = i;
+            sb.setLength(0);
+            while (i < n && Character.isLetterOrDigit(text.charAt(i))) {
+                sb.append(fold(text.charAt(i)));
+                i++;
+            }
+            consumer.accept(stem(sb.toString()), position++, start);
+        }
+    }
+
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        tokenize(text, (term, position, offset) -> terms.add(term));
+        return terms;
+    }
+
+    /**
+     * Text as it would have come out on the other keyboard layout: "ghbdtn" → "привет", "руддщ" → "hello".
+     * Expects folded (lowercase) text; characters that aren't on either layout are kept.
+     */
+    public static String switchLayout(String folded) {
+        StringBuilder sb = new StringBuilder(folded.length());
+        for (int i = 0; i < folded.length(); i++) {
+            char ch = folded.charAt(i);
+            int latin = LATIN_KEYS.indexOf(ch);
+            int cyrillic = latin < 0 ? CYRILLIC_KEYS.indexOf(ch) : -1;
+            if (latin >= 0) sb.append(fold(CYRILLIC_KEYS.charAt(latin)));
+            else if (cyrillic >= 0) sb.append(LATIN_KEYS.charAt(cyrillic));
+            else sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    /** pg_trgm-style trigrams of already folded text: every word padded with two spaces in front, one behind. */
+    public static Set<String> trigrams(String folded) {
+        Set<String> result = new HashSet<>();
+        for (String word : folded.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) continue;
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) result.add(padded.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    /** Same measure as pg_trgm similarity(): shared trigrams / all distinct trigrams. */
+    public static double similarity(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) return 0.0;
+        int shared = 0;
+        for (String t : a) if (b.contains(t)) shared++;
+        return (double) shared / (a.size() + b.size() - shared);
+    }
+}
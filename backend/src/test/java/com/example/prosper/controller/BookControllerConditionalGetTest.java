@@ -0,0 +1,104 @@
+package com.example.prosper.controller;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.example.prosper.model.Book;
+import com.example.prosper.model.BookStats;
+import com.example.prosper.repository.BookRepository;
+import com.example.prosper.repository.BookStatsRepository;
+import com.example.prosper.service.CatalogFacetIndex;
+import com.example.prosper.service.CatalogSnapshotService;
+
+/** If-None-Match handling of the snapshot-backed catalog endpoints. */
+class BookControllerConditionalGetTest {
+
+    private MockMvc mvc;
+    private String etag;
+
+    @BeforeEach
+    void setUp() {
+        Book book = new Book();
+        book.setId(1L);
+        book.setTitle("Дюна");
+        book.setAuthor("Герберт");
+        book.setGenres(new HashSet<>());
+        BookStats stats = new BookStats();
+        stats.setBookId(1L);
+        stats.setRatingCount(2);
+        stats.setAvgRating(8.5);
+
+        BookRepository bookRepository = mock(BookRepository.class);
+        BookStatsRepository bookStatsRepository = mock(BookStatsRepository.class);
+        when(bookRepository.findAllWithGenres()).thenReturn(List.of(book));
+        when(bookStatsRepository.findAll()).thenReturn(List.of(stats));
+
+        CatalogSnapshotService snapshots = new CatalogSnapshotService();
+        ReflectionTestUtils.setField(snapshots, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(snapshots, "bookStatsRepository", bookStatsRepository);
+        ReflectionTestUtils.setField(snapshots, "catalogFacetIndex", new CatalogFacetIndex());
+        etag = snapshots.current().getEtag();
+
+        BookController controller = new BookController();
+        ReflectionTestUtils.setField(controller, "catalogSnapshotService", snapshots);
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void firstRequestGetsBodyAndStrongEtag() throws Exception {
+        mvc.perform(get("/api/books"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[0].averageRating").value(8.5));
+    }
+
+    @Test
+    void matchingEtagGetsEmpty304() throws Exception {
+        mvc.perform(get("/api/books").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+        mvc.perform(get("/api/books/newest").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void etagListAndWildcardMatch() throws Exception {
+        mvc.perform(get("/api/books").header(HttpHeaders.IF_NONE_MATCH, "\"other\", " + etag))
+                .andExpect(status().isNotModified());
+        mvc.perform(get("/api/books").header(HttpHeaders.IF_NONE_MATCH, "*"))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void staleEtagGetsFullBody() throws Exception {
+        mvc.perform(get("/api/books").header(HttpHeaders.IF_NONE_MATCH, "\"catalog-old-1\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(jsonPath("$[0].id").value(1));
+    }
+
+    @Test
+    void weakFormOfTheEtagAlsoMatches() throws Exception {
+        // If-None-Match uses the weak comparison (RFC 9110 13.1.2), e.g. after a proxy re-compressed the body
+        mvc.perform(get("/api/books").header(HttpHeaders.IF_NONE_MATCH, "W/" + etag))
+                .andExpect(status().isNotModified());
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.prosper.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.example.prosper.model.Book;
+import com.example.prosper.repository.BookRepository;
+import com.example.prosper.service.BookDownloadService;
+
+/** Whole-book download: early 404/503 and the endpoint's own async timeout. */
+class BookControllerDownloadTest {
+
+    private MockMvc mvc;
+    private BookRepository bookRepository;
+    private BookDownloadService downloads;
+
+    @BeforeEach
+    void setUp() {
+        bookRepository = mock(BookRepository.class);
+        downloads = mock(BookDownloadService.class);
+        BookController controller = new BookController();
+        ReflectionTestUtils.setField(controller, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(controller, "bookDownloadService", downloads);
+        ReflectionTestUtils.setField(controller, "downloadTimeoutMs", 1234L);
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void unknownBookIs404() throws Exception {
+        when(bookRepository.findById(7L)).thenReturn(Optional.empty());
+        mvc.perform(get("/api/books/7/download"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void noFreeSlotIs503() throws Exception {
+        when(bookRepository.findById(1L)).thenReturn(Optional.of(book()));
+        when(downloads.tryAcquire()).thenReturn(false);
+        mvc.perform(get("/api/books/1/download"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "10"));
+    }
+
+    @Test
+    void downloadRunsWithItsOwnTimeoutAndReleasesTheSlot() throws Exception {
+        Book book = book();
+        when(bookRepository.findById(1L)).thenReturn(Optional.of(book));
+        when(downloads.tryAcquire()).thenReturn(true);
+        doAnswer(inv -> {
+            OutputStream out = inv.getArgument(4);
+            out.write("{\"type\":\"end\"}\n".getBytes(StandardCharsets.UTF_8));
+            return 0;
+        }).when(downloads).write(eq(book), anyInt(), anyInt(), anyBoolean(), any(OutputStream.class));
+
+        MvcResult started = mvc.perform(get("/api/books/1/download?from=3"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals(1234L, started.getRequest().getAsyncContext().getTimeout());
+
+        mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/x-ndjson"))
+                .andExpect(content().string("{\"type\":\"end\"}\n"));
+        verify(downloads).write(eq(book), eq(3), eq(Integer.MAX_VALUE), eq(false), any(OutputStream.class));
+        verify(downloads).release();
+    }
+
+    private static Book book() {
+        Book book = new Book();
+        book.setId(1L);
+        book.setTitle("Дюна");
+        book.setAuthor("Герберт");
+        return book;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.prosper.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.prosper.model.Book;
+import com.example.prosper.model.BookRating;
+import com.example.prosper.repository.BookRatingRepository;
+import com.example.prosper.repository.BookRepository;
+import com.example.prosper.repository.UserRepository;
+import com.example.prosper.service.BookStatsService;
+
+/** The book_stats delta of a rating comes from the locked row, never from an unlocked earlier read. */
+class BookRatingControllerTest {
+
+    private final UserDetails principal = User.withUsername("reader").password("x").roles("USER").build();
+    private BookRatingRepository ratings;
+    private BookStatsService stats;
+    private BookRatingController controller;
+
+    @BeforeEach
+    void setUp() {
+        com.example.prosper.model.User user = new com.example.prosper.model.User();
+        user.setId(5L);
+        user.setNickname("reader");
+        Book book = new Book();
+        book.setId(1L);
+
+        UserRepository users = mock(UserRepository.class);
+        BookRepository books = mock(BookRepository.class);
+        ratings = mock(BookRatingRepository.class);
+        stats = mock(BookStatsService.class);
+        when(users.findByNickname("reader")).thenReturn(Optional.of(user));
+        when(books.findById(1L)).thenReturn(Optional.of(book));
+
+        controller = new BookRatingController();
+        ReflectionTestUtils.setField(controller, "userRepository", users);
+        ReflectionTestUtils.setField(controller, "bookRepository", books);
+        ReflectionTestUtils.setField(controller, "bookRatingRepository", ratings);
+        ReflectionTestUtils.setField(controller, "bookStatsService", stats);
+    }
+
+    @Test
+    void firstRatingIsInsertedAndCounted() {
+        when(ratings.insertIfAbsent(5L, 1L, 8)).thenReturn(1);
+
+        controller.rateBook(1L, Map.of("rating", 8), principal);
+
+        verify(stats).ratingChanged(1L, null, 8);
+        verify(ratings, never()).findForUpdate(5L, 1L);
+    }
+
+    @Test
+    void existingRatingIsChangedUnderLock() {
+        BookRating existing = new BookRating();
+        existing.setRating(3);
+        when(ratings.insertIfAbsent(5L, 1L, 8)).thenReturn(0);
+        when(ratings.findForUpdate(5L, 1L)).thenReturn(Optional.of(existing));
+
+        controller.rateBook(1L, Map.of("rating", 8), principal);
+
+        assertEquals(8, existing.getRating());
+        verify(ratings).save(existing);
+        verify(stats).ratingChanged(1L, 3, 8);
+        verify(stats, never()).ratingChanged(any(), isNull(), any(Integer.class));
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.prosper.dto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+class CatalogCursorTest {
+
+    @Test
+    void roundTripKeepsKeyAndId() {
+        String token = new CatalogCursor("rating", "гарри", "8.5", 42L).encode();
+
+        CatalogCursor cursor = CatalogCursor.decode(token, "rating", "гарри");
+
+        assertEquals(8.5, cursor.getDoubleKey());
+        assertEquals(42L, cursor.getId());
+    }
+
+    @Test
+    void titleKeyMayContainTheSeparator() {
+        String title = "Война | мир";
+        String token = new CatalogCursor("title_asc", "", title, 7L).encode();
+
+        assertEquals(title, CatalogCursor.decode(token, "title_asc", "").getKey());
+    }
+
+    @Test
+    void tokenIsUrlSafe() {
+        String token = new CatalogCursor("title_desc", "??", "ÿÿÿ>>>", Long.MAX_VALUE).encode();
+
+        assertEquals(token, token.replaceAll("[^A-Za-z0-9_-]", ""));
+    }
+
+    @Test
+    void rejectsCursorOfAnotherSort() {
+        String token = new CatalogCursor("rating", "", "9.0", 1L).encode();
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> CatalogCursor.decode(token, "chapters", ""));
+        assertEquals("Cursor belongs to another listing", e.getMessage());
+    }
+
+    @Test
+    void rejectsCursorOfAnotherQuery() {
+        String token = new CatalogCursor("rating", "гарри", "9.0", 1L).encode();
+
+        assertThrows(IllegalArgumentException.class, () -> CatalogCursor.decode(token, "rating", "поттер"));
+    }
+
+    @Test
+    void rejectsGarbage() {
+        assertThrows(IllegalArgumentException.class, () -> CatalogCursor.decode("%%%not-base64", "rating", ""));
+        assertThrows(IllegalArgumentException.class, () -> CatalogCursor.decode(encode("hello"), "rating", ""));
+    }
+
+    @Test
+    void rejectsTamperedFields() {
+        String query = "";
+        int hash = query.hashCode();
+        // Unknown version
+        assertThrows(IllegalArgumentException.class,
+                () -> CatalogCursor.decode(encode("v0|rating|" + hash + "|1|9.0"), "rating", query));
+        // Id that isn't a number
+        assertThrows(IllegalArgumentException.class,
+                () -> CatalogCursor.decode(encode("v1|rating|" + hash + "|1 OR 1=1|9.0"), "rating", query));
+        // Key that doesn't fit the sort
+        assertThrows(IllegalArgumentException.class,
+                () -> CatalogCursor.decode(encode("v1|rating|" + hash + "|1|high"), "rating", query));
+        assertThrows(IllegalArgumentException.class,
+                () -> CatalogCursor.decode(encode("v1|chapters|" + hash + "|1|2.5"), "chapters", query));
+        // Missing parts
+        assertThrows(IllegalArgumentException.class,
+                () -> CatalogCursor.decode(encode("v1|rating|" + hash + "|1"), "rating", query));
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
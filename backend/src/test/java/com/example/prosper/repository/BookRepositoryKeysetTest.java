@@ -0,0 +1,235 @@
+package com.example.prosper.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.prosper.model.Book;
+import com.example.prosper.model.BookStats;
+import com.example.prosper.service.CatalogFacetIndex;
+import com.example.prosper.service.CatalogSnapshotService;
+
+/**
+ * Runs the native keyset queries of {@link BookRepository} as written in their @Query annotations against an
+ * in-memory database, page by page, and checks the walk against the order of the catalog snapshot.
+ */
+class BookRepositoryKeysetTest {
+
+    private static final Pattern NAMED_PARAM = Pattern.compile("(?<![:\\w]):([A-Za-z]\\w*)");
+
+    // id, title, author, avg_rating, chapter_count — several ties on both keys
+    private static final Object[][] BOOKS = {
+            {1L, "Дюна", "Герберт", 8.0, 10},
+            {2L, "Гарри Поттер", "Роулинг", 9.0, 30},
+            {3L, "Дюна", "Герберт", 8.0, 30},
+            {4L, "Мастер и Маргарита", "Булгаков", 8.0, 32},
+            {5L, "Гарри Поттер", "Роулинг", 7.0, 10},
+            {6L, "Пикник на обочине", "Стругацкие", 9.0, 8},
+            {7L, "Солярис", "Лем", 0.0, 0},
+    };
+
+    private Connection db;
+
+    @BeforeEach
+    void createTables() throws Exception {
+        db = DriverManager.getConnection("jdbc:h2:mem:keyset;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE");
+        try (Statement st = db.createStatement()) {
+            st.execute("CREATE TABLE books (id BIGINT PRIMARY KEY, title VARCHAR(255), author VARCHAR(255))");
+            st.execute("CREATE TABLE book_stats (book_id BIGINT PRIMARY KEY, avg_rating DOUBLE PRECISION, " +
+                    "chapter_count INT)");
+        }
+        for (Object[] b : BOOKS) {
+            update("INSERT INTO books VALUES (?, ?, ?)", b[0], b[1], b[2]);
+            update("INSERT INTO book_stats VALUES (?, ?, ?)", b[0], b[3], b[4]);
+        }
+    }
+
+    @AfterEach
+    void dropDatabase() throws Exception {
+        try (Statement st = db.createStatement()) {
+            st.execute("DROP ALL OBJECTS");
+        }
+        db.close();
+    }
+
+    @Test
+    void ratingPagesBreakTiesByIdAscending() throws Exception {
+        List<Long> walk = walk("findPageByRating", Double.POSITIVE_INFINITY, 0L, 2,
+                row -> ((Number) row[1]).doubleValue());
+
+        assertEquals(List.of(2L, 6L, 1L, 3L, 4L, 5L, 7L), walk);
+    }
+
+    @Test
+    void chapterPagesBreakTiesByIdAscending() throws Exception {
+        List<Long> walk = walk("findPageByChapterCount", Integer.MAX_VALUE, 0L, 2,
+                row -> ((Number) row[1]).intValue());
+
+        assertEquals(List.of(4L, 2L, 3L, 1L, 5L, 6L, 7L), walk);
+    }
+
+    @Test
+    void seekStartsRightAfterTheCursorWithinATie() throws Exception {
+        // Cursor on book 1 (rating 8.0): books 3 and 4 share the rating and come next, by id
+        List<Object[]> rows = page("findPageByRating", "%%", 8.0, 1L, 10);
+
+        assertEquals(List.of(3L, 4L, 5L, 7L), ids(rows));
+    }
+
+    @Test
+    void titlePagesWalkBothDirections() throws Exception {
+        List<Long> asc = walk("findPageByTitleAsc", "", 0L, 3, row -> row[1]);
+        assertEquals(List.of(2L, 5L, 1L, 3L, 4L, 6L, 7L), asc);
+
+        List<Object[]> first = page("findFirstPageByTitleDesc", "%%", null, null, 3);
+        List<Long> desc = new ArrayList<>(ids(first));
+        Object[] last = first.get(first.size() - 1);
+        while (true) {
+            List<Object[]> next = page("findPageByTitleDesc", "%%", last[1], ((Number) last[0]).longValue(), 3);
+            if (next.isEmpty()) break;
+            desc.addAll(ids(next));
+            last = next.get(next.size() - 1);
+        }
+        assertEquals(List.of(7L, 6L, 4L, 3L, 1L, 5L, 2L), desc);
+    }
+
+    @Test
+    void searchPatternAppliesToEveryPage() throws Exception {
+        List<Long> walk = new ArrayList<>();
+        Object key = Double.POSITIVE_INFINITY;
+        long id = 0;
+        while (true) {
+            List<Object[]> rows = page("findPageByRating", "%гарри%", key, id, 1);
+            if (rows.isEmpty()) break;
+            walk.addAll(ids(rows));
+            key = ((Number) rows.get(0)[1]).doubleValue();
+            id = ((Number) rows.get(0)[0]).longValue();
+        }
+        assertEquals(List.of(2L, 5L), walk);
+    }
+
+    @Test
+    void databasePagesMatchTheSnapshotOrder() throws Exception {
+        CatalogSnapshotService.Snapshot snapshot = snapshot();
+
+        assertEquals(snapshotIds(snapshot, "rating"),
+                walk("findPageByRating", Double.POSITIVE_INFINITY, 0L, 2, row -> ((Number) row[1]).doubleValue()));
+        assertEquals(snapshotIds(snapshot, "chapters"),
+                walk("findPageByChapterCount", Integer.MAX_VALUE, 0L, 2, row -> ((Number) row[1]).intValue()));
+    }
+
+    // ── helpers ──────────────────────────────────────────────────────────────
+
+    private List<Long> walk(String method, Object firstKey, long firstId, int size,
+                            java.util.function.Function<Object[], Object> keyOf) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        Object key = firstKey;
+        long id = firstId;
+        while (true) {
+            List<Object[]> rows = page(method, "%%", key, id, size + 1);
+            boolean hasMore = rows.size() > size;
+            if (hasMore) rows = rows.subList(0, size);
+            ids.addAll(ids(rows));
+            if (!hasMore) return ids;
+            Object[] last = rows.get(rows.size() - 1);
+            key = keyOf.apply(last);
+            id = ((Number) last[0]).longValue();
+        }
+    }
+
+    /** Executes the repository method's native SQL with its named parameters bound by name. */
+    private List<Object[]> page(String method, String pattern, Object key, Long id, int limit) throws Exception {
+        Method m = java.util.Arrays.stream(BookRepository.class.getMethods())
+                .filter(x -> x.getName().equals(method)).findFirst().orElseThrow();
+        String sql = m.getAnnotation(Query.class).value();
+        Map<String, Object> values = new java.util.HashMap<>();
+        values.put("pattern", pattern);
+        values.put("rating", key);
+        values.put("chapters", key);
+        values.put("title", key);
+        values.put("id", id);
+        values.put("limit", limit);
+
+        List<Object> args = new ArrayList<>();
+        Matcher matcher = NAMED_PARAM.matcher(sql);
+        StringBuilder jdbc = new StringBuilder();
+        while (matcher.find()) {
+            args.add(values.get(matcher.group(1)));
+            matcher.appendReplacement(jdbc, "?");
+        }
+        matcher.appendTail(jdbc);
+
+        try (PreparedStatement ps = db.prepareStatement(jdbc.toString())) {
+            for (int i = 0; i < args.size(); i++) ps.setObject(i + 1, args.get(i));
+            List<Object[]> rows = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) rows.add(new Object[]{rs.getObject(1), rs.getObject(2)});
+            }
+            return rows;
+        }
+    }
+
+    private static List<Long> ids(List<Object[]> rows) {
+        return rows.stream().map(r -> ((Number) r[0]).longValue()).collect(Collectors.toList());
+    }
+
+    private static List<Long> snapshotIds(CatalogSnapshotService.Snapshot snapshot, String sort) {
+        return snapshot.books(sort).stream().map(r -> (Long) r.get("id")).collect(Collectors.toList());
+    }
+
+    private static CatalogSnapshotService.Snapshot snapshot() {
+        List<Book> books = new ArrayList<>();
+        List<BookStats> stats = new ArrayList<>();
+        for (Object[] b : BOOKS) {
+            Book book = new Book();
+            book.setId((Long) b[0]);
+            book.setTitle((String) b[1]);
+            book.setAuthor((String) b[2]);
+            book.setGenres(new HashSet<>());
+            books.add(book);
+            BookStats s = new BookStats();
+            s.setBookId((Long) b[0]);
+            s.setAvgRating((Double) b[3]);
+            s.setRatingCount((Double) b[3] > 0 ? 1 : 0);
+            s.setChapterCount((Integer) b[4]);
+            stats.add(s);
+        }
+        BookRepository bookRepository = mock(BookRepository.class);
+        BookStatsRepository bookStatsRepository = mock(BookStatsRepository.class);
+        when(bookRepository.findAllWithGenres()).thenReturn(books);
+        when(bookStatsRepository.findAll()).thenReturn(stats);
+
+        CatalogSnapshotService service = new CatalogSnapshotService();
+        ReflectionTestUtils.setField(service, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(service, "bookStatsRepository", bookStatsRepository);
+        ReflectionTestUtils.setField(service, "catalogFacetIndex", new CatalogFacetIndex());
+        return service.current();
+    }
+
+    private void update(String sql, Object... args) throws Exception {
+        try (PreparedStatement ps = db.prepareStatement(sql)) {
+            for (int i = 0; i < args.length; i++) ps.setObject(i + 1, args[i]);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.prosper.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/** Single flight, the generation guard around invalidations, what is not cached, and the TTL. */
+class AiAnswerCacheTest {
+
+    private static final String QUESTION = AiAnswerCache.normalize("Кто такой Гарри?");
+
+    private AiAnswerCache cache = new AiAnswerCache(10, 60, new SimpleMeterRegistry());
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void identicalQuestionsShareOneFlightAndTheAnswerIsThenCached() {
+        AiAnswerCache.Lookup leader = cache.lookupOrJoin(QUESTION);
+        AiAnswerCache.Lookup follower = cache.lookupOrJoin(QUESTION);
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+        assertNotNull(follower.getFlight());
+
+        AiAnswerCache.Entry entry = answer(true);
+        cache.complete(QUESTION, leader, entry);
+
+        assertSame(entry, follower.getFlight().join());
+        AiAnswerCache.Lookup later = cache.lookupOrJoin(QUESTION);
+        assertNotNull(later.getHit());
+        assertEquals("Мальчик, который выжил", later.getHit().getAnswer());
+    }
+
+    @Test
+    void answerStartedBeforeACommittedInvalidationIsNotStored() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.invalidateBook(1L);
+        // Not committed yet: a pipeline starting now still sees the old chapter text...
+        AiAnswerCache.Lookup leader = cache.lookupOrJoin(QUESTION);
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // ...so its answer is handed out but not kept
+        cache.complete(QUESTION, leader, answer(true));
+        assertNull(cache.lookupOrJoin(QUESTION).getHit());
+    }
+
+    @Test
+    void rolledBackWriteLeavesTheCacheAlone() {
+        cache.complete(QUESTION, cache.lookupOrJoin(QUESTION), answer(true));
+
+        TransactionSynchronizationManager.initSynchronization();
+        cache.invalidateBook(1L);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertNotNull(cache.lookupOrJoin(QUESTION).getHit());
+    }
+
+    @Test
+    void errorAnswersAndFailuresReachTheWaitersButAreNotCached() {
+        AiAnswerCache.Lookup leader = cache.lookupOrJoin(QUESTION);
+        AiAnswerCache.Lookup follower = cache.lookupOrJoin(QUESTION);
+        cache.complete(QUESTION, leader, answer(false));
+        assertFalse(follower.getFlight().join().isCacheable());
+        assertEquals(0, cache.size());
+
+        leader = cache.lookupOrJoin(QUESTION);
+        assertTrue(leader.isLeader());
+        follower = cache.lookupOrJoin(QUESTION);
+        cache.fail(QUESTION, leader, new IllegalStateException("LLM down"));
+        AiAnswerCache.Lookup waiting = follower;
+        CompletionException e = assertThrows(CompletionException.class, () -> waiting.getFlight().join());
+        assertEquals("LLM down", e.getCause().getMessage());
+        assertTrue(cache.lookupOrJoin(QUESTION).isLeader());
+    }
+
+    @Test
+    void expiredAnswerIsAMiss() throws Exception {
+        cache = new AiAnswerCache(10, 0, new SimpleMeterRegistry());
+        cache.complete(QUESTION, cache.lookupOrJoin(QUESTION), answer(true));
+        Thread.sleep(5);
+
+        AiAnswerCache.Lookup again = cache.lookupOrJoin(QUESTION);
+        assertNull(again.getHit());
+        assertTrue(again.isLeader());
+        assertEquals(0, cache.size());
+    }
+
+    private static AiAnswerCache.Entry answer(boolean cacheable) {
+        return new AiAnswerCache.Entry(cacheable ? "Мальчик, который выжил" : "Ошибка", List.of(), List.of(1L),
+                1, cacheable);
+    }
+}
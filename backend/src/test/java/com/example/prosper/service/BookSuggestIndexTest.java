@@ -0,0 +1,105 @@
+package com.example.prosper.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.prosper.model.Book;
+import com.example.prosper.model.BookStats;
+
+class BookSuggestIndexTest {
+
+    private final List<Book> catalog = List.of(
+            book(1L, "Гарри Поттер и философский камень", "Джоан Роулинг"),
+            book(2L, "Гордость и предубеждение", "Джейн Остин"),
+            book(3L, "Мастер и Маргарита", "Михаил Булгаков"),
+            book(4L, "Мартин Иден", "Джек Лондон"),
+            book(5L, "Мастерство рассказа", "Ёжиков"));
+
+    @Test
+    void queryTypedOnTheLatinLayoutFindsTheRussianTitle() {
+        BookSuggestIndex index = new BookSuggestIndex(catalog, Map.of());
+
+        assertEquals(List.of(1L), ids(index.suggest("ufhhb", 5)));
+        assertEquals(List.of(1L), ids(index.suggest("Гарри", 5)));
+        // Folding: case and ё/е
+        assertEquals(List.of(5L), ids(index.suggest("ЕЖИКОВ", 5)));
+    }
+
+    @Test
+    void prefixIsOneContiguousRangeOfTheSortedTerms() {
+        BookSuggestIndex index = new BookSuggestIndex(catalog, Map.of());
+        String[] terms = (String[]) ReflectionTestUtils.getField(index, "terms");
+        String[] sorted = terms.clone();
+        Arrays.sort(sorted);
+        assertEquals(Arrays.asList(sorted), Arrays.asList(terms));
+
+        int from = ReflectionTestUtils.invokeMethod(index, "lowerBound", "мар");
+        assertEquals("маргарита", terms[from]);
+        assertEquals("мартин", terms[from + 1]);
+        assertTrue(terms[from - 1].compareTo("мар") < 0);
+        assertTrue(!terms[from + 2].startsWith("мар"));
+
+        // With as many prefix hits as asked for, the typo pass doesn't run
+        assertEquals(List.of(3L, 4L), ids(index.suggest("мар", 2)).stream().sorted().toList());
+        // "мастер" covers "мастерство" too
+        assertEquals(List.of(3L, 5L), ids(index.suggest("мастер", 2)).stream().sorted().toList());
+        // Every word of the query has to match: only that book is a prefix hit, the rest is trigram padding below it
+        assertEquals(3L, ids(index.suggest("мастер мар", 5)).get(0));
+        // Fewer prefix hits than asked for: trigram neighbours fill up the list after them
+        List<Long> padded = ids(index.suggest("мар", 5));
+        assertEquals(List.of(3L, 4L), padded.subList(0, 2).stream().sorted().toList());
+        assertTrue(padded.contains(5L));
+    }
+
+    @Test
+    void typoFallsBackToTrigramsAndRanksBelowAPrefixMatch() {
+        BookSuggestIndex index = new BookSuggestIndex(catalog, Map.of());
+
+        assertEquals(List.of(3L), ids(index.suggest("Маргорита", 5)));
+        assertEquals(List.of(1L), ids(index.suggest("Гарри Потер", 5)));
+        assertTrue(index.suggest("Квиддич", 5).isEmpty());
+    }
+
+    @Test
+    void topKIsOrderedByMatchThenPopularity() {
+        List<Book> wars = List.of(
+                book(10L, "Война и мир", "Лев Толстой"),
+                book(11L, "Война миров", "Герберт Уэллс"),
+                book(12L, "Война с саламандрами", "Карел Чапек"),
+                book(13L, "Мир после войны", "Война Войнович"));
+        // The author-only match is by far the most popular, and still comes after the title prefix matches
+        BookSuggestIndex index = new BookSuggestIndex(wars, Map.of(
+                10L, stats(10L, 50), 11L, stats(11L, 500), 12L, stats(12L, 5), 13L, stats(13L, 50_000)));
+
+        assertEquals(List.of(11L, 10L, 12L, 13L), ids(index.suggest("война", 10)));
+        assertEquals(List.of(11L, 10L), ids(index.suggest("война", 2)));
+        assertEquals(List.of(11L), ids(index.suggest("война", 1)));
+    }
+
+    private static List<Long> ids(List<Map<String, Object>> rows) {
+        return rows.stream().map(r -> (Long) r.get("id")).collect(Collectors.toList());
+    }
+
+    private static Book book(long id, String title, String author) {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle(title);
+        book.setAuthor(author);
+        return book;
+    }
+
+    private static BookStats stats(long bookId, int readers) {
+        BookStats stats = new BookStats();
+        stats.setBookId(bookId);
+        stats.setReadingCount(readers);
+        return stats;
+    }
+}
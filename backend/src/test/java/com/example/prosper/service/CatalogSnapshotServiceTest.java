@@ -0,0 +1,190 @@
+package com.example.prosper.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.prosper.model.Book;
+import com.example.prosper.model.Genre;
+import com.example.prosper.repository.BookRepository;
+import com.example.prosper.repository.BookStatsRepository;
+
+class CatalogSnapshotServiceTest {
+
+    private final List<Book> books = new ArrayList<>();
+    private BookRepository bookRepository;
+    private CatalogSnapshotService service;
+
+    @BeforeEach
+    void setUp() {
+        books.add(book(1L, "Дюна"));
+        books.add(book(2L, "Солярис"));
+        bookRepository = mock(BookRepository.class);
+        BookStatsRepository bookStatsRepository = mock(BookStatsRepository.class);
+        // A copy per call, like a fresh query result
+        when(bookRepository.findAllWithGenres()).thenAnswer(inv -> new ArrayList<>(books));
+        when(bookStatsRepository.findAll()).thenReturn(List.of());
+
+        service = new CatalogSnapshotService();
+        ReflectionTestUtils.setField(service, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(service, "bookStatsRepository", bookStatsRepository);
+        ReflectionTestUtils.setField(service, "catalogFacetIndex", new CatalogFacetIndex());
+        ReflectionTestUtils.setField(service, "ratingThreshold", 3);
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void rebuildSwapsInANewSnapshotAndLeavesTheOldOneIntact() throws Exception {
+        CatalogSnapshotService.Snapshot first = service.current();
+        List<Map<String, Object>> firstRows = first.books("title_asc");
+
+        books.add(book(3L, "Аэлита"));
+        service.invalidate();
+        CatalogSnapshotService.Snapshot second = awaitVersion(first.getVersion() + 1);
+
+        assertNotEquals(first.getEtag(), second.getEtag());
+        assertEquals(List.of(3L, 1L, 2L), ids(second.books("title_asc")));
+        // Readers holding the previous version keep a consistent, unmodifiable view
+        assertSame(firstRows, first.books("title_asc"));
+        assertEquals(List.of(1L, 2L), ids(firstRows));
+        assertThrows(UnsupportedOperationException.class, () -> firstRows.add(Map.of()));
+        assertThrows(UnsupportedOperationException.class, () -> firstRows.get(0).put("title", "x"));
+    }
+
+    @Test
+    void invalidateInsideATransactionWaitsForCommit() throws Exception {
+        CatalogSnapshotService.Snapshot first = service.current();
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.invalidate();
+        Thread.sleep(200);
+        assertSame(first, service.current());
+        verify(bookRepository, times(1)).findAllWithGenres();
+
+        List<TransactionSynchronization> registered = TransactionSynchronizationManager.getSynchronizations();
+        assertEquals(1, registered.size());
+        registered.forEach(TransactionSynchronization::afterCommit);
+
+        awaitVersion(first.getVersion() + 1);
+        verify(bookRepository, times(2)).findAllWithGenres();
+    }
+
+    @Test
+    void rolledBackTransactionDoesNotRebuild() throws Exception {
+        CatalogSnapshotService.Snapshot first = service.current();
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.invalidate();
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        Thread.sleep(200);
+
+        assertSame(first, service.current());
+        verify(bookRepository, times(1)).findAllWithGenres();
+    }
+
+    @Test
+    void ratingsRebuildOnlyEveryThreshold() throws Exception {
+        CatalogSnapshotService.Snapshot first = service.current();
+
+        service.ratingChanged();
+        service.ratingChanged();
+        Thread.sleep(200);
+        assertSame(first, service.current());
+
+        service.ratingChanged();
+        awaitVersion(first.getVersion() + 1);
+    }
+
+    @Test
+    void burstOfInvalidationsIsCoalesced() throws Exception {
+        long before = service.current().getVersion();
+        for (int i = 0; i < 50; i++) service.invalidate();
+
+        verify(bookRepository, timeout(2000).atLeast(2)).findAllWithGenres();
+        Thread.sleep(200);
+        // The first rebuild plus at most a couple of queued ones, not one per call
+        long rebuilt = service.current().getVersion() - before;
+        assertEquals(true, rebuilt >= 1 && rebuilt <= 3, "rebuilds: " + rebuilt);
+    }
+
+    @Test
+    void facetPositionsFollowTheSortOrderForSelectiveAndBroadFilters() throws Exception {
+        CatalogFacetIndex facets = new CatalogFacetIndex();
+        ReflectionTestUtils.setField(service, "catalogFacetIndex", facets);
+        books.clear();
+        for (long id = 1; id <= 40; id++) {
+            Book b = book(id, String.format("Книга %02d", 41 - id));
+            b.getGenres().add(new Genre(id % 20 == 0 ? "редкий" : "частый"));
+            books.add(b);
+        }
+        long before = service.current().getVersion();
+        // A book deleted between versions must not shift the ordinals the snapshot holds
+        books.remove(0);
+        service.invalidate();
+        CatalogSnapshotService.Snapshot snapshot = awaitVersion(before + 1);
+        List<Map<String, Object>> rows = snapshot.books("title_asc");
+
+        BitSet rare = facets.matching(new CatalogFacetIndex.Filter(List.of("редкий"), false, List.of(), List.of()));
+        assertEquals(List.of(40L, 20L), idsAt(rows, snapshot.positions("title_asc", rare, 0)));
+        assertEquals(List.of(20L), idsAt(rows, snapshot.positions("title_asc", rare, 1)));
+
+        BitSet common = facets.matching(new CatalogFacetIndex.Filter(List.of("частый"), false, List.of(), List.of()));
+        List<Long> expected = ids(rows).stream().filter(id -> id % 20 != 0).skip(5).collect(Collectors.toList());
+        assertEquals(expected, idsAt(rows, snapshot.positions("title_asc", common, 6)));
+    }
+
+    private static List<Long> idsAt(List<Map<String, Object>> rows, IntStream positions) {
+        return positions.mapToObj(i -> (Long) rows.get(i).get("id")).collect(Collectors.toList());
+    }
+
+    private CatalogSnapshotService.Snapshot awaitVersion(long version) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            CatalogSnapshotService.Snapshot s = service.current();
+            if (s.getVersion() >= version) return s;
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Snapshot version " + version + " was not built");
+    }
+
+    private static List<Long> ids(List<Map<String, Object>> rows) {
+        return rows.stream().map(r -> (Long) r.get("id")).collect(Collectors.toList());
+    }
+
+    private static Book book(long id, String title) {
+        Book b = new Book();
+        b.setId(id);
+        b.setTitle(title);
+        b.setAuthor("Автор");
+        b.setGenres(new HashSet<>());
+        return b;
+    }
+}
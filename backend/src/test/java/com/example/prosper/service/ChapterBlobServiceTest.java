@@ -0,0 +1,111 @@
+package com.example.prosper.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.prosper.model.Book;
+import com.example.prosper.model.Chapter;
+import com.example.prosper.model.ChapterBlob;
+import com.example.prosper.repository.ChapterBlobRepository;
+import com.example.prosper.repository.ChapterRepository;
+
+/** The segment store only hears of committed blob writes; the backfill never overwrites a newer blob. */
+class ChapterBlobServiceTest {
+
+    private ChapterBlobRepository blobs;
+    private ChapterRepository chapters;
+    private ChapterSegmentStore segments;
+    private ChapterBlobService service;
+
+    @BeforeEach
+    void setUp() {
+        blobs = mock(ChapterBlobRepository.class);
+        chapters = mock(ChapterRepository.class);
+        segments = mock(ChapterSegmentStore.class);
+        service = new ChapterBlobService();
+        ReflectionTestUtils.setField(service, "blobRepository", blobs);
+        ReflectionTestUtils.setField(service, "chapterRepository", chapters);
+        ReflectionTestUtils.setField(service, "segmentStore", segments);
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void committedWriteReachesTheSegmentStore() {
+        TransactionSynchronizationManager.initSynchronization();
+        service.storeChapter(chapter(10L, "Текст"));
+        service.removeChapter(11L);
+
+        verify(blobs).save(any(ChapterBlob.class));
+        verify(segments, never()).put(any());
+        verify(segments, never()).removeChapter(any());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        verify(segments).put(any(ChapterBlob.class));
+        verify(segments).removeChapter(11L);
+    }
+
+    @Test
+    void rolledBackWriteNeverReachesTheSegmentStore() {
+        TransactionSynchronizationManager.initSynchronization();
+        service.storeChapter(chapter(10L, "Текст"));
+        service.removeBook(1L);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        verify(segments, never()).put(any());
+        verify(segments, never()).removeBook(any());
+    }
+
+    @Test
+    void backfillLeavesABlobWrittenMeanwhileAlone() {
+        when(blobs.findUnblobbedChapterIdsAfter(eq(0L), any())).thenReturn(List.of(10L, 11L));
+        when(blobs.findUnblobbedChapterIdsAfter(eq(11L), any())).thenReturn(Collections.emptyList());
+        when(chapters.findById(10L)).thenReturn(Optional.of(chapter(10L, "Старый текст")));
+        when(chapters.findById(11L)).thenReturn(Optional.of(chapter(11L, "Текст")));
+        // Chapter 10 got an admin blob after the backfill listed it: the insert finds the row and does nothing
+        when(blobs.insertIfAbsent(eq(10L), any(), any(), any(), any(), any(), any())).thenReturn(0);
+        when(blobs.insertIfAbsent(eq(11L), any(), any(), any(), any(), any(), any())).thenReturn(1);
+
+        ReflectionTestUtils.invokeMethod(service, "backfill");
+
+        verify(blobs, never()).save(any());
+        ArgumentCaptor<ChapterBlob> put = ArgumentCaptor.forClass(ChapterBlob.class);
+        verify(segments).put(put.capture());
+        assertEquals(11L, put.getValue().getChapterId());
+    }
+
+    private static Chapter chapter(Long id, String content) {
+        Book book = new Book();
+        book.setId(1L);
+        Chapter chapter = new Chapter();
+        chapter.setId(id);
+        chapter.setBook(book);
+        chapter.setchapterOrder(id.intValue());
+        chapter.setTitle("Глава");
+        chapter.setContent(content);
+        return chapter;
+    }
+}
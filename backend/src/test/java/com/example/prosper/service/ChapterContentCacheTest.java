@@ -0,0 +1,73 @@
+package com.example.prosper.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.prosper.dto.ChapterDTO;
+import com.example.prosper.repository.ChapterRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/** Absent chapters are cached until the book is invalidated; the raw text comes out of the cache's buffer. */
+class ChapterContentCacheTest {
+
+    private ChapterRepository chapters;
+    private ChapterContentCache cache;
+
+    @BeforeEach
+    void setUp() {
+        chapters = mock(ChapterRepository.class);
+        cache = new ChapterContentCache(1 << 20, 1, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "chapterRepository", chapters);
+    }
+
+    @Test
+    void missingChapterIsLoadedOnceUntilTheBookIsInvalidated() {
+        when(chapters.findContentByBookIdAndChapterOrder(1L, 9)).thenReturn(Optional.empty());
+
+        assertNull(cache.get(1L, 9));
+        assertNull(cache.get(1L, 9));
+        assertNull(cache.getText(1L, 9));
+        verify(chapters, times(1)).findContentByBookIdAndChapterOrder(1L, 9);
+
+        // The chapter is published: the next read sees it
+        when(chapters.findContentByBookIdAndChapterOrder(1L, 9))
+                .thenReturn(Optional.of(new ChapterDTO(90L, 9, "Глава 9", "Текст")));
+        cache.invalidateBook(1L);
+        assertNotNull(cache.get(1L, 9));
+        verify(chapters, times(2)).findContentByBookIdAndChapterOrder(1L, 9);
+    }
+
+    @Test
+    void textIsTheCachedUtf8WithItsHash() {
+        String content = "Гарри посмотрел на котёл";
+        when(chapters.findContentByBookIdAndChapterOrder(1L, 1))
+                .thenReturn(Optional.of(new ChapterDTO(10L, 1, "Глава 1", content)));
+        byte[] expected = content.getBytes(StandardCharsets.UTF_8);
+
+        ChapterContentCache.Text text = cache.getText(1L, 1);
+        ByteBuffer bytes = text.getBytes();
+        byte[] actual = new byte[bytes.remaining()];
+        bytes.get(actual);
+
+        assertArrayEquals(expected, actual);
+        assertEquals(ChapterBlobService.sha256(expected), text.getSha256());
+        // Each caller gets its own position: reading one view doesn't drain the next
+        assertEquals(expected.length, cache.getText(1L, 1).getBytes().remaining());
+        assertEquals(content, cache.get(1L, 1).getContent());
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.prosper.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.prosper.model.Book;
+import com.example.prosper.model.Chapter;
+
+class ChapterSearchIndexTest {
+
+    private ChapterSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ChapterSearchIndex();
+    }
+
+    @Test
+    void prefixOffsetsFindRecipeWordsInAnyForm() {
+        String content = "Ингредиенты зелья: три капли росы, 20 мл воды, две унции корня. "
+                + "Последовательность важна. Состав держали в тайне. Рецептура простая.";
+        index.indexChapter(chapter(10L, 1L, "Глава", content));
+
+        int[] offsets = index.prefixOffsets(10L, SnippetExtractor.RECIPE_CONTEXT);
+
+        int[] expected = {
+                content.indexOf("Ингредиенты"), content.indexOf("капли"), content.indexOf("мл"),
+                content.indexOf("унции"), content.indexOf("Последовательность"), content.indexOf("Состав"),
+                content.indexOf("Рецептура")};
+        assertArrayEquals(expected, offsets);
+    }
+
+    @Test
+    void prefixOffsetsIgnoreTitleAndOtherChapters() {
+        index.indexChapter(chapter(10L, 1L, "Рецепт", "Ничего особенного."));
+        index.indexChapter(chapter(11L, 1L, "Другая", "Рецепт зелья."));
+
+        assertEquals(0, index.prefixOffsets(10L, SnippetExtractor.RECIPE_CONTEXT).length);
+        assertArrayEquals(new int[]{0}, index.prefixOffsets(11L, SnippetExtractor.RECIPE_CONTEXT));
+        assertEquals(0, index.prefixOffsets(99L, SnippetExtractor.RECIPE_CONTEXT).length);
+    }
+
+    @Test
+    void indexWindowsAnchorOnRecipeLikeLoadedText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Зелье упоминается в начале. ");
+        while (sb.length() < 20_000) sb.append("Гарри шёл по коридору. ");
+        sb.append("Зелье варили долго. Состав: три капли росы. ");
+        while (sb.length() < 30_000) sb.append("Снейп молчал. ");
+        String content = sb.toString();
+        index.indexChapter(chapter(10L, 1L, "Глава", content));
+
+        ChapterSearchIndex.Hit hit = index.search(List.of(1L), "зелье", 10).get(0);
+        int[] context = index.prefixOffsets(10L, SnippetExtractor.RECIPE_CONTEXT);
+        List<int[]> ranges = SnippetExtractor.ranges(hit.getOffsets(), hit.getOccurrences(),
+                context, context.length, content.length());
+
+        List<SnippetExtractor.Snippet> loaded = new SnippetExtractor().windows(
+                content, List.of("зелье"), SnippetExtractor.RECIPE_CONTEXT);
+        assertEquals(1, ranges.size());
+        assertTrue(loaded.get(0).isContextAnchored());
+        assertEquals(loaded.get(0).getStart(), ranges.get(0)[0]);
+        assertEquals(loaded.get(0).getEnd(), ranges.get(0)[1]);
+    }
+
+    @Test
+    void withoutContextEveryMatchGetsAWindow() {
+        int[] anchors = {100, 5_000, 12_000};
+        List<int[]> ranges = SnippetExtractor.ranges(anchors, anchors.length, new int[0], 0, 20_000);
+        assertEquals(3, ranges.size());
+        assertArrayEquals(new int[]{4_700, 5_700}, ranges.get(1));
+    }
+
+    @Test
+    void writesApplyOnlyOnceTheirTransactionCommits() {
+        index.indexChapter(chapter(10L, 1L, "Глава", "Старый текст про зелье."));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            index.indexChapter(chapter(10L, 1L, "Глава", "Новый текст про метлу."));
+            index.removeChapter(11L);
+            assertEquals(1, index.search(List.of(1L), "зелье", 10).size());
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(1, index.search(List.of(1L), "зелье", 10).size());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            index.indexChapter(chapter(10L, 1L, "Глава", "Новый текст про метлу."));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertTrue(index.search(List.of(1L), "зелье", 10).isEmpty());
+        assertEquals(1, index.search(List.of(1L), "метла", 10).size());
+    }
+
+    private static Chapter chapter(Long id, Long bookId, String title, String content) {
+        Book book = new Book();
+        book.setId(bookId);
+        Chapter chapter = new Chapter();
+        chapter.setId(id);
+        chapter.setBook(book);
+        chapter.setTitle(title);
+        chapter.setContent(content);
+        return chapter;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.prosper.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.prosper.model.Chapter;
+
+class ContextBuilderTest {
+
+    private final ContextBuilder builder = new ContextBuilder();
+
+    @Test
+    void overlappingAndNearRangesOfAChapterAreMerged() {
+        Chapter chapter = chapter(1L, 1, repeat("Гарри летел на метле над полем. ", 20));
+        List<ContextBuilder.Passage> merged = ContextBuilder.mergeOverlaps(List.of(
+                ContextBuilder.Passage.range(chapter, 0, 100, "exact", 1.0),
+                ContextBuilder.Passage.range(chapter, 80, 200, "fts", 0.5),
+                // 100 chars after the previous range: the gap is filled from the loaded content
+                ContextBuilder.Passage.range(chapter, 300, 400, "ilike", 0.4)));
+
+        assertEquals(1, merged.size());
+        ContextBuilder.Passage p = merged.get(0);
+        assertEquals(0, p.getStart());
+        assertEquals(400, p.getEnd());
+        assertEquals(chapter.getContent().substring(0, 400), p.getText());
+        assertEquals("exact+fts+ilike", p.getStage());
+        assertEquals(1.0, p.getPrior());
+    }
+
+    @Test
+    void farApartOrUnplacedTextStaysSeparate() {
+        String content = repeat("Снейп варил зелье в подземелье. ", 40);
+        Chapter chapter = chapter(1L, 1, content);
+        // Window of a chapter whose content isn't loaded: a gap can't be filled in
+        Chapter unloaded = chapter(2L, 2, null);
+        List<ContextBuilder.Passage> merged = ContextBuilder.mergeOverlaps(List.of(
+                ContextBuilder.Passage.range(chapter, 0, 100, "fts", 1.0),
+                ContextBuilder.Passage.range(chapter, 500, 600, "fts", 0.9),
+                ContextBuilder.Passage.window(unloaded, 0, "Начало главы", "ilike", 0.8),
+                ContextBuilder.Passage.window(unloaded, 50, "Дальше по тексту", "ilike", 0.7),
+                ContextBuilder.Passage.detached(chapter, content.substring(0, 100), "semantic", 0.6)));
+
+        assertEquals(5, merged.size());
+        assertEquals(List.of("fts", "fts", "ilike", "ilike", "semantic"),
+                merged.stream().map(ContextBuilder.Passage::getStage).toList());
+    }
+
+    @Test
+    void nearDuplicateOfAPickedPassageIsDropped() {
+        String scene = "Гарри поймал снитч и Гриффиндор выиграл матч по квиддичу.";
+        ContextBuilder.Passage first = ContextBuilder.Passage.detached(chapter(1L, 1, null), scene, "semantic", 1.0);
+        // The same scene found in another chapter (e.g. a recap) with a word changed
+        ContextBuilder.Passage copy = ContextBuilder.Passage.detached(chapter(2L, 5, null),
+                scene.replace("выиграл", "победил"), "fts", 0.9);
+        ContextBuilder.Passage other = ContextBuilder.Passage.detached(chapter(3L, 7, null),
+                "Снейп варил зелье в подземелье до утра.", "fts", 0.5);
+
+        ContextBuilder.Result result = builder.build(List.of(first, copy, other), List.of("квиддич"), 10_000);
+
+        assertEquals(List.of(first, other), result.getIncluded());
+        assertEquals(1, result.getCut().size());
+        assertSame(copy, result.getCut().get(0).getPassage());
+        assertEquals("duplicate", result.getCut().get(0).getReason());
+        assertEquals(first.getHeader() + first.getText() + ContextBuilder.SEPARATOR + other.getHeader() + other.getText(),
+                result.getContext());
+    }
+
+    @Test
+    void contextIsTruncatedToTheTokenBudget() {
+        ContextBuilder.Passage fits = ContextBuilder.Passage.detached(chapter(1L, 1, null),
+                repeat("Гарри летел на метле над полем. ", 20), "exact", 1.0);
+        ContextBuilder.Passage partly = ContextBuilder.Passage.detached(chapter(2L, 2, null),
+                repeat("Снейп варил зелье в подземелье. ", 50), "fts", 0.8);
+        ContextBuilder.Passage over = ContextBuilder.Passage.detached(chapter(3L, 3, null),
+                repeat("Дамблдор говорил с Фоуксом ночью. ", 20), "fts", 0.6);
+        int budget = 500;
+
+        ContextBuilder.Result result = builder.build(List.of(fits, partly, over), List.of(), budget);
+
+        assertTrue(result.getTokens() <= budget, "tokens " + result.getTokens());
+        assertEquals(ContextBuilder.estimateTokens(result.getContext()), result.getTokens(), 1);
+        assertEquals(2, result.getIncluded().size());
+        assertSame(fits, result.getIncluded().get(0));
+        ContextBuilder.Passage truncated = result.getIncluded().get(1);
+        assertTrue(partly.getText().startsWith(truncated.getText()));
+        assertTrue(truncated.getText().length() < partly.getText().length());
+
+        assertEquals(List.of("truncated", "budget"),
+                result.getCut().stream().map(ContextBuilder.Cut::getReason).toList());
+        assertSame(truncated, result.getCut().get(0).getPassage());
+        assertSame(over, result.getCut().get(1).getPassage());
+    }
+
+    private static Chapter chapter(Long id, int order, String content) {
+        Chapter chapter = new Chapter();
+        chapter.setId(id);
+        chapter.setchapterOrder(order);
+        chapter.setTitle("Глава " + order);
+        chapter.setContent(content);
+        return chapter;
+    }
+
+    private static String repeat(String sentence, int times) {
+        return sentence.repeat(times);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.prosper.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.example.prosper.repository.ChapterRepository;
+
+class DeadlineQueriesTest {
+
+    private PlatformTransactionManager transactions;
+    private ChapterRepository chapters;
+    private DeadlineQueries queries;
+
+    @BeforeEach
+    void setUp() {
+        transactions = mock(PlatformTransactionManager.class);
+        when(transactions.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        chapters = mock(ChapterRepository.class);
+        queries = new DeadlineQueries();
+        ReflectionTestUtils.setField(queries, "transactionManager", transactions);
+        ReflectionTestUtils.setField(queries, "chapterRepository", chapters);
+        queries.init();
+    }
+
+    @Test
+    void timeoutIsWhatIsLeftOfTheDeadlineAndSetFirst() {
+        String result = queries.run(Deadline.afterMillis(5_000), () -> "rows");
+
+        assertEquals("rows", result);
+        ArgumentCaptor<String> ms = ArgumentCaptor.forClass(String.class);
+        verify(chapters).setLocalStatementTimeout(ms.capture());
+        long timeout = Long.parseLong(ms.getValue());
+        assertTrue(timeout > 4_000 && timeout <= 5_000, "timeout " + timeout);
+
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        InOrder order = inOrder(transactions, chapters);
+        order.verify(transactions).getTransaction(definition.capture());
+        order.verify(chapters).setLocalStatementTimeout(anyString());
+        order.verify(transactions).commit(any());
+        assertTrue(definition.getValue().isReadOnly());
+        assertEquals(TransactionDefinition.PROPAGATION_REQUIRES_NEW, definition.getValue().getPropagationBehavior());
+    }
+
+    @Test
+    void expiredDeadlineNeverReachesTheDatabase() {
+        Deadline expired = Deadline.afterMillis(0);
+        assertThrows(QueryTimeoutException.class, () -> queries.run(expired, () -> "rows"));
+        verifyNoInteractions(transactions, chapters);
+    }
+}
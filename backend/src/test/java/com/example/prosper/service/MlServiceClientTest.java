@@ -0,0 +1,115 @@
+package com.example.prosper.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/** Request bodies and response mapping of the batched semantic search, against a local stand-in for ml_service. */
+class MlServiceClientTest {
+
+    private final ObjectMapper json = new ObjectMapper();
+    // Path -> JSON answered for it; a missing path answers 404
+    private final Map<String, String> answers = new ConcurrentHashMap<>();
+    private final List<String> paths = new CopyOnWriteArrayList<>();
+    private final List<Map<String, Object>> bodies = new CopyOnWriteArrayList<>();
+
+    private HttpServer server;
+    private MlServiceClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        client = new MlServiceClient("http://127.0.0.1:" + server.getAddress().getPort(),
+                new AiMetrics(new SimpleMeterRegistry()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void batchResultsAreKeyedByBookAndMissingBooksAreEmpty() throws Exception {
+        answers.put("/semantic-search/batch", "{\"results\": {\"1\": [{\"chapter_id\": 10, \"title\": \"Глава 1\"}],"
+                + " \"2\": []}}");
+
+        Map<Long, List<Map<String, Object>>> results =
+                client.semanticSearchBatch("Кто такой Гарри?", List.of(1L, 2L, 3L), 4, Deadline.afterMillis(5000));
+
+        assertEquals(List.of("/semantic-search/batch"), paths);
+        assertEquals("Кто такой Гарри?", bodies.get(0).get("question"));
+        assertEquals(List.of(1, 2, 3), bodies.get(0).get("book_ids"));
+        assertEquals(4, bodies.get(0).get("top_k"));
+
+        assertEquals(List.of(1L, 2L, 3L), List.copyOf(results.keySet()));
+        assertEquals(10, results.get(1L).get(0).get("chapter_id"));
+        assertTrue(results.get(2L).isEmpty());
+        assertTrue(results.get(3L).isEmpty());
+    }
+
+    @Test
+    void serviceWithoutTheBatchEndpointGetsOneCallPerBook() throws Exception {
+        answers.put("/semantic-search", "{\"chapters\": [{\"chapter_id\": 20}]}");
+
+        Map<Long, List<Map<String, Object>>> results =
+                client.semanticSearchBatch("Где школа?", List.of(1L, 2L), 3, Deadline.afterMillis(5000));
+
+        assertEquals("/semantic-search/batch", paths.get(0));
+        assertEquals(3, paths.size());
+        // Sent concurrently, so they arrive in either order
+        assertEquals(Set.of(1, 2), bodies.subList(1, 3).stream().map(b -> b.get("book_id")).collect(Collectors.toSet()));
+        assertEquals(20, results.get(1L).get(0).get("chapter_id"));
+        assertEquals(20, results.get(2L).get(0).get("chapter_id"));
+
+        // The 404 is remembered: the next question goes straight to per-book calls
+        paths.clear();
+        client.semanticSearchBatch("Где школа?", List.of(1L, 2L), 3, Deadline.afterMillis(5000));
+        assertEquals(List.of("/semantic-search", "/semantic-search"), paths);
+    }
+
+    @Test
+    void singleBookUsesThePlainEndpoint() throws Exception {
+        answers.put("/semantic-search", "{\"chapters\": [{\"chapter_id\": 30}, {\"chapter_id\": 31}]}");
+
+        Map<Long, List<Map<String, Object>>> results =
+                client.semanticSearchBatch("Что в главе?", List.of(7L), 2, Deadline.afterMillis(5000));
+
+        assertEquals(List.of("/semantic-search"), paths);
+        assertEquals(7, bodies.get(0).get("book_id"));
+        assertEquals(2, results.get(7L).size());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        paths.add(path);
+        bodies.add(json.readValue(exchange.getRequestBody().readAllBytes(), new TypeReference<Map<String, Object>>() {}));
+        String answer = answers.get(path);
+        byte[] bytes = (answer != null ? answer : "{\"detail\": \"Not Found\"}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(answer != null ? 200 : 404, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
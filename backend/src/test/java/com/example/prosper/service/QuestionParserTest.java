@@ -0,0 +1,76 @@
+package com.example.prosper.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.prosper.model.Book;
+import com.example.prosper.repository.BookRepository;
+
+class QuestionParserTest {
+
+    // ai.parser.min-confidence default
+    private static final double THRESHOLD = 0.75;
+
+    private QuestionParser parser;
+
+    @BeforeEach
+    void setUp() {
+        BookRepository bookRepository = mock(BookRepository.class);
+        when(bookRepository.findAll()).thenReturn(List.of(
+                book(1L, "Властелин колец"),
+                book(2L, "Мастер и Маргарита")));
+        parser = new QuestionParser();
+        ReflectionTestUtils.setField(parser, "bookRepository", bookRepository);
+        parser.refreshTitles();
+    }
+
+    @Test
+    void exactTitleIsConfident() {
+        QuestionParser.ParsedQuestion q = parser.parse("Что случилось в 3 главе Мастера и Маргариты?");
+        assertEquals(2L, q.getBookId());
+        assertEquals(3, q.getChapterNumber());
+        assertTrue(q.getConfidence() >= THRESHOLD, "confidence " + q.getConfidence());
+    }
+
+    @Test
+    void misspelledTitleIsFoundButNotConfident() {
+        QuestionParser.ParsedQuestion q = parser.parse("Кто такой Властелин колиц, глава 2?");
+        assertEquals(1L, q.getBookId());
+        assertTrue(q.getConfidence() < THRESHOLD, "confidence " + q.getConfidence());
+    }
+
+    @Test
+    void noTitleIsNotConfident() {
+        QuestionParser.ParsedQuestion q = parser.parse("Как приготовить зелье?");
+        assertNull(q.getBookId());
+        assertTrue(q.getConfidence() < THRESHOLD);
+    }
+
+    @Test
+    void fuzzyScoreScalesFromFloorToCap() {
+        assertEquals(0.0, QuestionParser.fuzzyTitleScore(0.45), 1e-9);
+        assertEquals(0.0, QuestionParser.fuzzyTitleScore(0.30), 1e-9);
+        assertEquals(0.5, QuestionParser.fuzzyTitleScore(1.0), 1e-9);
+        // With keywords present: 0.5 + 0.4 * score + 0.1 — the floor hit that used to score 0.78
+        assertTrue(0.6 + 0.4 * QuestionParser.fuzzyTitleScore(0.45) < THRESHOLD);
+        assertTrue(0.6 + 0.4 * QuestionParser.fuzzyTitleScore(0.80) < THRESHOLD);
+        assertTrue(0.6 + 0.4 * QuestionParser.fuzzyTitleScore(0.90) >= THRESHOLD);
+    }
+
+    private static Book book(Long id, String title) {
+        Book b = new Book();
+        b.setId(id);
+        b.setTitle(title);
+        b.setAuthor("—");
+        return b;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.prosper.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.prosper.service.ResilientLlmClient.CircuitBreaker;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ResilientLlmClientTest {
+
+    @Test
+    void consumerFailuresDoNotOpenTheBreaker() {
+        ResilientLlmClient client = client(new ChunkingClient(false));
+        for (int i = 0; i < 10; i++) {
+            assertThrows(UncheckedIOException.class, () -> client.stream("q", chunk -> {
+                throw new UncheckedIOException(new IOException("Broken pipe"));
+            }));
+        }
+        assertTrue(client.isAvailable());
+    }
+
+    @Test
+    void providerFailuresOpenTheBreaker() {
+        ResilientLlmClient client = client(new ChunkingClient(true));
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalStateException.class, () -> client.stream("q", chunk -> { }));
+        }
+        assertFalse(client.isAvailable());
+        ResilientLlmClient.UnavailableException e = assertThrows(ResilientLlmClient.UnavailableException.class,
+                () -> client.stream("q", chunk -> { }));
+        assertEquals("breaker", e.getReason());
+    }
+
+    @Test
+    void callsStartedBeforeOpeningAreIgnored() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 0.5, 10_000, 0);
+        CircuitBreaker.Pass early = breaker.tryPass();
+        breaker.record(breaker.tryPass(), false, 0);
+        breaker.record(breaker.tryPass(), false, 0);
+        // open-seconds 0: immediately half-open; the trial is out
+        CircuitBreaker.Pass trial = breaker.tryPass();
+        assertNotNull(trial);
+        assertTrue(trial.trial);
+        assertNull(breaker.tryPass());
+
+        // A call from before the opening succeeds: it must neither close the breaker nor free the trial slot
+        breaker.record(early, true, 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertNull(breaker.tryPass());
+
+        breaker.record(trial, true, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void cancelledTrialFreesTheSlot() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 0.5, 10_000, 0);
+        breaker.record(breaker.tryPass(), false, 0);
+        CircuitBreaker.Pass trial = breaker.tryPass();
+        assertNull(breaker.tryPass());
+        breaker.cancelPass(trial);
+        assertNotNull(breaker.tryPass());
+    }
+
+    private static ResilientLlmClient client(LlmClient delegate) {
+        // window 4 (judged after 2 calls), 60 s open, generous rate and bulkhead
+        return new ResilientLlmClient(delegate, 6000, 100, 4, 100, 4, 0.5, 10_000, 60, new SimpleMeterRegistry());
+    }
+
+    private static final class ChunkingClient implements LlmClient {
+        private final boolean fail;
+
+        ChunkingClient(boolean fail) {
+            this.fail = fail;
+        }
+
+        @Override
+        public boolean isConfigured() {
+            return true;
+        }
+
+        @Override
+        public String generate(String prompt) {
+            return "answer";
+        }
+
+        @Override
+        public void stream(String prompt, Consumer<String> onChunk) {
+            if (fail) throw new IllegalStateException("provider down");
+            onChunk.accept("an");
+            onChunk.accept("swer");
+        }
+    }
+}
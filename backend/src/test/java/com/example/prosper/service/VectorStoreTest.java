@@ -0,0 +1,54 @@
+package com.example.prosper.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/** Passage rows, the perBook guard and invalidation after a chapter write. */
+class VectorStoreTest {
+
+    private final VectorStore store = new VectorStore(100);
+
+    @Test
+    void matchPointsAtThePassageNotTheChapter() {
+        store.putBook(1L, 0, List.of(
+                new VectorStore.Passage(10L, 0, 3000, new float[]{1, 0, 0}),
+                new VectorStore.Passage(10L, 2400, 3000, new float[]{0, 1, 0}),
+                new VectorStore.Passage(11L, 0, 1500, new float[]{0, 0, 1})));
+
+        List<VectorStore.Match> top = store.search(new float[]{0.1f, 2, 0}, List.of(1L), 2);
+
+        assertEquals(2, top.size());
+        assertEquals(10L, top.get(0).getChapterId());
+        assertEquals(2400, top.get(0).getStart());
+        assertEquals(3000, top.get(0).getLength());
+        assertEquals(0, top.get(1).getStart());
+    }
+
+    @Test
+    void nonPositivePerBookIsEmpty() {
+        store.putBook(1L, 0, List.of(new VectorStore.Passage(10L, 0, 10, new float[]{1, 0})));
+        assertTrue(store.search(new float[]{1, 0}, List.of(1L), 0).isEmpty());
+        assertTrue(store.search(new float[]{1, 0}, null, -1).isEmpty());
+    }
+
+    @Test
+    void invalidationDropsTheBookAndRejectsALoadStartedBeforeIt() {
+        store.putBook(1L, 0, List.of(new VectorStore.Passage(10L, 0, 10, new float[]{1, 0})));
+        int before = store.generation(1L);
+
+        store.invalidateBook(1L);
+
+        assertFalse(store.hasBook(1L));
+        assertFalse(store.putBook(1L, before, List.of(new VectorStore.Passage(10L, 0, 10, new float[]{1, 0}))));
+        assertFalse(store.hasBook(1L));
+        assertTrue(store.takeStale(1L));
+        assertFalse(store.takeStale(1L));
+        assertTrue(store.putBook(1L, store.generation(1L), List.of(new VectorStore.Passage(10L, 0, 10, new float[]{1, 0}))));
+        assertTrue(store.hasBook(1L));
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.prosper.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class KeywordAutomatonTest {
+
+    @Test
+    void findsOverlappingAndNestedMatchesIgnoringCaseAndYo() {
+        List<String> patterns = List.of("зель", "ель", "ЁЖ", " мл");
+        String text = "Зелье и ежевика, 20 мл; ЗЕЛЬЕМ";
+
+        assertEquals(naive(patterns, text), scan(patterns, text));
+        assertEquals(List.of("1:1-4", "0:0-4", "2:8-10", "3:19-22", "1:25-28", "0:24-28"), scan(patterns, text));
+    }
+
+    @Test
+    void matchesNaiveSearchOnRandomText() {
+        Random random = new Random(7);
+        String alphabet = "абвгдеёжзАБВ ab.";
+        for (int round = 0; round < 200; round++) {
+            List<String> patterns = new ArrayList<>();
+            int count = 1 + random.nextInt(6);
+            for (int i = 0; i < count; i++) patterns.add(randomText(random, alphabet, 1 + random.nextInt(4)));
+            String text = randomText(random, alphabet, 300);
+
+            assertEquals(naive(patterns, text), scan(patterns, text), "patterns " + patterns);
+        }
+    }
+
+    @Test
+    void largeDictionaryUsesSparseTransitionsWithTheSameResults() {
+        Random random = new Random(11);
+        String alphabet = "абвгдежзиклмнопрстуфхцчшщэюя";
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) patterns.add(randomText(random, alphabet, 3 + random.nextInt(6)));
+        String text = randomText(random, alphabet + " ", 20000);
+
+        assertEquals(naive(patterns, text), scan(patterns, text));
+    }
+
+    @Test
+    void charsOutsideTheDirectTableAreClassified() {
+        List<String> patterns = List.of("—да", "ﬁx");
+        String text = "нет—да ﬁx —Да";
+
+        assertEquals(naive(patterns, text), scan(patterns, text));
+    }
+
+    private static List<String> scan(List<String> patterns, String text) {
+        List<String> found = new ArrayList<>();
+        new KeywordAutomaton(patterns).scan(text, (p, start, end) -> found.add(p + ":" + start + "-" + end));
+        return sortByEndThenPattern(found);
+    }
+
+    private static List<String> naive(List<String> patterns, String text) {
+        String folded = RussianText.fold(text);
+        List<String> found = new ArrayList<>();
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = RussianText.fold(patterns.get(p));
+            for (int i = folded.indexOf(pattern); i >= 0; i = folded.indexOf(pattern, i + 1)) {
+                found.add(p + ":" + i + "-" + (i + pattern.length()));
+            }
+        }
+        return sortByEndThenPattern(found);
+    }
+
+    private static List<String> sortByEndThenPattern(List<String> matches) {
+        matches.sort((a, b) -> {
+            int endA = Integer.parseInt(a.substring(a.indexOf('-') + 1));
+            int endB = Integer.parseInt(b.substring(b.indexOf('-') + 1));
+            if (endA != endB) return Integer.compare(endA, endB);
+            int startA = Integer.parseInt(a.substring(a.indexOf(':') + 1, a.indexOf('-')));
+            int startB = Integer.parseInt(b.substring(b.indexOf(':') + 1, b.indexOf('-')));
+            if (startA != startB) return Integer.compare(startB, startA);
+            return a.compareTo(b);
+        });
+        return matches;
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return sb.toString();
+    }
+}
@@ -413,6 +413,23 @@ class _ManageChaptersScreenState extends State<ManageChaptersScreen>
 
   // ========== ADD / EDIT CHAPTER ==========
 
+  // Список глав приходит без текста — подгружаем главу целиком перед редактированием
+  Future<void> _editChapter(dynamic chapter) async {
+    try {
+      final res = await http.get(
+        Uri.parse('$baseUrl/books/${widget.bookId}/chapters/${chapter['id']}'),
+        headers: headers,
+      );
+      if (res.statusCode == 200) {
+        _addOrEditChapter(chapter: jsonDecode(utf8.decode(res.bodyBytes)));
+      } else {
+        _showSnackBar('Ошибка загрузки главы: ${res.statusCode}', isError: true);
+      }
+    } catch (e) {
+      _showSnackBar('Ошибка: $e', isError: true);
+    }
+  }
+
   void _addOrEditChapter({dynamic chapter}) {
     final theme = context.read<ThemeProvider>();
     final titleController = TextEditingController(text: chapter?['title'] ?? '');
@@ -665,7 +682,7 @@ class _ManageChaptersScreenState extends State<ManageChaptersScreen>
             : Row(
                 mainAxisSize: MainAxisSize.min,
                 children: [
-                  IconButton(icon: const Icon(Icons.edit_outlined, size: 20, color: Colors.blue), onPressed: () => _addOrEditChapter(chapter: chapter)),
+                  IconButton(icon: const Icon(Icons.edit_outlined, size: 20, color: Colors.blue), onPressed: () => _editChapter(chapter)),
                   IconButton(
                     icon: const Icon(Icons.delete_outline, size: 20, color: Colors.redAccent),
                     onPressed: () {
@@ -510,4 +510,54 @@ class BookService {
       rethrow;
     }
   }
-}
\ No newline at end of file
+
+  // Скачать новеллу целиком (или начиная с главы from) одним потоком NDJSON — для чтения офлайн.
+  // Каждая глава передаётся в onChapter по мере получения; после обрыва продолжить с from = последняя глава + 1.
+  // Возвращает строку-заголовок {"type":"book", ..., "version"} — по version видно, менялась ли книга между загрузками.
+  Future<Map<String, dynamic>> downloadBook(
+    String token,
+    int bookId,
+    void Function(Map<String, dynamic> chapter) onChapter, {
+    int from = 0,
+  }) async {
+    final client = http.Client();
+    try {
+      final request = http.Request('GET', Uri.parse('$baseUrl/books/$bookId/download?from=$from'));
+      request.headers['Authorization'] = 'Bearer $token';
+      final response = await client.send(request);
+
+      if (response.statusCode == 404) {
+        throw Exception('Новелла не найдена');
+      } else if (response.statusCode != 200) {
+        throw Exception('Ошибка загрузки новеллы: ${response.statusCode}');
+      }
+
+      Map<String, dynamic> header = {};
+      bool complete = false;
+      await for (final line in response.stream.transform(utf8.decoder).transform(const LineSplitter())) {
+        if (line.isEmpty) continue;
+        final Map<String, dynamic> item = json.decode(line);
+        switch (item['type']) {
+          case 'book':
+            header = item;
+            break;
+          case 'chapter':
+            onChapter(item);
+            break;
+          case 'end':
+            complete = true;
+            break;
+        }
+      }
+      if (!complete) {
+        throw Exception('Загрузка новеллы прервана');
+      }
+      return header;
+    } catch (e) {
+      print('Error in downloadBook: $e');
+      rethrow;
+    } finally {
+      client.close();
+    }
+  }
+}
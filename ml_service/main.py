@@ -1,5 +1,6 @@
 import asyncio
 import logging
+import re
 import threading
 from contextlib import asynccontextmanager
 
@@ -17,8 +18,13 @@ logging.basicConfig(
 
 recommender = Recommender()
 
-# Cache: book_id → list of (chapter_id, title, content, mean_embedding)
-_chapter_cache: dict[int, list[tuple[int, str, str, np.ndarray]]] = {}
+# Cache: book_id → list of (chapter_id, title, content, mean_embedding, passages),
+# passages = list of (start, end, embedding) with character offsets into content
+_chapter_cache: dict[int, list[tuple[int, str, str, np.ndarray, list]]] = {}
+
+# book_id → generation, bumped by /chapter-embeddings with refresh=true so a computation started
+# before a chapter edit doesn't cache the old text
+_generations: dict[int, int] = {}
 
 # Set of book_ids whose embeddings are currently being computed in background
 _warming_set: set[int] = set()
@@ -57,44 +63,60 @@ class SemanticSearchRequest(BaseModel):
     top_k: int = 5
 
 
+class BatchSemanticSearchRequest(BaseModel):
+    question: str
+    book_ids: list[int]
+    top_k: int = 5
+
+
+class EmbedRequest(BaseModel):
+    text: str
+
+
+class ChapterEmbeddingsRequest(BaseModel):
+    book_id: int
+    refresh: bool = False
+
+
 # ──────────────────────────────────────────────────────────────────────────────
 # Chunking + embedding helpers
 # ──────────────────────────────────────────────────────────────────────────────
 
-def _chunk_text(text: str, chunk_words: int = 500, overlap_words: int = 100) -> list[str]:
-    """Split text into overlapping word-based chunks for full-chapter coverage."""
-    words = text.split()
-    if not words:
-        return [""]
+def _chunk_spans(text: str, chunk_words: int = 500, overlap_words: int = 100) -> list[tuple[int, int]]:
+    """Overlapping word-based chunks for full-chapter coverage, as (start, end) character offsets."""
+    words = [m.span() for m in re.finditer(r"\S+", text)]
     if len(words) <= chunk_words:
-        return [text]
-    chunks = []
+        return [(0, len(text))]
+    spans = []
     start = 0
     while start < len(words):
         end = min(start + chunk_words, len(words))
-        chunks.append(" ".join(words[start:end]))
+        spans.append((words[start][0], words[end - 1][1]))
         if end == len(words):
             break
         start += chunk_words - overlap_words
-    return chunks
+    return spans
 
 
-def _embed_chapter(model, content: str) -> np.ndarray:
-    """Mean embedding over word-based chunks — covers the full chapter, not just first 512 chars."""
-    chunks = _chunk_text(content)
+def _embed_chapter(model, content: str) -> tuple[np.ndarray, list]:
+    """Mean embedding over word-based chunks — covers the full chapter, not just first 512 chars —
+    plus each chunk's own (start, end, embedding), so the backend can point at the passage that matched."""
+    spans = _chunk_spans(content)
     embeddings = model.encode(
-        chunks, batch_size=16, show_progress_bar=False, convert_to_numpy=True
-    )
-    return np.mean(embeddings, axis=0).astype(np.float32)
+        [content[s:e] for s, e in spans], batch_size=16, show_progress_bar=False, convert_to_numpy=True
+    ).astype(np.float32)
+    passages = [(s, e, emb) for (s, e), emb in zip(spans, embeddings)]
+    return np.mean(embeddings, axis=0).astype(np.float32), passages
 
 
 # ──────────────────────────────────────────────────────────────────────────────
 # Background cache computation
 # ──────────────────────────────────────────────────────────────────────────────
 
-def _compute_and_cache_chapters(book_id: int) -> None:
+def _compute_and_cache_chapters(book_id: int, generation: int) -> None:
     """Runs in a thread-pool worker. Lock is NOT held during DB load or model.encode.
-    Only acquired briefly at the end to write the result and remove from warming_set.
+    Only acquired briefly at the end to write the result and remove from warming_set;
+    a result whose generation was superseded by a refresh is dropped.
     """
     logging.info(f"Background: starting embedding computation for book_id={book_id}")
     try:
@@ -112,22 +134,27 @@ def _compute_and_cache_chapters(book_id: int) -> None:
     except Exception as e:
         logging.error(f"DB error in background cache for book {book_id}: {e}")
         with _cache_lock:
-            _warming_set.discard(book_id)
+            if _generations.get(book_id, 0) == generation:
+                _warming_set.discard(book_id)
         return
 
     if not rows:
         with _cache_lock:
-            _warming_set.discard(book_id)
+            if _generations.get(book_id, 0) == generation:
+                _warming_set.discard(book_id)
         return
 
     model = recommender.embedding_store.model
     result = []
     for row in rows:
         cid, title, content = row[0], row[1] or "", row[2] or ""
-        emb = _embed_chapter(model, content)
-        result.append((cid, title, content, emb))
+        emb, passages = _embed_chapter(model, content)
+        result.append((cid, title, content, emb, passages))
 
     with _cache_lock:
+        if _generations.get(book_id, 0) != generation:
+            logging.info(f"Background: book_id={book_id} was refreshed meanwhile, result dropped")
+            return
         _chapter_cache[book_id] = result
         _warming_set.discard(book_id)
 
@@ -138,45 +165,48 @@ def _compute_and_cache_chapters(book_id: int) -> None:
 # Semantic search endpoint
 # ──────────────────────────────────────────────────────────────────────────────
 
-@app.post("/semantic-search")
-async def semantic_search(req: SemanticSearchRequest):
-    loop = asyncio.get_running_loop()
-
-    # --- Cache check (fast path, lock held only for dict lookups) ---
+def _cached_chapters(book_id: int, loop, refresh: bool = False) -> list | None:
+    """Cached chapter embeddings of a book, or None while they are not ready yet.
+    refresh drops what is cached or being computed (the chapters changed) and starts over."""
     with _cache_lock:
-        chapters = _chapter_cache.get(req.book_id)
-        if chapters is None:
-            if req.book_id not in _warming_set:
-                # First request for this book — kick off background computation and return empty.
-                # FTS + ILIKE results will serve this request; semantic kicks in next time.
-                _warming_set.add(req.book_id)
-                loop.run_in_executor(None, _compute_and_cache_chapters, req.book_id)
-                logging.info(f"Warm-up started for book_id={req.book_id}, returning empty for now")
-            # Either just started warming or already in progress — return empty immediately
-            return {"chapters": []}
+        if refresh:
+            _generations[book_id] = _generations.get(book_id, 0) + 1
+            _chapter_cache.pop(book_id, None)
+            _warming_set.discard(book_id)
+        chapters = _chapter_cache.get(book_id)
+        if chapters is None and book_id not in _warming_set:
+            # First request for this book — kick off background computation and return empty.
+            # FTS + ILIKE results will serve this request; semantic kicks in next time.
+            _warming_set.add(book_id)
+            loop.run_in_executor(None, _compute_and_cache_chapters, book_id, _generations.get(book_id, 0))
+            logging.info(f"Warm-up started for book_id={book_id}, returning empty for now")
+        return chapters
 
-    # --- Cache hit: compute similarity ---
+
+async def _encode_question(question: str, loop) -> np.ndarray:
     question_emb = await loop.run_in_executor(
         None,
         lambda: recommender.embedding_store.model.encode(
-            [req.question], show_progress_bar=False, convert_to_numpy=True
+            [question], show_progress_bar=False, convert_to_numpy=True
         )[0].astype(np.float32),
     )
-
     q_norm = float(np.linalg.norm(question_emb))
     if q_norm > 0:
         question_emb = question_emb / q_norm
+    return question_emb
+
 
+def _rank_chapters(chapters: list, question_emb: np.ndarray, top_k: int) -> list[dict]:
     matrix = np.array([c[3] for c in chapters], dtype=np.float32)
     norms = np.linalg.norm(matrix, axis=1, keepdims=True)
     norms = np.where(norms == 0, 1.0, norms)
     normalized = matrix / norms
 
     similarities = normalized @ question_emb
-    top_k = min(req.top_k, len(chapters))
+    top_k = min(top_k, len(chapters))
     top_indices = np.argsort(similarities)[::-1][:top_k]
 
-    results = [
+    return [
         {
             "chapter_id": chapters[i][0],
             "title": chapters[i][1],
@@ -186,4 +216,67 @@ async def semantic_search(req: SemanticSearchRequest):
         for i in top_indices
     ]
 
-    return {"chapters": results}
+
+@app.post("/semantic-search")
+async def semantic_search(req: SemanticSearchRequest):
+    loop = asyncio.get_running_loop()
+
+    # --- Cache check (fast path, lock held only for dict lookups) ---
+    chapters = _cached_chapters(req.book_id, loop)
+    if chapters is None:
+        # Either just started warming or already in progress — return empty immediately
+        return {"chapters": []}
+
+    # --- Cache hit: compute similarity ---
+    question_emb = await _encode_question(req.question, loop)
+    return {"chapters": _rank_chapters(chapters, question_emb, req.top_k)}
+
+
+@app.post("/semantic-search/batch")
+async def semantic_search_batch(req: BatchSemanticSearchRequest):
+    """Several books in one call: the question is encoded once, results come back keyed by book_id."""
+    loop = asyncio.get_running_loop()
+
+    cached = {book_id: _cached_chapters(book_id, loop) for book_id in req.book_ids}
+    results: dict[str, list[dict]] = {str(book_id): [] for book_id in req.book_ids}
+    if all(chapters is None for chapters in cached.values()):
+        return {"results": results}
+
+    question_emb = await _encode_question(req.question, loop)
+    for book_id, chapters in cached.items():
+        if chapters:
+            results[str(book_id)] = _rank_chapters(chapters, question_emb, req.top_k)
+    return {"results": results}
+
+
+# ──────────────────────────────────────────────────────────────────────────────
+# Raw embeddings — the backend ranks chapters in its own vector store
+# ──────────────────────────────────────────────────────────────────────────────
+
+@app.post("/embed")
+async def embed(req: EmbedRequest):
+    """Normalized embedding of a question, same model as the chapter embeddings."""
+    loop = asyncio.get_running_loop()
+    vector = await _encode_question(req.text, loop)
+    return {"vector": vector.tolist()}
+
+
+@app.post("/chapter-embeddings")
+async def chapter_embeddings(req: ChapterEmbeddingsRequest):
+    """Chapter embeddings of a book — the mean vector and the per-passage vectors with their character
+    ranges; ready=false while they are still being computed. refresh=true recomputes them after an edit."""
+    loop = asyncio.get_running_loop()
+    chapters = _cached_chapters(req.book_id, loop, req.refresh)
+    if chapters is None:
+        return {"ready": False, "chapters": []}
+    return {
+        "ready": True,
+        "chapters": [
+            {
+                "chapter_id": c[0],
+                "vector": c[3].tolist(),
+                "passages": [{"start": s, "end": e, "vector": v.tolist()} for s, e, v in c[4]],
+            }
+            for c in chapters
+        ],
+    }
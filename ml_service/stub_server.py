@@ -0,0 +1,108 @@
+"""Stand-in for the ML service with canned answers — no model, no database.
+
+Run it and point the backend at it to exercise the semantic-search client locally:
+
+    python stub_server.py --port 8001 --delay-ms 200
+    ML_SERVICE_URL=http://localhost:8001 ./mvnw spring-boot:run
+
+Every book gets `top_k` fake chapters with ids book_id * 1000 + n. `--no-batch` answers 404 on
+/semantic-search/batch, like an ml_service build from before the batch endpoint. /embed and
+/chapter-embeddings return deterministic pseudo-random vectors (`--dim`); `--no-embeddings` answers
+404 there, like a build from before those endpoints.
+"""
+
+import argparse
+import json
+import random
+import time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+
+def _chapters(book_id: int, question: str, top_k: int) -> list[dict]:
+    return [
+        {
+            "chapter_id": book_id * 1000 + n,
+            "title": f"Глава {n}",
+            "content": f"[stub] Книга {book_id}, глава {n}: {question}",
+            "score": round(1.0 - n * 0.1, 2),
+        }
+        for n in range(1, top_k + 1)
+    ]
+
+
+def _vector(seed, dim: int) -> list[float]:
+    rnd = random.Random(seed)
+    return [rnd.uniform(-1, 1) for _ in range(dim)]
+
+
+class StubHandler(BaseHTTPRequestHandler):
+    protocol_version = "HTTP/1.1"  # keep-alive, like uvicorn
+    delay_ms = 0
+    batch = True
+    embeddings = True
+    dim = 384
+    calls = {"single": 0, "batch": 0, "embed": 0, "chapter_embeddings": 0}
+
+    def do_GET(self):
+        if self.path == "/health":
+            self._send(200, {"status": "ok", "calls": self.calls})
+        else:
+            self._send(404, {"detail": "Not Found"})
+
+    def do_POST(self):
+        body = json.loads(self.rfile.read(int(self.headers.get("Content-Length", 0))) or b"{}")
+        time.sleep(self.delay_ms / 1000)
+        top_k = body.get("top_k", 5)
+        if self.path == "/semantic-search":
+            self.calls["single"] += 1
+            self._send(200, {"chapters": _chapters(body["book_id"], body["question"], top_k)})
+        elif self.path == "/semantic-search/batch" and self.batch:
+            self.calls["batch"] += 1
+            results = {str(b): _chapters(b, body["question"], top_k) for b in body["book_ids"]}
+            self._send(200, {"results": results})
+        elif self.path == "/embed" and self.embeddings:
+            self.calls["embed"] += 1
+            self._send(200, {"vector": _vector(body["text"], self.dim)})
+        elif self.path == "/chapter-embeddings" and self.embeddings:
+            self.calls["chapter_embeddings"] += 1
+            book_id = body["book_id"]
+            chapters = [
+                {
+                    "chapter_id": book_id * 1000 + n,
+                    "vector": _vector(book_id * 1000 + n, self.dim),
+                    "passages": [
+                        {"start": p * 2400, "end": p * 2400 + 3000,
+                         "vector": _vector((book_id * 1000 + n) * 10 + p, self.dim)}
+                        for p in range(3)
+                    ],
+                }
+                for n in range(1, 21)
+            ]
+            self._send(200, {"ready": True, "chapters": chapters})
+        else:
+            self._send(404, {"detail": "Not Found"})
+
+    def _send(self, status: int, payload: dict):
+        data = json.dumps(payload, ensure_ascii=False).encode("utf-8")
+        self.send_response(status)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(data)))
+        self.end_headers()
+        self.wfile.write(data)
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--port", type=int, default=8001)
+    parser.add_argument("--delay-ms", type=int, default=0)
+    parser.add_argument("--no-batch", action="store_true")
+    parser.add_argument("--no-embeddings", action="store_true")
+    parser.add_argument("--dim", type=int, default=384)
+    args = parser.parse_args()
+
+    StubHandler.delay_ms = args.delay_ms
+    StubHandler.batch = not args.no_batch
+    StubHandler.embeddings = not args.no_embeddings
+    StubHandler.dim = args.dim
+    print(f"ML stub on :{args.port} (delay {args.delay_ms} ms, batch {'off' if args.no_batch else 'on'})")
+    ThreadingHTTPServer(("0.0.0.0", args.port), StubHandler).serve_forever()